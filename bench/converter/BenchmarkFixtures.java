@@ -0,0 +1,92 @@
+package converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic Netbeans and Intellij project files of a given number of classpath entries.
+ */
+class BenchmarkFixtures {
+
+    /**
+     * A nbproject/project.properties as Netbeans writes it: one file.reference.* per jar, a javac.classpath
+     * referencing all of them through continuation lines, and the usual build properties around them.
+     */
+    static String syntheticProperties(int references) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("annotation.processing.enabled=true\n");
+        builder.append("application.title=synthetic\n");
+        builder.append("build.classes.dir=${build.dir}/classes\n");
+        builder.append("build.dir=build\n");
+        builder.append("dist.dir=dist\n");
+        builder.append("dist.jar=${dist.dir}/synthetic.jar\n");
+        builder.append("libs.dir=../lib\n");
+        for (int i = 0; i < references; i++) {
+            String jar = "library-" + i + ".jar";
+            if (i % 2 == 0) {
+                builder.append("file.reference.").append(jar).append("=${libs.dir}/").append(jar).append('\n');
+            } else {
+                builder.append("file.reference.").append(jar).append("=lib/").append(jar).append('\n');
+            }
+        }
+        builder.append("javac.classpath=\\\n");
+        for (int i = 0; i < references; i++) {
+            builder.append("    ${file.reference.library-").append(i).append(".jar}").append(i < references - 1 ? ":\\\n" : "\n");
+        }
+        builder.append("javac.source=1.8\n");
+        builder.append("javac.target=1.8\n");
+        builder.append("main.class=com.example.Main\n");
+        builder.append("run.jvmargs=-Xmx512m\n");
+        builder.append("src.dir=src\n");
+        builder.append("test.src.dir=test\n");
+
+        return builder.toString();
+    }
+
+    static byte[] syntheticIml(int entries) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<module type=\"JAVA_MODULE\" version=\"4\">\n");
+        builder.append("  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">\n");
+        builder.append("    <exclude-output />\n");
+        builder.append("    <content url=\"file://$MODULE_DIR$\">\n");
+        builder.append("      <sourceFolder url=\"file://$MODULE_DIR$/src\" isTestSource=\"false\" />\n");
+        builder.append("    </content>\n");
+        builder.append("    <orderEntry type=\"inheritedJdk\" />\n");
+        builder.append("    <orderEntry type=\"sourceFolder\" forTests=\"false\" />\n");
+        for (int i = 0; i < entries; i++) {
+            builder.append("    <orderEntry type=\"module-library\">\n");
+            builder.append("      <library>\n");
+            builder.append("        <CLASSES>\n");
+            builder.append("          <root url=\"jar://$MODULE_DIR$/lib/old-").append(i).append(".jar!/\" />\n");
+            builder.append("        </CLASSES>\n");
+            builder.append("        <JAVADOC />\n");
+            builder.append("        <SOURCES />\n");
+            builder.append("      </library>\n");
+            builder.append("    </orderEntry>\n");
+        }
+        builder.append("  </component>\n");
+        builder.append("</module>\n");
+
+        return builder.toString().getBytes();
+    }
+
+    static List<String> syntheticJars(int entries) {
+        List<String> jars = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            jars.add("$MODULE_DIR$/lib/library-" + i + ".jar");
+        }
+        return jars;
+    }
+
+    /**
+     * Classpath references as IntellijToNetbeansConverter reads them from the module, relative or absolute.
+     */
+    static List<String> syntheticReferences(int entries) {
+        List<String> references = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            references.add(i % 2 == 0 ? "lib/library-" + i + ".jar" : "/opt/shared/lib/library-" + i + ".jar");
+        }
+        return references;
+    }
+}
@@ -0,0 +1,78 @@
+package converter;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal benchmark loop: timed warmup, then several timed measurement rounds of the same operation.
+ *
+ * Reports the throughput, the average time and the bytes allocated by the measuring thread per operation,
+ * the figures JMH gives with its throughput mode and allocation profiler.
+ */
+class BenchmarkHarness {
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long ROUND_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int ROUNDS = 3;
+
+    interface Operation {
+        /**
+         * Runs the operation once and returns something depending on its result, so it cannot be optimized away.
+         */
+        long run() throws Exception;
+    }
+
+    // keeps the results reachable so the operations are not optimized away
+    private static volatile long blackhole;
+
+    static void printHeader() {
+        System.out.println(String.format("%-44s %8s %14s %14s %16s", "benchmark", "size", "ops/s", "us/op", "bytes/op"));
+    }
+
+    static void measure(String name, int size, Operation operation) throws Exception {
+        long sink = 0;
+
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd) {
+            sink += operation.run();
+        }
+
+        long operations = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long end = start + ROUND_NANOS;
+            long now = start;
+            while (now < end) {
+                sink += operation.run();
+                operations++;
+                now = System.nanoTime();
+            }
+            elapsed += now - start;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+
+        blackhole += sink;
+
+        System.out.println(String.format("%-44s %8d %14.1f %14.1f %16d", name, size,
+                operations * 1e9 / elapsed, elapsed / 1000.0 / operations, allocated / operations));
+    }
+
+    static int[] parseSizes(String[] args, int[] defaultSizes) {
+        if (args.length == 0) {
+            return defaultSizes;
+        }
+
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
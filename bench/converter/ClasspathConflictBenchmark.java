@@ -0,0 +1,55 @@
+package converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Benchmarks {@link ClasspathConflictAnalyzer} on synthetic classpaths of 100 to 5,000 jars of 200 classes each,
+ * one jar in ten being a second copy of an earlier one.
+ *
+ * The cold run reads every central directory, the cached run is what a conversion costs once the jars are known.
+ * Run with: java -cp out converter.ClasspathConflictBenchmark [sizes...]
+ */
+public class ClasspathConflictBenchmark {
+    private static final int[] DEFAULT_SIZES = {100, 1000, 5000};
+    private static final int CLASSES_PER_JAR = 200;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("classpath-conflicts");
+        ClasspathConflictAnalyzer cached = new ClasspathConflictAnalyzer();
+
+        BenchmarkHarness.printHeader();
+        for (int size : BenchmarkHarness.parseSizes(args, DEFAULT_SIZES)) {
+            List<Path> jars = writeJars(directory, size);
+
+            BenchmarkHarness.measure("classpath conflicts, cold", size,
+                    () -> new ClasspathConflictAnalyzer().analyze(jars).getDuplicateClasses());
+            BenchmarkHarness.measure("classpath conflicts, cached", size,
+                    () -> cached.analyze(jars).getDuplicateClasses());
+        }
+    }
+
+    private static List<Path> writeJars(Path directory, int count) throws IOException {
+        List<Path> jars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path jar = directory.resolve("lib" + i + ".jar");
+            if (!Files.exists(jar)) {
+                int library = i % 10 == 9 ? i - 5 : i;
+                try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+                    for (int c = 0; c < CLASSES_PER_JAR; c++) {
+                        zip.putNextEntry(new ZipEntry("com/example/lib" + library + "/pkg" + c % 10 + "/Class" + c + ".class"));
+                        zip.closeEntry();
+                    }
+                }
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+}
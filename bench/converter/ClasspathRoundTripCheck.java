@@ -0,0 +1,151 @@
+package converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts a Netbeans project to Intellij and back with {@link WorkspaceImporter}, as the command line does, and
+ * checks that the classpath comes back as it was.
+ *
+ * The project references a jar outside of it through a file.reference.* property of
+ * nbproject/private/private.properties, the way Netbeans stores a jar local to the machine. Checks that:
+ * - converting to Intellij and back without edit leaves project.properties and private.properties untouched
+ * - a jar outside the project added to the module gets its file.reference.* property in private.properties, not in
+ *   project.properties
+ * - converting again in either direction then changes nothing
+ *
+ * Usage: ClasspathRoundTripCheck
+ */
+public class ClasspathRoundTripCheck {
+    private final Path workspace;
+    private final Path project;
+    private final Path localJar;
+    private final List<String> violations = new ArrayList<>();
+
+    private ClasspathRoundTripCheck(Path workspace) {
+        this.workspace = workspace;
+        this.project = workspace.resolve("app");
+        this.localJar = workspace.resolve("local").resolve("two.jar");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path workspace = Files.createTempDirectory("classpath-round-trip").toRealPath();
+        try {
+            boolean passed = new ClasspathRoundTripCheck(workspace).run();
+            System.exit(passed ? 0 : 1);
+        } finally {
+            deleteRecursively(workspace);
+        }
+    }
+
+    private boolean run() throws Exception {
+        Path sharedJar = workspace.resolve("lib").resolve("one.jar");
+        writeJar(sharedJar);
+        writeJar(localJar);
+        write(project.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH),
+                "src.dir=src\n" +
+                "javac.classpath=\\\n" +
+                "    ${file.reference.one.jar}\n");
+        write(project.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH),
+                "file.reference.one.jar=" + sharedJar.toString().replace('\\', '/') + "\n");
+
+        try (WorkspaceImporter importer = new WorkspaceImporter(1, new JarIndex())) {
+            byte[] properties = Files.readAllBytes(project.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH));
+            byte[] privateProperties = Files.readAllBytes(project.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH));
+
+            convert(importer, ConversionDirection.NETBEANS_TO_INTELLIJ, true);
+            convert(importer, ConversionDirection.INTELLIJ_TO_NETBEANS, false);
+            checkContent(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH, properties);
+            checkContent(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH, privateProperties);
+
+            addLocalJar();
+            convert(importer, ConversionDirection.INTELLIJ_TO_NETBEANS, true);
+            String projectText = read(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH);
+            String privateText = read(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH);
+            check(projectText.contains("${file.reference.two.jar}"), "javac.classpath does not reference two.jar:\n" + projectText);
+            check(!projectText.contains("file.reference.two.jar="), "project.properties holds the local path of two.jar:\n" + projectText);
+            check(!projectText.contains(workspace.toString().replace('\\', '/')), "project.properties holds an absolute path:\n" + projectText);
+            check(privateText.contains("file.reference.two.jar="), "private.properties does not reference two.jar:\n" + privateText);
+            check(privateText.contains("file.reference.one.jar="), "private.properties lost one.jar:\n" + privateText);
+
+            convert(importer, ConversionDirection.INTELLIJ_TO_NETBEANS, false);
+            convert(importer, ConversionDirection.NETBEANS_TO_INTELLIJ, false);
+        }
+
+        if (violations.isEmpty()) {
+            System.out.println("PASSED");
+        } else {
+            System.out.println("FAILED, " + violations.size() + " violations:");
+            for (String violation : violations) {
+                System.out.println("  " + violation);
+            }
+        }
+        return violations.isEmpty();
+    }
+
+    private void convert(WorkspaceImporter importer, String direction, boolean changes) {
+        List<ConversionResult> results = importer.convert(Collections.singletonList(project), direction, () -> false);
+        ConversionResult result = results.get(0);
+        check(result.getError() == null, direction + " failed: " + result.getError());
+        check(result.isChanged() == changes, direction + (changes ? " changed nothing" : " changed the project"));
+        importer.write(results);
+        check(result.getError() == null, direction + " failed: " + result.getError());
+    }
+
+    /**
+     * Adds the jar to the module, as when it is added as a module library in Intellij.
+     */
+    private void addLocalJar() throws Exception {
+        Path moduleFile = ConversionEngine.getModuleFile(project);
+        ImlRewriter rewriter = new ImlRewriter();
+        byte[] content = Files.readAllBytes(moduleFile);
+        List<DependencySet.Dependency> dependencies = new ArrayList<>(rewriter.readLibraries(content).getDependencies());
+        dependencies.add(new DependencySet.Dependency(localJar.toString().replace('\\', '/'), DependencySet.COMPILE));
+        Files.write(moduleFile, rewriter.rewrite(content, new DependencySet(dependencies)));
+    }
+
+    private void checkContent(String path, byte[] expected) throws IOException {
+        String actual = read(path);
+        String before = new String(expected, StandardCharsets.ISO_8859_1);
+        check(actual.equals(before), path + " changed without edit:\n" + before + "became\n" + actual);
+    }
+
+    private void check(boolean condition, String violation) {
+        if (!condition) {
+            violations.add(violation);
+        }
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(project.resolve(path)), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeJar(Path jar) throws IOException {
+        Files.createDirectories(jar.getParent());
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(jar.getFileName().toString().replace(".jar", "") + "/Empty.class"));
+            zip.closeEntry();
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,707 @@
+package converter;
+
+import util.AtomicFileWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Headless stress run of the listener and conversion path, on a plain machine without IDE and without display.
+ *
+ * A temporary workspace holds the modules and a directory of jars. Each module belongs to one producer thread,
+ * which replays a script of edits, deletions and re-creations of its project.properties and .iml, and of module
+ * removals and additions. The scripts only depend on the seed. The events are dispatched the way the plugin does:
+ * - a created project.properties or .iml, and an edited project.properties, schedule a conversion to Intellij, as
+ *   NetbeansFileDispatcher does
+ * - an edited .iml schedules a conversion to Netbeans, as ModuleLibraryTracker does when the module reloads, which
+ *   includes the .iml written by a conversion, while the project.properties written by a conversion is ignored
+ * - a removed module is cancelled and dropped from the model cache, an added one is converted to Intellij
+ *
+ * The shipped code runs the conversions: a {@link ConversionQueue} keyed by direction and module, on worker threads
+ * the harness gives it to count the jobs it dispatches, a {@link ModuleModelCache}, and
+ * {@link ConversionEngine#toIntellij(ModuleModel, DependencySet)} and {@link ConversionEngine#toNetbeans(ModuleModel, List)}
+ * as the converters call them. Only the parts bound to the IDE are stubbed:
+ * - ConversionScheduler: a model behind an edit handed over to the other direction, the two directions of a module
+ *   running at once, only their write steps going one at a time through {@link ModuleModelCache#write}
+ * - the IDE side of the converters: the references of the .iml are read from the file rather than from the module
+ * - FileWriteUtil: the write action is one lock, which every write of a file, by a producer or a conversion, holds,
+ *   and the content is compared with the one the conversion read by {@link AtomicFileWriter#write(Path, byte[], byte[])}
+ *
+ * Once the scripts are over and the queue is idle, checks that:
+ * - no two conversions of the same module and direction ran at once
+ * - no module kept converting itself: a chain of conversion writes without edit in between is at most 2 long
+ * - no update was lost: both files of every module list the same jars, which are the last ones written to one of
+ *   them, or the ones of project.properties when the .iml was created or the module added, and converting again
+ *   in either direction changes nothing
+ * - nothing leaked once every module is removed: no queued key, no cached model, no file handle, no worker thread
+ * - the time from an event to the end of the conversion serving it stays under the bound
+ *
+ * Usage: ConversionStressHarness [modules] [threads] [events per module] [seed] [max latency ms]
+ * The script of a seed is always the same, the interleaving of the threads is not: a failing seed is run again
+ * with the same arguments to reproduce, with 1 thread to narrow it down.
+ */
+public class ConversionStressHarness {
+    private static final int JARS = 24;
+    private static final int MAX_JARS_PER_MODULE = 6;
+    private static final int MAX_PAUSE_MILLIS = 4;
+    private static final long COALESCE_DELAY_MILLIS = 20;
+    private static final int MAX_WRITE_CHAIN = 2;
+    private static final long QUIESCENCE_TIMEOUT_MILLIS = 60000;
+    private static final String QUEUE_NAME = "Stress conversion";
+    private static final List<String> DIRECTIONS = Arrays.asList(ConversionDirection.NETBEANS_TO_INTELLIJ, ConversionDirection.INTELLIJ_TO_NETBEANS);
+    private static final String MODULE_TEMPLATE = "" +
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<module type=\"JAVA_MODULE\" version=\"4\">\n" +
+            "  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">\n" +
+            "    <exclude-output />\n" +
+            "    <content url=\"file://$MODULE_DIR$\">\n" +
+            "      <sourceFolder url=\"file://$MODULE_DIR$/src\" isTestSource=\"false\" />\n" +
+            "    </content>\n" +
+            "    <orderEntry type=\"inheritedJdk\" />\n" +
+            "    <orderEntry type=\"sourceFolder\" forTests=\"false\" />\n" +
+            "  </component>\n" +
+            "</module>\n";
+
+    private enum EventType {
+        EDIT_PROPERTIES, EDIT_IML, DELETE_PROPERTIES, DELETE_IML, REMOVE_MODULE, ADD_MODULE
+    }
+
+    private static final class Event {
+        private final EventType type;
+        private final ModuleState module;
+        private final List<String> jars;
+        private final int pauseMillis;
+
+        Event(EventType type, ModuleState module, List<String> jars, int pauseMillis) {
+            this.type = type;
+            this.module = module;
+            this.jars = jars;
+            this.pauseMillis = pauseMillis;
+        }
+    }
+
+    private static final class ModuleState {
+        private final Path directory;
+        private final Path moduleFile;
+        private final Path propertiesFile;
+        private final Map<String, AtomicInteger> running = new HashMap<>();
+        private final Map<String, AtomicLong> pendingSince = new HashMap<>();
+        private final AtomicInteger writeChain = new AtomicInteger();
+        private volatile boolean registered = true;
+
+        // written by the producer owning the module, read once it is over
+        private List<String> lastPropertiesEdit;
+        private List<String> lastImlEdit;
+
+        ModuleState(Path directory) {
+            this.directory = directory;
+            this.moduleFile = ConversionEngine.getModuleFile(directory);
+            this.propertiesFile = directory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH);
+            for (String direction : DIRECTIONS) {
+                running.put(direction, new AtomicInteger());
+                pendingSince.put(direction, new AtomicLong());
+            }
+        }
+
+        String getName() {
+            return directory.getFileName().toString();
+        }
+    }
+
+    private final Path workspace;
+    private final long maxLatencyMillis;
+    private final JarIndex jarIndex = new JarIndex();
+    private final ConversionEngine engine = new ConversionEngine(jarIndex);
+    private final ImlRewriter imlRewriter = new ImlRewriter();
+    private final ModuleModelCache cache = new ModuleModelCache();
+    private final ConversionQueue queue;
+    private final Object writeAction = new Object();
+    private final List<ModuleState> modules = new ArrayList<>();
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong conversions = new AtomicLong();
+    private final AtomicLong conversionWrites = new AtomicLong();
+    private final AtomicLong behind = new AtomicLong();
+    private final AtomicLong userWrites = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final AtomicInteger maxBusyWorkers = new AtomicInteger();
+    private final AtomicInteger maxWriteChain = new AtomicInteger();
+
+    private ConversionStressHarness(Path workspace, int threads, long maxLatencyMillis) {
+        this.workspace = workspace;
+        this.maxLatencyMillis = maxLatencyMillis;
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                daemonThreads(QUEUE_NAME + " worker")) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable job) {
+                maxBusyWorkers.accumulateAndGet(busyWorkers.incrementAndGet(), Math::max);
+            }
+
+            @Override
+            protected void afterExecute(Runnable job, Throwable error) {
+                busyWorkers.decrementAndGet();
+                dispatched.incrementAndGet();
+            }
+        };
+        this.queue = new ConversionQueue(Executors.newSingleThreadScheduledExecutor(daemonThreads(QUEUE_NAME + " timer")), workers,
+                COALESCE_DELAY_MILLIS, (key, e) -> violations.add("conversion " + key + " failed: " + e));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int moduleCount = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int eventsPerModule = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        long maxLatencyMillis = args.length > 4 ? Long.parseLong(args[4]) : 10000;
+
+        Path workspace = Files.createTempDirectory("conversion-stress");
+        try {
+            ConversionStressHarness harness = new ConversionStressHarness(workspace, threads, maxLatencyMillis);
+            boolean passed = harness.run(moduleCount, threads, eventsPerModule, seed);
+            System.exit(passed ? 0 : 1);
+        } finally {
+            deleteRecursively(workspace);
+        }
+    }
+
+    private boolean run(int moduleCount, int threads, int eventsPerModule, long seed) throws Exception {
+        System.out.println(String.format("%d modules, %d threads, %d events per module, seed %d", moduleCount, threads, eventsPerModule, seed));
+        setUp(moduleCount, seed);
+        long openFiles = countOpenFiles();
+
+        List<List<Event>> scripts = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            scripts.add(new ArrayList<>());
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            scripts.get(i % threads).addAll(script(modules.get(i), eventsPerModule, new Random(seed * 31 + i)));
+        }
+        for (List<Event> script : scripts) {
+            interleave(script);
+        }
+
+        long start = System.nanoTime();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            List<Event> script = scripts.get(i);
+            Thread producer = new Thread(() -> replay(script), "Stress producer " + i);
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        awaitQuiescence();
+        long elapsed = System.nanoTime() - start;
+
+        checkConvergence();
+        tearDown(openFiles, threads);
+        report(elapsed);
+        return violations.isEmpty();
+    }
+
+    private void setUp(int moduleCount, long seed) throws Exception {
+        Path libraries = Files.createDirectories(workspace.resolve("lib"));
+        for (int i = 0; i < JARS; i++) {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(libraries.resolve(jarName(i))))) {
+                zip.putNextEntry(new ZipEntry("library" + i + "/Library.class"));
+                zip.write(new byte[]{(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe});
+                zip.closeEntry();
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < moduleCount; i++) {
+            ModuleState module = new ModuleState(Files.createDirectories(workspace.resolve(String.format("module%03d", i))));
+            Files.createDirectories(module.propertiesFile.getParent());
+            modules.add(module);
+
+            editProperties(module, randomJars(random));
+            convert(module, ConversionDirection.NETBEANS_TO_INTELLIJ);
+            module.writeChain.set(0);
+        }
+    }
+
+    /**
+     * The events of one module, ending with both files present and the module added, so its last edit is known.
+     */
+    private static List<Event> script(ModuleState module, int events, Random random) {
+        List<Event> script = new ArrayList<>();
+        boolean registered = true;
+        boolean properties = true;
+        boolean iml = true;
+        for (int i = 0; i < events; i++) {
+            int roll = random.nextInt(100);
+            int pause = random.nextInt(MAX_PAUSE_MILLIS + 1);
+            EventType type;
+            if (roll < 42) {
+                type = EventType.EDIT_PROPERTIES;
+                properties = true;
+            } else if (roll < 84) {
+                type = EventType.EDIT_IML;
+                iml = true;
+            } else if (roll < 88 && properties) {
+                type = EventType.DELETE_PROPERTIES;
+                properties = false;
+            } else if (roll < 92 && iml) {
+                type = EventType.DELETE_IML;
+                iml = false;
+            } else if (registered) {
+                type = EventType.REMOVE_MODULE;
+                registered = false;
+            } else {
+                type = EventType.ADD_MODULE;
+                registered = true;
+            }
+            script.add(new Event(type, module, randomJars(random), pause));
+        }
+
+        if (!properties) {
+            script.add(new Event(EventType.EDIT_PROPERTIES, module, randomJars(random), 0));
+        }
+        if (!iml) {
+            script.add(new Event(EventType.EDIT_IML, module, randomJars(random), 0));
+        }
+        if (!registered) {
+            script.add(new Event(EventType.ADD_MODULE, module, Collections.emptyList(), 0));
+        }
+        return script;
+    }
+
+    /**
+     * Interleaves the modules of a producer in a fixed order, keeping the order of the events of each module.
+     */
+    private static void interleave(List<Event> script) {
+        Map<ModuleState, Integer> positions = new HashMap<>();
+        List<Object[]> ranked = new ArrayList<>();
+        for (Event event : script) {
+            int position = positions.merge(event.module, 1, Integer::sum);
+            ranked.add(new Object[]{position, event});
+        }
+        ranked.sort(Comparator.comparingInt(entry -> (Integer) entry[0]));
+        script.clear();
+        for (Object[] entry : ranked) {
+            script.add((Event) entry[1]);
+        }
+    }
+
+    private void replay(List<Event> script) {
+        for (Event event : script) {
+            try {
+                apply(event);
+                if (event.pauseMillis > 0) {
+                    Thread.sleep(event.pauseMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                violations.add(event.module.getName() + ": " + event.type + " failed: " + e);
+            }
+        }
+    }
+
+    private void apply(Event event) throws Exception {
+        ModuleState module = event.module;
+        switch (event.type) {
+            case EDIT_PROPERTIES:
+                if (editProperties(module, event.jars) && module.registered) {
+                    module.writeChain.set(0);
+                    schedule(module, ConversionDirection.NETBEANS_TO_INTELLIJ);
+                }
+                break;
+            case EDIT_IML: {
+                boolean created = !Files.exists(module.moduleFile);
+                if (created) {
+                    takeNetbeansSide(module);
+                }
+                if (editIml(module, event.jars) && module.registered) {
+                    module.writeChain.set(0);
+                    // a new module file is a created file for the dispatcher, an edited one a root change
+                    schedule(module, created ? ConversionDirection.NETBEANS_TO_INTELLIJ : ConversionDirection.INTELLIJ_TO_NETBEANS);
+                }
+                break;
+            }
+            case DELETE_PROPERTIES:
+                synchronized (writeAction) {
+                    Files.deleteIfExists(module.propertiesFile);
+                }
+                break;
+            case DELETE_IML:
+                synchronized (writeAction) {
+                    Files.deleteIfExists(module.moduleFile);
+                }
+                break;
+            case REMOVE_MODULE:
+                module.registered = false;
+                for (String direction : DIRECTIONS) {
+                    queue.cancel(getKey(module, direction));
+                }
+                cache.remove(module.directory);
+                break;
+            case ADD_MODULE:
+                takeNetbeansSide(module);
+                module.registered = true;
+                module.writeChain.set(0);
+                schedule(module, ConversionDirection.NETBEANS_TO_INTELLIJ);
+                break;
+        }
+    }
+
+    /**
+     * A created module file or an added module is converted from the Netbeans side, which then wins over the
+     * .iml whether project.properties holds a user edit or the output of an earlier conversion.
+     */
+    private void takeNetbeansSide(ModuleState module) throws IOException {
+        synchronized (writeAction) {
+            if (Files.exists(module.propertiesFile)) {
+                module.lastPropertiesEdit = readPropertiesJars(module);
+            }
+        }
+    }
+
+    private static List<String> readPropertiesJars(ModuleState module) throws IOException {
+        return jarNames(NetbeansClasspath.extractLibraries(NetbeansPropertyEvaluator.load(module.directory)));
+    }
+
+    private boolean editProperties(ModuleState module, List<String> jars) throws IOException {
+        List<String> references = new ArrayList<>();
+        for (String jar : jars) {
+            references.add("../lib/" + jar);
+        }
+
+        synchronized (writeAction) {
+            PropertiesDocument document = PropertiesDocument.parse(Files.exists(module.propertiesFile)
+                    ? Files.readAllBytes(module.propertiesFile)
+                    : "src.dir=src\ntest.src.dir=test\n".getBytes(StandardCharsets.ISO_8859_1));
+            NetbeansClasspathWriter.patchClasspath(document, references);
+            module.lastPropertiesEdit = jars;
+            return userWrite(module.propertiesFile, document.toBytes());
+        }
+    }
+
+    private boolean editIml(ModuleState module, List<String> jars) throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (String jar : jars) {
+            paths.add("$MODULE_DIR$/../lib/" + jar);
+        }
+
+        synchronized (writeAction) {
+            byte[] content = Files.exists(module.moduleFile)
+                    ? Files.readAllBytes(module.moduleFile) : MODULE_TEMPLATE.getBytes(StandardCharsets.UTF_8);
+            module.lastImlEdit = jars;
+            return userWrite(module.moduleFile, imlRewriter.rewrite(content, DependencySet.of(paths)));
+        }
+    }
+
+    private boolean userWrite(Path file, byte[] content) throws IOException {
+        boolean written = AtomicFileWriter.write(file, content);
+        if (written) {
+            userWrites.incrementAndGet();
+        }
+        return written;
+    }
+
+    private void schedule(ModuleState module, String direction) {
+        module.pendingSince.get(direction).compareAndSet(0, System.nanoTime());
+        queue.submit(getKey(module, direction), cancellation -> run(module, direction, cancellation));
+    }
+
+    private static String getKey(ModuleState module, String direction) {
+        return direction + ":" + module.getName();
+    }
+
+    private void run(ModuleState module, String direction, ConversionQueue.Cancellation cancellation) throws Exception {
+        long since = module.pendingSince.get(direction).getAndSet(0);
+        AtomicInteger running = module.running.get(direction);
+        if (running.incrementAndGet() > 1) {
+            violations.add(module.getName() + ": two conversions " + direction + " at once");
+        }
+
+        try {
+            if (module.registered && !cancellation.isCancelled()) {
+                convert(module, direction);
+            }
+        } finally {
+            running.decrementAndGet();
+            if (since != 0) {
+                latencies.add(System.nanoTime() - since);
+            }
+        }
+    }
+
+    /**
+     * What ConversionScheduler and the converters do around the engine, on the model of the module.
+     */
+    private void convert(ModuleState module, String direction) throws Exception {
+        conversions.incrementAndGet();
+        ModuleModel model = cache.get(module.directory, module.moduleFile);
+        ModuleModel.NetbeansSide netbeans = model.getNetbeans();
+        ModuleModel.IntellijSide intellij = model.getIntellij();
+        if (netbeans == null || intellij == null) {
+            return;
+        }
+        if (cache.isBehind(model, direction)) {
+            behind.incrementAndGet();
+            schedule(module, ConversionDirection.opposite(direction));
+            return;
+        }
+
+        boolean current;
+        if (ConversionDirection.NETBEANS_TO_INTELLIJ.equals(direction)) {
+            ConversionResult result = engine.toIntellij(model,
+                    engine.resolveClasspath(module.directory, netbeans.getClasspath(), netbeans.getReferences()));
+            current = cache.write(model, () -> {
+                if (result.getContent() == null) {
+                    cache.converted(model, direction, null);
+                } else if (conversionWrite(module.moduleFile, result.getContent(), intellij.getContent()) == AtomicFileWriter.Outcome.WRITTEN) {
+                    converted(module);
+                    cache.converted(model, direction, result.getContent());
+                    // the module reloads, its libraries changed
+                    schedule(module, ConversionDirection.INTELLIJ_TO_NETBEANS);
+                }
+            });
+        } else {
+            ConversionResult result = engine.toNetbeans(model, engine.readImlReferences(intellij.getContent(), module.directory));
+            current = cache.write(model, () -> {
+                if (!result.isChanged()) {
+                    cache.converted(model, direction, null);
+                    return;
+                }
+
+                // private.properties first, as IntellijToNetbeansConverter writes them, both tagged as plugin writes
+                AtomicFileWriter.Outcome outcome = AtomicFileWriter.Outcome.UP_TO_DATE;
+                if (result.getPrivateContent() != null) {
+                    byte[] read = netbeans.getPrivatePropertiesContent();
+                    outcome = conversionWrite(result.getPrivatePropertiesFile(), result.getPrivateContent(), read != null ? read : new byte[0]);
+                }
+                if (result.getContent() != null && outcome != AtomicFileWriter.Outcome.STALE) {
+                    AtomicFileWriter.Outcome propertiesOutcome = conversionWrite(module.propertiesFile, result.getContent(), netbeans.getPropertiesContent());
+                    outcome = propertiesOutcome != AtomicFileWriter.Outcome.UP_TO_DATE ? propertiesOutcome : outcome;
+                }
+                if (outcome == AtomicFileWriter.Outcome.WRITTEN) {
+                    converted(module);
+                    cache.converted(model, direction, result.getContent(), result.getPrivateContent());
+                }
+            });
+        }
+
+        // a file changed while converting, the conversion runs again on it
+        if (!current) {
+            schedule(module, direction);
+        }
+    }
+
+    /**
+     * Writes the content unless the file changed since the model was read, the edit that changed it has its own
+     * conversion scheduled. A missing file is created empty first, as the converters do for private.properties.
+     */
+    private AtomicFileWriter.Outcome conversionWrite(Path file, byte[] content, byte[] read) throws IOException {
+        synchronized (writeAction) {
+            if (read.length == 0 && !Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                Files.createFile(file);
+            }
+            return AtomicFileWriter.write(file, content, read);
+        }
+    }
+
+    private void converted(ModuleState module) {
+        conversionWrites.incrementAndGet();
+        int chain = module.writeChain.incrementAndGet();
+        maxWriteChain.accumulateAndGet(chain, Math::max);
+        if (chain == MAX_WRITE_CHAIN + 1) {
+            violations.add(module.getName() + ": " + chain + " conversion writes in a row, converting itself");
+        }
+    }
+
+    private void awaitQuiescence() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIESCENCE_TIMEOUT_MILLIS);
+        int idleChecks = 0;
+        while (idleChecks < 3) {
+            if (System.nanoTime() > deadline) {
+                violations.add("conversions still running after " + QUIESCENCE_TIMEOUT_MILLIS + " ms");
+                return;
+            }
+            idleChecks = queue.isIdle() ? idleChecks + 1 : 0;
+            Thread.sleep(COALESCE_DELAY_MILLIS * 2);
+        }
+    }
+
+    private void checkConvergence() throws Exception {
+        for (ModuleState module : modules) {
+            if (!Files.exists(module.propertiesFile) || !Files.exists(module.moduleFile)) {
+                violations.add(module.getName() + ": a file is missing at the end of the script");
+                continue;
+            }
+
+            List<String> properties = readPropertiesJars(module);
+            List<String> libraries = new ArrayList<>();
+            for (DependencySet.Dependency dependency : imlRewriter.readLibraries(Files.readAllBytes(module.moduleFile)).getDependencies()) {
+                libraries.add(dependency.getPath());
+            }
+            libraries = jarNames(libraries);
+
+            if (!properties.equals(libraries)) {
+                violations.add(module.getName() + ": project.properties has " + properties + ", the .iml " + libraries);
+            } else if (!properties.equals(module.lastPropertiesEdit) && !properties.equals(module.lastImlEdit)) {
+                violations.add(module.getName() + ": lost update, ends with " + properties + ", last edits were "
+                        + module.lastPropertiesEdit + " in project.properties and " + module.lastImlEdit + " in the .iml");
+            }
+
+            for (String type : DIRECTIONS) {
+                ConversionResult result = engine.convert(module.directory, type);
+                if (result.getError() != null || result.isChanged()) {
+                    violations.add(module.getName() + ": not converged, " + type + " "
+                            + (result.getError() != null ? result.getError() : "would write again"));
+                }
+            }
+        }
+    }
+
+    private void tearDown(long openFiles, int threads) throws Exception {
+        for (ModuleState module : modules) {
+            apply(new Event(EventType.REMOVE_MODULE, module, Collections.emptyList(), 0));
+        }
+        if (!queue.isIdle()) {
+            violations.add("queued conversions left after every module was removed");
+        }
+        if (cache.size() != 0) {
+            violations.add(cache.size() + " models left in the cache after every module was removed");
+        }
+
+        queue.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (countThreads(QUEUE_NAME) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (countThreads(QUEUE_NAME) > 0) {
+            violations.add(countThreads(QUEUE_NAME) + " conversion threads left after the queue was shut down");
+        }
+        if (maxBusyWorkers.get() > threads) {
+            violations.add(maxBusyWorkers.get() + " conversions ran at once, over the " + threads + " workers");
+        }
+
+        long leaked = countOpenFiles() - openFiles;
+        if (openFiles >= 0 && leaked > 0) {
+            violations.add(leaked + " file handles left open");
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        long p50 = percentile(sorted, 0.5);
+        long p99 = percentile(sorted, 0.99);
+        long max = sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1);
+        if (TimeUnit.NANOSECONDS.toMillis(max) > maxLatencyMillis) {
+            violations.add("slowest conversion took " + TimeUnit.NANOSECONDS.toMillis(max) + " ms after its event, over " + maxLatencyMillis + " ms");
+        }
+
+        System.out.println(String.format("%d user writes, %d jobs dispatched, %d conversions, %d behind an edit, %d conversion writes, longest write chain %d, in %d ms",
+                userWrites.get(), dispatched.get(), conversions.get(), behind.get(), conversionWrites.get(), maxWriteChain.get(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        System.out.println(String.format("event to conversion latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                p50 / 1e6, p99 / 1e6, max / 1e6));
+        if (violations.isEmpty()) {
+            System.out.println("PASSED");
+        } else {
+            System.out.println("FAILED, " + violations.size() + " violations:");
+            for (String violation : violations) {
+                System.out.println("  " + violation);
+            }
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        return sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * percentile)));
+    }
+
+    private static List<String> randomJars(Random random) {
+        List<String> jars = new ArrayList<>();
+        int count = random.nextInt(MAX_JARS_PER_MODULE + 1);
+        while (jars.size() < count) {
+            String jar = jarName(random.nextInt(JARS));
+            if (!jars.contains(jar)) {
+                jars.add(jar);
+            }
+        }
+        return jars;
+    }
+
+    private static String jarName(int index) {
+        return "library" + index + ".jar";
+    }
+
+    private static List<String> jarNames(List<String> paths) {
+        List<String> names = new ArrayList<>();
+        for (String path : paths) {
+            names.add(Paths.get(path).getFileName().toString());
+        }
+        return names;
+    }
+
+    /**
+     * Open file descriptors of the process, -1 where /proc is not available.
+     */
+    private static long countOpenFiles() throws IOException {
+        Path descriptors = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(descriptors)) {
+            return -1;
+        }
+        try (Stream<Path> files = Files.list(descriptors)) {
+            return files.count();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + " " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static long countThreads(String prefix) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().startsWith(prefix))
+                .count();
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    // left in the temporary directory
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package converter;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Benchmarks the parts of both converters that do not need the IDE, on synthetic projects of 10 to 10,000
+ * classpath entries.
+ *
+ * Netbeans to Intellij: evaluating project.properties into order entries, the up-to-date check against the
+ * .iml file, and the .iml rewrite. Intellij to Netbeans: patching the lines of project.properties and
+ * private.properties with the classpath of the module, then with one jar of it replaced.
+ * Run with: java -cp out converter.ConverterBenchmark [sizes...]
+ */
+public class ConverterBenchmark {
+    private static final int[] DEFAULT_SIZES = {10, 100, 1000, 10000};
+
+    public static void main(String[] args) throws Exception {
+        ImlRewriter rewriter = new ImlRewriter();
+
+        BenchmarkHarness.printHeader();
+        for (int size : BenchmarkHarness.parseSizes(args, DEFAULT_SIZES)) {
+            String propertiesText = BenchmarkFixtures.syntheticProperties(size);
+            byte[] iml = BenchmarkFixtures.syntheticIml(size);
+            DependencySet libraries = DependencySet.of(NetbeansClasspath.extractLibraries(
+                    NetbeansPropertyEvaluator.of(load(propertiesText), null)));
+            byte[] convertedIml = rewriter.rewrite(iml, libraries);
+
+            List<String> references = BenchmarkFixtures.syntheticReferences(size);
+            Path projectDirectory = Paths.get("synthetic");
+
+            BenchmarkHarness.measure("nb->ij properties to order entries", size, () -> {
+                NetbeansPropertyEvaluator evaluator = NetbeansPropertyEvaluator.of(load(propertiesText), null);
+                return DependencySet.of(NetbeansClasspath.extractLibraries(evaluator)).size();
+            });
+            BenchmarkHarness.measure("nb->ij iml up-to-date check", size,
+                    () -> rewriter.readLibraries(convertedIml).diff(libraries).isEmpty() ? 1 : 0);
+            BenchmarkHarness.measure("nb->ij iml rewrite", size, () -> rewriter.rewrite(iml, libraries).length);
+
+            BenchmarkHarness.measure("ij->nb properties patch", size, () -> {
+                PropertiesDocument document = PropertiesDocument.parse(propertiesText);
+                PropertiesDocument privateDocument = PropertiesDocument.parse("");
+                NetbeansClasspathWriter.patchClasspath(document, privateDocument, projectDirectory, references);
+                return document.toBytes().length + privateDocument.toBytes().length;
+            });
+
+            PropertiesDocument patched = PropertiesDocument.parse(propertiesText);
+            PropertiesDocument patchedPrivate = PropertiesDocument.parse("");
+            NetbeansClasspathWriter.patchClasspath(patched, patchedPrivate, projectDirectory, references);
+            String classpathText = patched.render();
+            String privateText = patchedPrivate.render();
+            List<String> changedReferences = new ArrayList<>(references);
+            changedReferences.set(changedReferences.size() / 2, "lib/replaced.jar");
+            BenchmarkHarness.measure("ij->nb properties line patch", size, () -> {
+                PropertiesDocument document = PropertiesDocument.parse(classpathText);
+                PropertiesDocument privateDocument = PropertiesDocument.parse(privateText);
+                NetbeansClasspathWriter.patchClasspath(document, privateDocument, projectDirectory, changedReferences);
+                return document.toBytes().length + privateDocument.toBytes().length;
+            });
+        }
+    }
+
+    private static Properties load(String text) throws Exception {
+        Properties properties = new Properties();
+        properties.load(new StringReader(text));
+        return properties;
+    }
+}
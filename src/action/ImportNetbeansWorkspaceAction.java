@@ -0,0 +1,168 @@
+package action;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.module.ModifiableModuleModel;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import converter.ConversionResult;
+import converter.ConverterFactory;
+import converter.JarIndexService;
+import converter.JarRootPrewarmer;
+import converter.WorkspaceImporter;
+import org.jetbrains.annotations.NotNull;
+import util.NotificationUtil;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports every Netbeans project found under a directory as an Intellij module.
+ *
+ * Module files are computed in parallel and written in one batch. The jars they reference are loaded in one
+ * batch too, then the module files are refreshed and added to the project in a single write action. One summary
+ * is shown at the end instead of a notification per module.
+ */
+public class ImportNetbeansWorkspaceAction extends AnAction {
+    private final Logger logger = Logger.getInstance("com.trangdp.ImportNetbeansWorkspaceAction");
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int SLOWEST_SHOWN = 10;
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+
+        VirtualFile root = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFolderDescriptor(), project, project.getBaseDir());
+        if (root == null) {
+            return;
+        }
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Importing Netbeans workspace", true) {
+            private final List<ConversionResult> imports = new ArrayList<>();
+            private final List<File> written = new ArrayList<>();
+            private long startNanos;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                startNanos = System.nanoTime();
+
+                try (WorkspaceImporter importer = new WorkspaceImporter(PARALLELISM, JarIndexService.getInstance().getIndex())) {
+                    indicator.setIndeterminate(true);
+                    indicator.setText("Looking for Netbeans projects in " + root.getPresentableUrl());
+                    List<Path> projectDirectories = importer.scan(Paths.get(root.getPath()), indicator::isCanceled);
+                    indicator.checkCanceled();
+
+                    indicator.setText("Converting " + projectDirectories.size() + " Netbeans projects");
+                    imports.addAll(importer.convert(projectDirectories, ConverterFactory.NETBEANS_TO_INTELLIJ, indicator::isCanceled));
+                    indicator.checkCanceled();
+
+                    indicator.setText("Writing module files");
+                    for (Path path : importer.write(imports)) {
+                        written.add(path.toFile());
+                    }
+                }
+
+                // the jars of every module are loaded in one batch, before the modules referencing them
+                Set<Path> jars = new LinkedHashSet<>();
+                for (ConversionResult moduleImport : imports) {
+                    if (moduleImport.getError() == null) {
+                        jars.addAll(moduleImport.getJars());
+                    }
+                }
+                indicator.setText("Loading " + jars.size() + " library jars");
+                JarRootPrewarmer.getInstance(project).prewarmAndWait(jars);
+            }
+
+            @Override
+            public void onSuccess() {
+                Runnable load = () -> {
+                    if (!project.isDisposed()) {
+                        loadModules(project, imports);
+                        showSummary(imports, System.nanoTime() - startNanos);
+                    }
+                };
+
+                // one refresh for every module file written, the modules are loaded once it is over
+                if (written.isEmpty()) {
+                    load.run();
+                } else {
+                    LocalFileSystem.getInstance().refreshIoFiles(written, true, false, load);
+                }
+            }
+        });
+    }
+
+    private void loadModules(@NotNull Project project, @NotNull List<ConversionResult> imports) {
+        ApplicationManager.getApplication().runWriteAction(() -> {
+            ModifiableModuleModel model = ModuleManager.getInstance(project).getModifiableModel();
+            for (ConversionResult moduleImport : imports) {
+                if (moduleImport.getError() != null || model.findModuleByName(moduleImport.getName()) != null) {
+                    continue;
+                }
+
+                try {
+                    model.loadModule(FileUtil.toSystemIndependentName(moduleImport.getTargetFile().toString()));
+                } catch (Exception e) {
+                    logger.warn("Unable to load module " + moduleImport.getTargetFile(), e);
+                }
+            }
+            model.commit();
+        });
+    }
+
+    private void showSummary(@NotNull List<ConversionResult> imports, long totalNanos) {
+        int changed = 0;
+        int failed = 0;
+        StringBuilder details = new StringBuilder();
+        for (ConversionResult moduleImport : imports) {
+            if (moduleImport.getError() != null) {
+                failed++;
+            } else if (moduleImport.isChanged()) {
+                changed++;
+            }
+
+            details.append(String.format("%n  %-40s %6d ms %5d libraries %s", moduleImport.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(moduleImport.getNanos()), moduleImport.getLibraries(),
+                    moduleImport.getError() != null ? moduleImport.getError() : moduleImport.isChanged() ? "converted" : "up to date"));
+        }
+        logger.info("Netbeans workspace import:" + details);
+
+        List<ConversionResult> slowest = new ArrayList<>(imports);
+        Collections.sort(slowest, Comparator.comparingLong(ConversionResult::getNanos).reversed());
+
+        StringBuilder message = new StringBuilder(String.format("Imported %d Netbeans projects in %d ms: %d converted, %d up to date, %d failed.",
+                imports.size(), TimeUnit.NANOSECONDS.toMillis(totalNanos), changed, imports.size() - changed - failed, failed));
+        for (ConversionResult moduleImport : slowest.subList(0, Math.min(SLOWEST_SHOWN, slowest.size()))) {
+            message.append(String.format("<br/>%s: %d ms", moduleImport.getName(), TimeUnit.NANOSECONDS.toMillis(moduleImport.getNanos())));
+        }
+
+        NotificationUtil.showSummary(message.toString());
+    }
+}
@@ -0,0 +1,43 @@
+package action;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.ToggleAction;
+import com.intellij.openapi.project.Project;
+import converter.ConverterSettings;
+import converter.JarArtifactBatcher;
+import converter.JarPackagingService;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Switches {@link ConverterSettings#packageJars}, the jars are packaged from the next build on, by the jar artifacts
+ * of the modules or by {@link JarPackagingService}.
+ */
+public class PackageJarsAction extends ToggleAction {
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        super.update(e);
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+    @Override
+    public boolean isSelected(AnActionEvent e) {
+        Project project = e.getProject();
+        return project != null && ConverterSettings.getInstance(project).packageJars;
+    }
+
+    @Override
+    public void setSelected(AnActionEvent e, boolean state) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+
+        ConverterSettings settings = ConverterSettings.getInstance(project);
+        settings.packageJars = state;
+        if (settings.jarArtifacts) {
+            JarArtifactBatcher.getInstance(project).updateBuildOnMake();
+        } else {
+            JarPackagingService.getInstance(project);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package action;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.ToggleAction;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import converter.ConversionScheduler;
+import converter.ConverterFactory;
+import converter.ConverterSettings;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Switches {@link ConverterSettings#shareLibraries} and converts every module again with the new setting.
+ */
+public class ShareLibrariesAction extends ToggleAction {
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        super.update(e);
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+    @Override
+    public boolean isSelected(AnActionEvent e) {
+        Project project = e.getProject();
+        return project != null && ConverterSettings.getInstance(project).shareLibraries;
+    }
+
+    @Override
+    public void setSelected(AnActionEvent e, boolean state) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+
+        ConverterSettings.getInstance(project).shareLibraries = state;
+        for (Module module : ModuleManager.getInstance(project).getModules()) {
+            ConversionScheduler.getInstance(project).schedule(module, ConverterFactory.NETBEANS_TO_INTELLIJ);
+        }
+    }
+}
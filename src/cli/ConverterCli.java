@@ -0,0 +1,245 @@
+package cli;
+
+import converter.ClasspathConflictAnalyzer;
+import converter.ConversionDirection;
+import converter.ConversionResult;
+import converter.JarIndex;
+import converter.WorkspaceImporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.AtomicFileWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts every Netbeans project under a directory without the IDE, for CI checks and pre-generated workspaces.
+ *
+ * Projects are converted in parallel with the same engine as the plugin, only the files that change are written,
+ * and a JSON report of every project is printed or saved. The exit code is 0 when everything converted,
+ * 1 when a project failed, and 2 on bad arguments.
+ *
+ * Run with: java -cp netbeans-intellij-plugin.jar cli.ConverterCli [options] root
+ */
+public class ConverterCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = "" +
+            "usage: ConverterCli [options] root\n" +
+            "  --direction netbeans-to-intellij|intellij-to-netbeans  default netbeans-to-intellij\n" +
+            "  --threads N           parallel conversions, default the number of processors\n" +
+            "  --report FILE         write the JSON report to FILE instead of the standard output\n" +
+            "  --jar-index FILE      load and save the jar index in FILE, to reuse it between runs\n" +
+            "  --dry-run             convert without writing, the report tells what would change\n";
+
+    private Path root;
+    private String direction = ConversionDirection.NETBEANS_TO_INTELLIJ;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path report;
+    private Path jarIndexFile;
+    private boolean dryRun;
+
+    public static void main(String[] args) {
+        ConverterCli cli = new ConverterCli();
+        String error = cli.parse(args);
+        if (error != null) {
+            System.err.println(error);
+            System.err.print(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+
+        try {
+            System.exit(cli.run());
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_FAILED);
+        }
+    }
+
+    /**
+     * Returns the error message of invalid arguments, null when they are valid.
+     */
+    @Nullable
+    private String parse(@NotNull String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--dry-run")) {
+                dryRun = true;
+            } else if (arg.startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    return "Missing value of " + arg;
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--direction":
+                        if (!value.equals(ConversionDirection.NETBEANS_TO_INTELLIJ) && !value.equals(ConversionDirection.INTELLIJ_TO_NETBEANS)) {
+                            return "Unknown direction: " + value;
+                        }
+                        direction = value;
+                        break;
+                    case "--threads":
+                        try {
+                            threads = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            return "Invalid number of threads: " + value;
+                        }
+                        break;
+                    case "--report":
+                        report = Paths.get(value);
+                        break;
+                    case "--jar-index":
+                        jarIndexFile = Paths.get(value);
+                        break;
+                    default:
+                        return "Unknown option: " + arg;
+                }
+            } else if (root == null) {
+                root = Paths.get(arg);
+            } else {
+                return "Only one root directory is allowed: " + arg;
+            }
+        }
+
+        if (root == null) {
+            return "Missing root directory";
+        }
+        if (!Files.isDirectory(root)) {
+            return "Not a directory: " + root;
+        }
+        return null;
+    }
+
+    private int run() throws IOException {
+        long start = System.nanoTime();
+        JarIndex jarIndex = jarIndexFile != null && Files.isRegularFile(jarIndexFile) ? JarIndex.load(jarIndexFile) : new JarIndex();
+
+        List<ConversionResult> results;
+        try (WorkspaceImporter importer = new WorkspaceImporter(threads, jarIndex)) {
+            results = importer.convert(importer.scan(root, () -> false), direction, () -> false);
+            if (!dryRun) {
+                importer.write(results);
+            }
+        }
+
+        if (jarIndexFile != null && jarIndex.isDirty()) {
+            jarIndex.save(jarIndexFile);
+        }
+
+        boolean failed = false;
+        for (ConversionResult result : results) {
+            failed |= result.getError() != null;
+        }
+
+        if (report != null) {
+            try (Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                writeReport(writer, results, System.nanoTime() - start);
+            }
+        } else {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            writeReport(writer, results, System.nanoTime() - start);
+            writer.flush();
+        }
+
+        return failed ? EXIT_FAILED : EXIT_OK;
+    }
+
+    private void writeReport(@NotNull Writer writer, @NotNull List<ConversionResult> results, long totalNanos) throws IOException {
+        int changed = 0;
+        int failed = 0;
+        for (ConversionResult result : results) {
+            if (result.getError() != null) {
+                failed++;
+            } else if (result.isChanged()) {
+                changed++;
+            }
+        }
+
+        writer.write("{\n");
+        writer.write("  \"root\": " + quote(root.toAbsolutePath().normalize().toString()) + ",\n");
+        writer.write("  \"direction\": " + quote(direction) + ",\n");
+        writer.write("  \"dryRun\": " + dryRun + ",\n");
+        writer.write("  \"millis\": " + TimeUnit.NANOSECONDS.toMillis(totalNanos) + ",\n");
+        writer.write("  \"projects\": " + results.size() + ",\n");
+        writer.write("  \"changed\": " + changed + ",\n");
+        writer.write("  \"upToDate\": " + (results.size() - changed - failed) + ",\n");
+        writer.write("  \"failed\": " + failed + ",\n");
+        writer.write("  \"written\": " + AtomicFileWriter.getWrites() + ",\n");
+        writer.write("  \"writesAvoided\": " + AtomicFileWriter.getAvoidedWrites() + ",\n");
+        writer.write("  \"writesStale\": " + AtomicFileWriter.getStaleWrites() + ",\n");
+        writer.write("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            ConversionResult result = results.get(i);
+            String status = result.getError() != null ? "failed" : result.isCreated() ? "created" : result.isChanged() ? "changed" : "up-to-date";
+
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write("    {\"name\": " + quote(result.getName())
+                    + ", \"directory\": " + quote(result.getDirectory().toString())
+                    + ", \"file\": " + quote(result.getTargetFile().toString())
+                    + ", \"status\": " + quote(status)
+                    + ", \"libraries\": " + result.getLibraries()
+                    + ", \"millis\": " + TimeUnit.NANOSECONDS.toMillis(result.getNanos())
+                    + (result.getConflicts() != null ? ", \"conflicts\": " + formatConflicts(result.getConflicts()) : "")
+                    + (result.getError() != null ? ", \"error\": " + quote(result.getError()) : "")
+                    + "}");
+        }
+        writer.write(results.isEmpty() ? "]\n" : "\n  ]\n");
+        writer.write("}\n");
+    }
+
+    @NotNull
+    private static String formatConflicts(@NotNull ClasspathConflictAnalyzer.Report conflicts) {
+        StringBuilder shadowedJars = new StringBuilder();
+        for (String jar : conflicts.getShadowedJars()) {
+            shadowedJars.append(shadowedJars.length() == 0 ? "" : ", ").append(quote(jar));
+        }
+        StringBuilder splitPackages = new StringBuilder();
+        for (ClasspathConflictAnalyzer.SplitPackage splitPackage : conflicts.getSplitPackages()) {
+            splitPackages.append(splitPackages.length() == 0 ? "" : ", ").append(quote(splitPackage.getName()));
+        }
+        return "{\"duplicateClasses\": " + conflicts.getDuplicateClasses()
+                + ", \"shadowedJars\": [" + shadowedJars + "]"
+                + ", \"splitPackages\": [" + splitPackages + "]}";
+    }
+
+    @NotNull
+    private static String quote(@NotNull String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,552 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the classes of a classpath that are hidden by an earlier jar: duplicate classes, packages split over
+ * several jars, and jars whose classes are all shadowed, typically two versions of the same library.
+ *
+ * Only the central directory of each jar is read, in parallel, and the class and package names are kept as
+ * 64-bit hashes in sorted arrays, cached as long as the size and modification time of the jar do not change.
+ * The classpath is then checked in order against an open addressing table of hashes. Names are decoded only
+ * for the few entries that end up in the report.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ClasspathConflictAnalyzer {
+    private static final int SAMPLE_SIZE = 5;
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String MODULE_INFO = "module-info.class";
+    private static final String META_INF = "META-INF/";
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Classes of a jar found again in an earlier jar of the classpath.
+     */
+    public static final class Shadowing {
+        private final String jar;
+        private final String shadowedBy;
+        private final int classes;
+        private final boolean complete;
+        private final List<String> sample;
+
+        Shadowing(@NotNull String jar, @NotNull String shadowedBy, int classes, boolean complete, @NotNull List<String> sample) {
+            this.jar = jar;
+            this.shadowedBy = shadowedBy;
+            this.classes = classes;
+            this.complete = complete;
+            this.sample = Collections.unmodifiableList(sample);
+        }
+
+        @NotNull
+        public String getJar() {
+            return jar;
+        }
+
+        /**
+         * The earlier jar the classes are loaded from.
+         */
+        @NotNull
+        public String getShadowedBy() {
+            return shadowedBy;
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        /**
+         * True when every class of the jar is shadowed, the jar is useless on this classpath.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * A few of the duplicate class names.
+         */
+        @NotNull
+        public List<String> getSample() {
+            return sample;
+        }
+
+        @Override
+        public String toString() {
+            return jar + (complete ? " is shadowed by " : " has " + classes + " classes shadowed by ") + shadowedBy + " " + sample;
+        }
+    }
+
+    public static final class SplitPackage {
+        private final String name;
+        private final List<String> jars;
+
+        SplitPackage(@NotNull String name, @NotNull List<String> jars) {
+            this.name = name;
+            this.jars = Collections.unmodifiableList(jars);
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The jars defining classes of the package, in classpath order.
+         */
+        @NotNull
+        public List<String> getJars() {
+            return jars;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + jars;
+        }
+    }
+
+    public static final class Report {
+        private final int jars;
+        private final int classes;
+        private final int duplicateClasses;
+        private final List<Shadowing> shadowings;
+        private final List<SplitPackage> splitPackages;
+        private final long nanos;
+
+        Report(int jars, int classes, int duplicateClasses, @NotNull List<Shadowing> shadowings,
+               @NotNull List<SplitPackage> splitPackages, long nanos) {
+            this.jars = jars;
+            this.classes = classes;
+            this.duplicateClasses = duplicateClasses;
+            this.shadowings = Collections.unmodifiableList(shadowings);
+            this.splitPackages = Collections.unmodifiableList(splitPackages);
+            this.nanos = nanos;
+        }
+
+        public int getJars() {
+            return jars;
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        public int getDuplicateClasses() {
+            return duplicateClasses;
+        }
+
+        /**
+         * One entry per pair of jars sharing classes, in classpath order of the shadowed jar.
+         */
+        @NotNull
+        public List<Shadowing> getShadowings() {
+            return shadowings;
+        }
+
+        @NotNull
+        public List<String> getShadowedJars() {
+            List<String> shadowed = new ArrayList<>();
+            for (Shadowing shadowing : shadowings) {
+                if (shadowing.isComplete()) {
+                    shadowed.add(shadowing.getJar());
+                }
+            }
+            return shadowed;
+        }
+
+        @NotNull
+        public List<SplitPackage> getSplitPackages() {
+            return splitPackages;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isEmpty() {
+            return shadowings.isEmpty() && splitPackages.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(duplicateClasses).append(" duplicate classes, ").append(splitPackages.size()).append(" split packages, ")
+                    .append(getShadowedJars().size()).append(" shadowed jars in ").append(jars).append(" jars, ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms");
+            for (Shadowing shadowing : shadowings) {
+                builder.append("\n  ").append(shadowing);
+            }
+            for (SplitPackage splitPackage : splitPackages) {
+                builder.append("\n  split package ").append(splitPackage);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Sorted distinct hashes of the classes and packages of a jar.
+     */
+    private static final class JarClasses {
+        private final long size;
+        private final long modified;
+        private final long[] classes;
+        private final long[] packages;
+
+        JarClasses(long size, long modified, @NotNull long[] classes, @NotNull long[] packages) {
+            this.size = size;
+            this.modified = modified;
+            this.classes = classes;
+            this.packages = packages;
+        }
+    }
+
+    /**
+     * Classes of a jar found in an earlier one, with the hashes of the first few.
+     */
+    private static final class Conflict {
+        private final int owner;
+        private final int jar;
+        private final long[] sample = new long[SAMPLE_SIZE];
+        private int count;
+
+        Conflict(int owner, int jar) {
+            this.owner = owner;
+            this.jar = jar;
+        }
+    }
+
+    private final Map<String, JarClasses> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Analyzes the jars in classpath order. Directories, missing and unreadable jars are skipped, a jar listed
+     * twice is checked once.
+     */
+    @NotNull
+    public Report analyze(@NotNull List<Path> classpath) {
+        long start = System.nanoTime();
+
+        Set<Path> distinct = new LinkedHashSet<>();
+        for (Path jar : classpath) {
+            distinct.add(jar.toAbsolutePath().normalize());
+        }
+        List<Path> jars = new ArrayList<>(distinct);
+
+        JarClasses[] indexed = new JarClasses[jars.size()];
+        IntStream.range(0, jars.size()).parallel().forEach(i -> indexed[i] = get(jars.get(i)));
+
+        int classCount = 0;
+        int packageCount = 0;
+        for (JarClasses classes : indexed) {
+            if (classes != null) {
+                classCount += classes.classes.length;
+                packageCount += classes.packages.length;
+            }
+        }
+
+        LongIntTable classOwners = new LongIntTable(classCount);
+        Map<Long, Conflict> conflicts = new LinkedHashMap<>();
+        int duplicateClasses = 0;
+        boolean[] complete = new boolean[jars.size()];
+        for (int j = 0; j < indexed.length; j++) {
+            if (indexed[j] == null) {
+                continue;
+            }
+
+            int shadowed = 0;
+            Conflict conflict = null;
+            for (long hash : indexed[j].classes) {
+                int owner = classOwners.putIfAbsent(hash, j);
+                if (owner < 0) {
+                    continue;
+                }
+
+                // the duplicates of a jar mostly come from the same earlier jar, the lookup is skipped for them
+                if (conflict == null || conflict.owner != owner) {
+                    int jar = j;
+                    conflict = conflicts.computeIfAbsent((long) owner << 32 | j, key -> new Conflict(owner, jar));
+                }
+                if (conflict.count < SAMPLE_SIZE) {
+                    conflict.sample[conflict.count] = hash;
+                }
+                conflict.count++;
+                shadowed++;
+            }
+            duplicateClasses += shadowed;
+            complete[j] = shadowed > 0 && shadowed == indexed[j].classes.length;
+        }
+
+        LongIntTable packageOwners = new LongIntTable(packageCount);
+        Map<Long, List<Integer>> splits = new LinkedHashMap<>();
+        for (int j = 0; j < indexed.length; j++) {
+            if (indexed[j] == null) {
+                continue;
+            }
+
+            for (long hash : indexed[j].packages) {
+                int owner = packageOwners.putIfAbsent(hash, j);
+                if (owner >= 0) {
+                    splits.computeIfAbsent(hash, key -> new ArrayList<>(Collections.singletonList(owner))).add(j);
+                }
+            }
+        }
+
+        // a fully shadowed jar is reported as such, the packages it shares with the jar shadowing it are not split
+        for (Iterator<List<Integer>> it = splits.values().iterator(); it.hasNext(); ) {
+            List<Integer> splitJars = it.next();
+            splitJars.removeIf(j -> complete[j]);
+            if (splitJars.size() < 2) {
+                it.remove();
+            }
+        }
+
+        // names are decoded from the jars involved only, one more pass over their central directory
+        Map<Integer, Set<Long>> wanted = new HashMap<>();
+        for (Conflict conflict : conflicts.values()) {
+            Set<Long> hashes = wanted.computeIfAbsent(conflict.jar, key -> new HashSet<>());
+            for (int i = 0; i < Math.min(conflict.count, SAMPLE_SIZE); i++) {
+                hashes.add(conflict.sample[i]);
+            }
+        }
+        for (Map.Entry<Long, List<Integer>> split : splits.entrySet()) {
+            wanted.computeIfAbsent(split.getValue().get(0), key -> new HashSet<>()).add(split.getKey());
+        }
+        Map<Long, String> names = new HashMap<>();
+        for (Map.Entry<Integer, Set<Long>> entry : wanted.entrySet()) {
+            readNames(jars.get(entry.getKey()), entry.getValue(), names);
+        }
+
+        List<Shadowing> shadowings = new ArrayList<>();
+        for (Conflict conflict : conflicts.values()) {
+            List<String> sample = new ArrayList<>();
+            for (int i = 0; i < Math.min(conflict.count, SAMPLE_SIZE); i++) {
+                String name = names.get(conflict.sample[i]);
+                if (name != null) {
+                    sample.add(name);
+                }
+            }
+            shadowings.add(new Shadowing(jars.get(conflict.jar).toString(), jars.get(conflict.owner).toString(),
+                    conflict.count, complete[conflict.jar], sample));
+        }
+
+        List<SplitPackage> splitPackages = new ArrayList<>();
+        for (Map.Entry<Long, List<Integer>> split : splits.entrySet()) {
+            List<String> splitJars = new ArrayList<>();
+            for (int j : split.getValue()) {
+                splitJars.add(jars.get(j).toString());
+            }
+            String name = names.get(split.getKey());
+            splitPackages.add(new SplitPackage(name != null ? name : "?", splitJars));
+        }
+
+        return new Report(jars.size(), classCount, duplicateClasses, shadowings, splitPackages, System.nanoTime() - start);
+    }
+
+    /**
+     * Drops the cached entries of jars that no longer exist.
+     */
+    public void prune() {
+        cache.keySet().removeIf(path -> !Files.exists(Paths.get(path)));
+    }
+
+    /**
+     * Returns the classes of the jar, null when it is not a regular file.
+     */
+    private JarClasses get(@NotNull Path jar) {
+        String key = jar.toString();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        } catch (IOException e) {
+            cache.remove(key);
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        JarClasses classes = cache.get(key);
+        if (classes != null && classes.size == size && classes.modified == modified) {
+            return classes;
+        }
+
+        classes = read(jar, size, modified);
+        cache.put(key, classes);
+        return classes;
+    }
+
+    @NotNull
+    private static JarClasses read(@NotNull Path jar, long size, long modified) {
+        LongList classes = new LongList();
+        LongList packages = new LongList();
+        try {
+            ZipCentralDirectory.read(jar).forEachEntry((directory, nameOffset, nameLength, localHeaderOffset, method, compressedSize, entrySize) -> {
+                if (isClass(directory, nameOffset, nameLength)) {
+                    long[] hashes = hash(directory, nameOffset, nameLength - CLASS_SUFFIX.length());
+                    classes.add(hashes[0]);
+                    packages.add(hashes[1]);
+                }
+            });
+        } catch (IOException e) {
+            // an unreadable jar has no classes, as for the class loader
+            return new JarClasses(size, modified, EMPTY, EMPTY);
+        }
+        return new JarClasses(size, modified, classes.toSortedDistinct(), packages.toSortedDistinct());
+    }
+
+    /**
+     * Decodes the names of the classes and packages of the jar whose hash is wanted.
+     */
+    private static void readNames(@NotNull Path jar, @NotNull Set<Long> wanted, @NotNull Map<Long, String> names) {
+        try {
+            ZipCentralDirectory.read(jar).forEachEntry((directory, nameOffset, nameLength, localHeaderOffset, method, compressedSize, size) -> {
+                if (!isClass(directory, nameOffset, nameLength)) {
+                    return;
+                }
+
+                long[] hashes = hash(directory, nameOffset, nameLength - CLASS_SUFFIX.length());
+                for (int i = 0; i < hashes.length; i++) {
+                    if (wanted.contains(hashes[i]) && !names.containsKey(hashes[i])) {
+                        byte[] name = new byte[nameLength - CLASS_SUFFIX.length()];
+                        ByteBuffer buffer = directory.duplicate();
+                        buffer.position(nameOffset);
+                        buffer.get(name);
+                        String className = new String(name, StandardCharsets.UTF_8).replace('/', '.');
+                        int packageEnd = className.lastIndexOf('.');
+                        names.put(hashes[i], i == 0 ? className : packageEnd < 0 ? "" : className.substring(0, packageEnd));
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // deleted or replaced since it was indexed, the sample stays shorter
+        }
+    }
+
+    private static boolean isClass(@NotNull ByteBuffer directory, int offset, int length) {
+        return length > CLASS_SUFFIX.length() && endsWith(directory, offset, length, CLASS_SUFFIX)
+                && !startsWith(directory, offset, length, META_INF)
+                && !(length == MODULE_INFO.length() && startsWith(directory, offset, length, MODULE_INFO));
+    }
+
+    /**
+     * FNV-1a hashes of the name and of its package, the part before the last slash. A collision between two
+     * different names is unlikely enough, with 64 bits, not to be worth keeping the names to rule it out.
+     */
+    @NotNull
+    private static long[] hash(@NotNull ByteBuffer directory, int offset, int length) {
+        long hash = FNV_OFFSET;
+        long packageHash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = directory.get(i);
+            if (b == '/') {
+                packageHash = hash;
+            }
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return new long[]{hash, packageHash};
+    }
+
+    private static boolean startsWith(@NotNull ByteBuffer directory, int offset, int length, @NotNull String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (directory.get(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(@NotNull ByteBuffer directory, int offset, int length, @NotNull String suffix) {
+        return startsWith(directory, offset + length - suffix.length(), suffix.length(), suffix);
+    }
+
+    /**
+     * Growable array of longs, to collect hashes without boxing them.
+     */
+    private static final class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @NotNull
+        long[] toSortedDistinct() {
+            Arrays.sort(values, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[distinct - 1] != values[i]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, distinct);
+        }
+    }
+
+    /**
+     * Open addressing table from a hash to the index of the first jar holding it, sized once for all the keys.
+     * Zero marks a free slot, so a zero hash is stored as one.
+     */
+    private static final class LongIntTable {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        LongIntTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * Stores the value when the key is new and returns -1, returns the stored value otherwise.
+         */
+        int putIfAbsent(long key, int value) {
+            if (key == 0) {
+                key = 1;
+            }
+
+            int slot = (int) (key ^ key >>> 32) * 0x9E3779B9 & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = slot + 1 & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            return -1;
+        }
+    }
+}
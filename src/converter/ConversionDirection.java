@@ -0,0 +1,24 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The two directions of a conversion, as the converters, the engine and the command line name them.
+ *
+ * This class has no dependency on the IDE.
+ */
+public final class ConversionDirection {
+    public static final String NETBEANS_TO_INTELLIJ = "netbeans-to-intellij";
+    public static final String INTELLIJ_TO_NETBEANS = "intellij-to-netbeans";
+
+    private ConversionDirection() {
+    }
+
+    /**
+     * The direction converting back what a conversion in the given direction wrote.
+     */
+    @NotNull
+    public static String opposite(@NotNull String type) {
+        return NETBEANS_TO_INTELLIJ.equals(type) ? INTELLIJ_TO_NETBEANS : NETBEANS_TO_INTELLIJ;
+    }
+}
@@ -0,0 +1,486 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The translation between a Netbeans project and an Intellij module, on files and contents only.
+ *
+ * The IDE converters run a conversion on the {@link ModuleModel} of the module they are given with
+ * {@link #toIntellij(ModuleModel, DependencySet)} and {@link #toNetbeans(ModuleModel, List)}, the command line
+ * converter and the workspace import run a whole conversion of a project directory with
+ * {@link #convert(Path, String)}. Every step streams its input, no file is parsed into a DOM.
+ *
+ * A jar built by another Netbeans project the project references becomes a dependency on the module of that
+ * project, and back. The modules are the projects of the {@link ProjectReferenceGraph} when one is set, and the
+ * referenced projects having a module file, named after their directory.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ConversionEngine {
+    private static final String MODULE_DIR = "$MODULE_DIR$";
+    private static final String PROJECT_DIR = "$PROJECT_DIR$";
+
+    private static final String MODULE_TEMPLATE = "" +
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<module type=\"JAVA_MODULE\" version=\"4\">\n" +
+            "  <component name=\"NewModuleRootManager\" inherit-compiler-output=\"true\">\n" +
+            "    <exclude-output />\n" +
+            "    <content url=\"file://$MODULE_DIR$\">\n" +
+            "      <sourceFolder url=\"file://$MODULE_DIR$/%s\" isTestSource=\"false\" />\n" +
+            "%s" +
+            "    </content>\n" +
+            "    <orderEntry type=\"inheritedJdk\" />\n" +
+            "    <orderEntry type=\"sourceFolder\" forTests=\"false\" />\n" +
+            "  </component>\n" +
+            "</module>\n";
+
+    private static final String TEST_SOURCE_FOLDER = "      <sourceFolder url=\"file://$MODULE_DIR$/%s\" isTestSource=\"true\" />\n";
+
+    private final ImlRewriter imlRewriter = new ImlRewriter();
+    private final JarIndex jarIndex;
+    private final ClasspathConflictAnalyzer conflictAnalyzer;
+    private volatile ProjectReferenceGraph projectGraph;
+
+    public ConversionEngine(@NotNull JarIndex jarIndex) {
+        this(jarIndex, new ClasspathConflictAnalyzer());
+    }
+
+    public ConversionEngine(@NotNull JarIndex jarIndex, @NotNull ClasspathConflictAnalyzer conflictAnalyzer) {
+        this.jarIndex = jarIndex;
+        this.conflictAnalyzer = conflictAnalyzer;
+    }
+
+    /**
+     * Sets the projects converted together, a reference to one of them becomes a module dependency.
+     */
+    public void setProjectGraph(@Nullable ProjectReferenceGraph projectGraph) {
+        this.projectGraph = projectGraph;
+    }
+
+    /**
+     * Converts the project in the given direction, {@link ConversionDirection#NETBEANS_TO_INTELLIJ} or
+     * {@link ConversionDirection#INTELLIJ_TO_NETBEANS}. Nothing is written, failures are reported in the result.
+     */
+    @NotNull
+    public ConversionResult convert(@NotNull Path projectDirectory, @NotNull String type) {
+        boolean toNetbeans = ConversionDirection.INTELLIJ_TO_NETBEANS.equals(type);
+        ConversionResult result = new ConversionResult(projectDirectory, type, toNetbeans
+                ? projectDirectory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH)
+                : getModuleFile(projectDirectory));
+        long start = System.nanoTime();
+
+        try {
+            if (toNetbeans) {
+                toNetbeans(result);
+            } else {
+                toIntellij(result);
+            }
+        } catch (Exception e) {
+            result.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    @NotNull
+    public static Path getModuleFile(@NotNull Path projectDirectory) {
+        return projectDirectory.resolve(projectDirectory.getFileName() + ".iml");
+    }
+
+    private void toIntellij(@NotNull ConversionResult result) throws IOException, XMLStreamException {
+        Path directory = result.getDirectory();
+        NetbeansPropertyEvaluator evaluator = NetbeansPropertyEvaluator.load(directory);
+        List<ProjectReferenceGraph.ProjectReference> references = readReferences(directory, evaluator);
+        DependencySet libraries = resolveClasspath(directory, NetbeansClasspath.extractLibraries(evaluator), references);
+        Set<String> managedModules = getManagedModules(references);
+        result.libraries = libraries.size();
+        result.jars = getJars(directory, libraries);
+        result.conflicts = analyzeConflicts(directory, libraries);
+
+        byte[] imlContent;
+        if (Files.isRegularFile(result.getTargetFile())) {
+            imlContent = Files.readAllBytes(result.getTargetFile());
+        } else {
+            result.created = true;
+            // a project without test.src.dir has no test sources
+            String testSourceDirectory = evaluator.getProperty("test.src.dir");
+            String testSourceFolder = testSourceDirectory != null && !testSourceDirectory.contains("${")
+                    ? String.format(TEST_SOURCE_FOLDER, testSourceDirectory) : "";
+            imlContent = String.format(MODULE_TEMPLATE, getOrDefault(evaluator, "src.dir", "src"), testSourceFolder)
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        if (result.created || !isImlUpToDate(imlContent, libraries, managedModules)) {
+            result.content = rewriteIml(imlContent, libraries, managedModules);
+        }
+    }
+
+    private void toNetbeans(@NotNull ConversionResult result) throws IOException, XMLStreamException {
+        Path directory = result.getDirectory();
+        Path moduleFile = getModuleFile(directory);
+        if (!Files.isRegularFile(moduleFile)) {
+            throw new IOException("Module file not found: " + moduleFile);
+        }
+
+        PropertiesDocument document = PropertiesDocument.parse(Files.readAllBytes(result.getTargetFile()));
+        PropertiesDocument privateDocument = PropertiesDocument.parse(Files.isRegularFile(result.getPrivatePropertiesFile())
+                ? Files.readAllBytes(result.getPrivatePropertiesFile()) : new byte[0]);
+        toNetbeans(result, document, privateDocument, readImlReferences(Files.readAllBytes(moduleFile), directory));
+    }
+
+    private void toNetbeans(@NotNull ConversionResult result, @NotNull PropertiesDocument document,
+                            @NotNull PropertiesDocument privateDocument, @NotNull List<String> references) {
+        Path directory = result.getDirectory();
+        result.libraries = references.size();
+
+        if (!isClasspathUpToDate(directory, document.toProperties(), privateDocument.toProperties(), references)) {
+            byte[] content = rewriteClasspath(document, privateDocument, directory, references);
+            if (document.isModified()) {
+                result.content = content;
+            }
+            if (privateDocument.isModified()) {
+                result.privateContent = privateDocument.toBytes();
+            }
+        }
+    }
+
+    /**
+     * Converts a model with both sides to Intellij, given the libraries resolved from its Netbeans side, see
+     * {@link #resolveClasspath(Path, List, List)}. Nothing is written, the result holds the new content of the
+     * module file when it has to change.
+     */
+    @NotNull
+    public ConversionResult toIntellij(@NotNull ModuleModel model, @NotNull DependencySet libraries) throws XMLStreamException {
+        ModuleModel.NetbeansSide netbeans = getNetbeans(model);
+        ModuleModel.IntellijSide intellij = getIntellij(model);
+        ConversionResult result = new ConversionResult(model.getDirectory(), ConversionDirection.NETBEANS_TO_INTELLIJ, model.getModuleFile());
+        result.libraries = libraries.size();
+        result.jars = getJars(model.getDirectory(), libraries);
+
+        Set<String> managedModules = getManagedModules(netbeans.getReferences());
+        if (!diffIml(intellij.getLibraries(), libraries, managedModules).isEmpty()) {
+            result.content = rewriteIml(intellij.getContent(), libraries, managedModules);
+        }
+        return result;
+    }
+
+    /**
+     * Converts a model to Netbeans, given the references read from its Intellij side, see
+     * {@link #readImlReferences(byte[], Path)}. Nothing is written, the result holds the new content of
+     * project.properties and private.properties when they have to change.
+     */
+    @NotNull
+    public ConversionResult toNetbeans(@NotNull ModuleModel model, @NotNull List<String> references) {
+        ModuleModel.NetbeansSide netbeans = getNetbeans(model);
+        ConversionResult result = new ConversionResult(model.getDirectory(), ConversionDirection.INTELLIJ_TO_NETBEANS,
+                model.getDirectory().resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH));
+        toNetbeans(result, netbeans.newPropertiesDocument(), netbeans.newPrivatePropertiesDocument(), references);
+        return result;
+    }
+
+    @NotNull
+    private static ModuleModel.NetbeansSide getNetbeans(@NotNull ModuleModel model) {
+        if (model.getNetbeans() == null) {
+            throw new IllegalArgumentException("Netbeans project not found: " + model.getDirectory());
+        }
+        return model.getNetbeans();
+    }
+
+    @NotNull
+    private static ModuleModel.IntellijSide getIntellij(@NotNull ModuleModel model) {
+        if (model.getIntellij() == null) {
+            throw new IllegalArgumentException("Module file not found: " + model.getModuleFile());
+        }
+        return model.getIntellij();
+    }
+
+    /**
+     * Order entries of the jars listed in javac.classpath, with sources, javadoc and manifest Class-Path resolved.
+     * The jars of referenced projects that are modules are module dependencies.
+     */
+    @NotNull
+    public DependencySet resolveClasspath(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator) {
+        return resolveClasspath(projectDirectory, NetbeansClasspath.extractLibraries(evaluator), readReferences(projectDirectory, evaluator));
+    }
+
+    @NotNull
+    private static List<ProjectReferenceGraph.ProjectReference> readReferences(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator) {
+        try {
+            return ProjectReferenceGraph.readReferences(projectDirectory, evaluator);
+        } catch (IOException | XMLStreamException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Same as {@link #resolveClasspath(Path, NetbeansPropertyEvaluator)}, from the classpath and references of a
+     * {@link ModuleModel}.
+     */
+    @NotNull
+    public DependencySet resolveClasspath(@NotNull Path projectDirectory, @NotNull List<String> classpath,
+                                          @NotNull List<ProjectReferenceGraph.ProjectReference> references) {
+        return NetbeansClasspath.resolveLibraries(classpath, projectDirectory, jarIndex, getModuleArtifacts(references));
+    }
+
+    /**
+     * The jars of the referenced projects that are converted to modules, to the name of their module.
+     */
+    @NotNull
+    private Map<Path, String> getModuleArtifacts(@NotNull List<ProjectReferenceGraph.ProjectReference> references) {
+        ProjectReferenceGraph graph = projectGraph;
+        Map<Path, String> artifacts = new HashMap<>();
+        for (ProjectReferenceGraph.ProjectReference reference : references) {
+            if (reference.getArtifact() == null) {
+                continue;
+            }
+
+            ProjectReferenceGraph.ProjectNode node = graph != null ? graph.get(reference.getDirectory()) : null;
+            if (node != null) {
+                artifacts.put(reference.getArtifact(), node.getModuleName());
+            } else if (Files.isRegularFile(getModuleFile(reference.getDirectory()))) {
+                artifacts.put(reference.getArtifact(), reference.getDirectory().getFileName().toString());
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * The modules whose dependencies the conversion writes: the modules of the graph and the ones of the referenced
+     * projects. A dependency on another module was added in Intellij, a rewrite keeps it.
+     */
+    @NotNull
+    public Set<String> getManagedModules(@NotNull List<ProjectReferenceGraph.ProjectReference> references) {
+        ProjectReferenceGraph graph = projectGraph;
+        Set<String> modules = new HashSet<>();
+        if (graph != null) {
+            modules.addAll(graph.getArtifacts().values());
+        }
+        for (ProjectReferenceGraph.ProjectReference reference : references) {
+            ProjectReferenceGraph.ProjectNode node = graph != null ? graph.get(reference.getDirectory()) : null;
+            modules.add(node != null ? node.getModuleName() : reference.getDirectory().getFileName().toString());
+        }
+        return modules;
+    }
+
+    /**
+     * Checks the resolved libraries, in classpath order, for classes hidden by an earlier jar.
+     */
+    @NotNull
+    public ClasspathConflictAnalyzer.Report analyzeConflicts(@NotNull Path projectDirectory, @NotNull DependencySet libraries) {
+        return conflictAnalyzer.analyze(getJars(projectDirectory, libraries));
+    }
+
+    /**
+     * Files of the resolved libraries, in classpath order. Project libraries and modules are left out.
+     */
+    @NotNull
+    public static List<Path> getJars(@NotNull Path projectDirectory, @NotNull DependencySet libraries) {
+        List<Path> jars = new ArrayList<>(libraries.size());
+        for (DependencySet.Dependency dependency : libraries.getDependencies()) {
+            if (!dependency.isProjectLibrary() && !dependency.isModule()) {
+                jars.add(NetbeansClasspath.toPath(dependency.getPath(), projectDirectory));
+            }
+        }
+        return jars;
+    }
+
+    public boolean isImlUpToDate(@NotNull byte[] imlContent, @NotNull DependencySet libraries, @NotNull Set<String> managedModules) throws XMLStreamException {
+        return diffIml(imlContent, libraries, managedModules).isEmpty();
+    }
+
+    /**
+     * Library entries to add to, remove from or move in the module file to get the given libraries. The dependencies
+     * on modules which are not managed, see {@link #getManagedModules(List)}, are left out.
+     */
+    @NotNull
+    public DependencySet.Diff diffIml(@NotNull byte[] imlContent, @NotNull DependencySet libraries, @NotNull Set<String> managedModules) throws XMLStreamException {
+        return diffIml(imlRewriter.readLibraries(imlContent), libraries, managedModules);
+    }
+
+    /**
+     * Same as {@link #diffIml(byte[], DependencySet, Set)} from the library entries already read from the module file.
+     */
+    @NotNull
+    public DependencySet.Diff diffIml(@NotNull DependencySet imlLibraries, @NotNull DependencySet libraries, @NotNull Set<String> managedModules) {
+        return imlLibraries.retainModules(ImlRewriter.getModules(libraries, managedModules)).diff(libraries);
+    }
+
+    /**
+     * Applies the libraries to the module file, the entries of libraries the module already has are kept as they are,
+     * as well as the dependencies on modules which are not managed.
+     */
+    @NotNull
+    public byte[] rewriteIml(@NotNull byte[] imlContent, @NotNull DependencySet libraries, @NotNull Set<String> managedModules) throws XMLStreamException {
+        return imlRewriter.rewrite(imlContent, libraries, managedModules);
+    }
+
+    /**
+     * Reads the jars of a module file as Netbeans references them: relative to the project when they are under it,
+     * absolute otherwise. Project libraries are read from the .idea/libraries directory above the module, a module
+     * dependency is the jar of its project, see {@link #resolveModuleReferences(Path, List)}.
+     */
+    @NotNull
+    public List<String> readImlReferences(@NotNull byte[] imlContent, @NotNull Path projectDirectory) throws IOException, XMLStreamException {
+        return resolveModuleReferences(projectDirectory, readIntellijReferences(imlContent, projectDirectory));
+    }
+
+    /**
+     * Same as {@link #readImlReferences(byte[], Path)}, a module dependency being "module:&lt;directory&gt;" as the
+     * IDE lists it, before it is resolved to the jar of its project.
+     */
+    @NotNull
+    public List<String> readIntellijReferences(@NotNull byte[] imlContent, @NotNull Path projectDirectory) throws IOException, XMLStreamException {
+        List<String> references = new ArrayList<>();
+        for (DependencySet.Dependency dependency : imlRewriter.readLibraries(imlContent).getDependencies()) {
+            if (dependency.isModule()) {
+                references.add(DependencySet.MODULE_PREFIX + getModuleDirectory(projectDirectory, dependency.getModuleName()).toString().replace('\\', '/'));
+            } else if (dependency.isProjectLibrary()) {
+                for (String root : readProjectLibrary(projectDirectory, dependency.getLibraryName())) {
+                    references.add(toNetbeansReference(root, projectDirectory));
+                }
+            } else {
+                references.add(toNetbeansReference(dependency.getPath(), projectDirectory));
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Replaces the "module:&lt;directory&gt;" entries of the references with the jar of the project in that directory,
+     * as the classpath of the project evaluates its reference.&lt;name&gt;.jar property, so an existing reference is
+     * kept. A project not referenced yet gets the path of its dist.jar relative to the project.
+     */
+    @NotNull
+    public List<String> resolveModuleReferences(@NotNull Path projectDirectory, @NotNull List<String> references) throws IOException, XMLStreamException {
+        List<ProjectReferenceGraph.ProjectReference> projectReferences = null;
+        List<String> resolved = new ArrayList<>(references.size());
+        for (String reference : references) {
+            if (!reference.startsWith(DependencySet.MODULE_PREFIX)) {
+                resolved.add(reference);
+                continue;
+            }
+
+            if (projectReferences == null) {
+                projectReferences = ProjectReferenceGraph.readReferences(projectDirectory, NetbeansPropertyEvaluator.load(projectDirectory));
+            }
+            resolved.add(toModuleReference(projectDirectory, Paths.get(reference.substring(DependencySet.MODULE_PREFIX.length())), projectReferences));
+        }
+        return resolved;
+    }
+
+    @NotNull
+    private static String toModuleReference(@NotNull Path projectDirectory, @NotNull Path moduleDirectory,
+                                            @NotNull List<ProjectReferenceGraph.ProjectReference> projectReferences) throws IOException {
+        Path directory = moduleDirectory.toAbsolutePath().normalize();
+        for (ProjectReferenceGraph.ProjectReference reference : projectReferences) {
+            if (reference.getDirectory().equals(directory) && reference.getJar() != null) {
+                return reference.getJar().replace('\\', '/');
+            }
+        }
+
+        Path distJar = NetbeansClasspath.getDistJar(directory, NetbeansPropertyEvaluator.load(directory));
+        return projectDirectory.toAbsolutePath().normalize().relativize(distJar).toString().replace('\\', '/');
+    }
+
+    /**
+     * Directory of the project of a module: the one of the graph, or the sibling directory of the same name.
+     */
+    @NotNull
+    private Path getModuleDirectory(@NotNull Path projectDirectory, @NotNull String moduleName) {
+        ProjectReferenceGraph graph = projectGraph;
+        ProjectReferenceGraph.ProjectNode node = graph != null ? graph.findByModuleName(moduleName) : null;
+        if (node != null) {
+            return node.getDirectory();
+        }
+        return projectDirectory.toAbsolutePath().normalize().resolveSibling(moduleName);
+    }
+
+    /**
+     * True when javac.classpath, resolved with the private properties, lists the files of the references in order.
+     */
+    public boolean isClasspathUpToDate(@NotNull Path projectDirectory, @NotNull Properties projectProperties,
+                                       @Nullable Properties privateProperties, @NotNull List<String> references) {
+        List<String> current = NetbeansPropertyEvaluator.of(projectProperties, privateProperties).getPath("javac.classpath");
+        return DependencySet.of(toFiles(projectDirectory, current)).diff(DependencySet.of(toFiles(projectDirectory, references))).isEmpty();
+    }
+
+    @NotNull
+    private static List<String> toFiles(@NotNull Path projectDirectory, @NotNull List<String> paths) {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+        List<String> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            files.add(path.contains("${") ? path : directory.resolve(path.trim()).normalize().toString());
+        }
+        return files;
+    }
+
+    /**
+     * Patches the classpath of the properties file to the references and returns its new content. The documents are
+     * modified, only the lines of the changed properties differ, a new jar outside the project being referenced from
+     * the private properties, see {@link NetbeansClasspathWriter#patchClasspath(PropertiesDocument, PropertiesDocument, Path, List)}.
+     */
+    @NotNull
+    public byte[] rewriteClasspath(@NotNull PropertiesDocument document, @Nullable PropertiesDocument privateDocument,
+                                   @NotNull Path projectDirectory, @NotNull List<String> references) {
+        NetbeansClasspathWriter.patchClasspath(document, privateDocument, projectDirectory, references);
+        return document.toBytes();
+    }
+
+    @NotNull
+    private List<String> readProjectLibrary(@NotNull Path projectDirectory, @NotNull String name) throws IOException, XMLStreamException {
+        String fileName = name.replaceAll("[^A-Za-z0-9_]", "_") + ".xml";
+        for (Path dir = projectDirectory.toAbsolutePath(); dir != null; dir = dir.getParent()) {
+            Path libraryFile = dir.resolve(".idea").resolve("libraries").resolve(fileName);
+            if (Files.isRegularFile(libraryFile)) {
+                List<String> roots = new ArrayList<>();
+                for (String root : imlRewriter.readProjectLibraryRoots(Files.readAllBytes(libraryFile))) {
+                    roots.add(root.replace(PROJECT_DIR, dir.toString().replace('\\', '/')));
+                }
+                return roots;
+            }
+        }
+        throw new IOException("Project library not found: " + name);
+    }
+
+    /**
+     * The reference Netbeans gets for a library root as the module file stores it: a path relative to $MODULE_DIR$
+     * stays relative to the project, an absolute path under the project becomes relative to it, any other path is
+     * kept absolute.
+     */
+    @NotNull
+    public static String toNetbeansReference(@NotNull String path, @NotNull Path projectDirectory) {
+        if (path.startsWith(MODULE_DIR + "/")) {
+            return path.substring(MODULE_DIR.length() + 1);
+        }
+
+        Path absolute = projectDirectory.toAbsolutePath().normalize();
+        Path jar = Paths.get(path).normalize();
+        if (jar.isAbsolute() && jar.startsWith(absolute)) {
+            return absolute.relativize(jar).toString().replace('\\', '/');
+        }
+        return path;
+    }
+
+    @NotNull
+    private static String getOrDefault(@NotNull NetbeansPropertyEvaluator evaluator, @NotNull String name, @NotNull String defaultValue) {
+        String value = evaluator.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+}
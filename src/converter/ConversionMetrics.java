@@ -0,0 +1,350 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the conversions of a project, fed by {@link Recording}s.
+ *
+ * A converter starts a recording per conversion, times each of its phases, and tells whether the conversion
+ * wrote anything. The last conversions are kept with their phase timings, so a slow module can be told from
+ * a slow phase. {@link #report()} renders everything as text.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ConversionMetrics {
+    private static final int RECENT_CONVERSIONS = 200;
+    private static final int SLOWEST_MODULES = 10;
+
+    public enum Phase {
+        PROPERTIES_LOAD("properties load"),
+        IML_PARSE(".iml parse"),
+        LIBRARY_RESOLUTION("library resolution"),
+        CONFLICT_ANALYSIS("conflict analysis"),
+        JAR_LOADING("jar loading"),
+        LIBRARY_SHARING("library sharing"),
+        SERIALIZATION("serialization"),
+        DISK_WRITE("disk write"),
+        RUN_CONFIGURATION("run configuration"),
+        ARTIFACT("artifact");
+
+        private final String label;
+
+        Phase(@NotNull String label) {
+            this.label = label;
+        }
+
+        @NotNull
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Timings of one conversion. Not thread safe, a conversion runs on a single thread.
+     */
+    public class Recording {
+        private final String module;
+        private final String type;
+        private final long startMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+        private long totalNanos;
+        private long bytesWritten;
+        private boolean written;
+        private boolean writeAvoided;
+        private boolean writeStale;
+        private boolean failed;
+
+        private Recording(@NotNull String module, @NotNull String type) {
+            this.module = module;
+            this.type = type;
+        }
+
+        /**
+         * Starts timing a phase, the time is recorded when the returned span is closed.
+         */
+        @NotNull
+        public Span phase(@NotNull Phase phase) {
+            long start = System.nanoTime();
+            return () -> {
+                long elapsed = System.nanoTime() - start;
+                Long previous = phases.get(phase);
+                phases.put(phase, previous == null ? elapsed : previous + elapsed);
+            };
+        }
+
+        public void written(long bytes) {
+            written = true;
+            bytesWritten += bytes;
+        }
+
+        /**
+         * The conversion computed new content, but the file already held it and was not written.
+         */
+        public void writeAvoided() {
+            writeAvoided = true;
+        }
+
+        /**
+         * The conversion computed new content, but the file changed since it was read and was not written.
+         */
+        public void writeStale() {
+            writeStale = true;
+        }
+
+        public void failed() {
+            failed = true;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Ends the recording and adds it to the metrics. A conversion that wrote nothing counts as a skipped no-op.
+         */
+        public void finish() {
+            totalNanos = System.nanoTime() - startNanos;
+            record(this);
+        }
+    }
+
+    public interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final AtomicLong conversions = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong avoidedWrites = new AtomicLong();
+    private final AtomicLong staleWrites = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final Histogram latency = new Histogram();
+    private final Map<Phase, Histogram> phaseLatencies = new EnumMap<>(Phase.class);
+    private final Map<String, Long> lastLatencyByModule = new ConcurrentHashMap<>();
+    private final Deque<Recording> recent = new ArrayDeque<>();
+
+    public ConversionMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseLatencies.put(phase, new Histogram());
+        }
+    }
+
+    @NotNull
+    public Recording start(@NotNull String module, @NotNull String type) {
+        return new Recording(module, type);
+    }
+
+    private void record(@NotNull Recording recording) {
+        conversions.incrementAndGet();
+        if (recording.failed) {
+            failures.incrementAndGet();
+        } else if (!recording.written) {
+            skipped.incrementAndGet();
+        }
+        if (recording.writeAvoided) {
+            avoidedWrites.incrementAndGet();
+        }
+        if (recording.writeStale) {
+            staleWrites.incrementAndGet();
+        }
+        bytesWritten.addAndGet(recording.bytesWritten);
+
+        latency.record(recording.totalNanos);
+        for (Map.Entry<Phase, Long> phase : recording.phases.entrySet()) {
+            phaseLatencies.get(phase.getKey()).record(phase.getValue());
+        }
+        lastLatencyByModule.put(recording.module, recording.totalNanos);
+
+        synchronized (recent) {
+            recent.addLast(recording);
+            if (recent.size() > RECENT_CONVERSIONS) {
+                recent.removeFirst();
+            }
+        }
+    }
+
+    public long getConversions() {
+        return conversions.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getAvoidedWrites() {
+        return avoidedWrites.get();
+    }
+
+    public long getStaleWrites() {
+        return staleWrites.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public void reset() {
+        conversions.set(0);
+        skipped.set(0);
+        failures.set(0);
+        avoidedWrites.set(0);
+        staleWrites.set(0);
+        bytesWritten.set(0);
+        latency.reset();
+        for (Histogram histogram : phaseLatencies.values()) {
+            histogram.reset();
+        }
+        lastLatencyByModule.clear();
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    @NotNull
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("conversions %d, skipped no-ops %d, writes avoided %d, stale writes %d, failed %d, bytes written %d%n%n",
+                conversions.get(), skipped.get(), avoidedWrites.get(), staleWrites.get(), failures.get(), bytesWritten.get()));
+
+        report.append(String.format("%-20s %8s %10s %10s %10s %10s%n", "latency (ms)", "count", "p50", "p90", "p99", "max"));
+        appendHistogram(report, "conversion", latency);
+        for (Phase phase : Phase.values()) {
+            appendHistogram(report, phase.getLabel(), phaseLatencies.get(phase));
+        }
+
+        List<Map.Entry<String, Long>> slowest = new ArrayList<>(lastLatencyByModule.entrySet());
+        Collections.sort(slowest, Map.Entry.<String, Long>comparingByValue().reversed());
+        report.append(String.format("%nslowest modules, last conversion%n"));
+        for (Map.Entry<String, Long> module : slowest.subList(0, Math.min(SLOWEST_MODULES, slowest.size()))) {
+            report.append(String.format("  %-40s %10.1f ms%n", module.getKey(), toMillis(module.getValue())));
+        }
+
+        List<Recording> recordings;
+        synchronized (recent) {
+            recordings = new ArrayList<>(recent);
+        }
+        Collections.sort(recordings, Comparator.comparingLong((Recording recording) -> recording.startMillis).reversed());
+
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        report.append(String.format("%nrecent conversions%n"));
+        for (Recording recording : recordings) {
+            report.append(String.format("  %s %-40s %-22s %10.1f ms %s", format.format(new Date(recording.startMillis)),
+                    recording.module, recording.type, toMillis(recording.totalNanos),
+                    recording.failed ? "failed" : recording.written ? recording.bytesWritten + " bytes" : recording.writeStale ? "stale" : "no-op"));
+            for (Map.Entry<Phase, Long> phase : recording.phases.entrySet()) {
+                report.append(String.format(", %s %.1f", phase.getKey().getLabel(), toMillis(phase.getValue())));
+            }
+            report.append(String.format("%n"));
+        }
+
+        return report.toString();
+    }
+
+    public void dump(@NotNull Path file) throws IOException {
+        Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendHistogram(@NotNull StringBuilder report, @NotNull String name, @NotNull Histogram histogram) {
+        report.append(String.format("%-20s %8d %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                toMillis(histogram.getPercentile(0.5)), toMillis(histogram.getPercentile(0.9)),
+                toMillis(histogram.getPercentile(0.99)), toMillis(histogram.getMax())));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Latency histogram with 8 buckets per power of two of microseconds, so percentiles are within 12.5%.
+     */
+    static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int MAX_EXPONENT = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((MAX_EXPONENT - 1) * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            buckets.incrementAndGet(index(Math.min(micros, (1L << (MAX_EXPONENT + 1)) - 1)));
+            count.incrementAndGet();
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Returns the upper bound in nanoseconds of the bucket holding the percentile, 0 when nothing was recorded.
+         */
+        long getPercentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(TimeUnit.MICROSECONDS.toNanos(upperBound(i)), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            max.set(0);
+        }
+
+        private static int index(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int subBucket = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return (exponent - 2) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + 2;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - 3);
+            return lower + (1L << (exponent - 3)) - 1;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package converter;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link ConversionMetrics} of the conversions of a project, shown in the Netbeans Conversion tool window.
+ */
+public class ConversionMetricsService {
+    private final ConversionMetrics metrics = new ConversionMetrics();
+
+    public static ConversionMetricsService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ConversionMetricsService.class);
+    }
+
+    @NotNull
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,223 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Keyed job queue used to run conversions off the UI thread.
+ *
+ * Jobs submitted for the same key within the coalescing delay are merged, only the last one runs.
+ * A job submitted while another one for the same key is running cancels the running one (latest wins),
+ * and starts once it has returned, so two jobs never run for the same key at once.
+ * Jobs for different keys run in parallel, bounded by the size of the worker pool.
+ *
+ * The timer and the workers can be given, to run the queue on instrumented executors. The queue owns them either
+ * way, {@link #shutdown()} shuts them down.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class ConversionQueue {
+
+    public interface Job {
+        void run(@NotNull Cancellation cancellation) throws Exception;
+    }
+
+    public static class Cancellation {
+        private volatile boolean cancelled;
+        private final List<Runnable> listeners = new ArrayList<>();
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            List<Runnable> toNotify;
+            synchronized (listeners) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                toNotify = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+
+            for (Runnable listener : toNotify) {
+                listener.run();
+            }
+        }
+
+        public void onCancel(@NotNull Runnable listener) {
+            synchronized (listeners) {
+                if (!cancelled) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+
+            listener.run();
+        }
+    }
+
+    private static class Slot {
+        ScheduledFuture<?> delayed;
+        Job pending;
+        Cancellation running;
+    }
+
+    private final long delayMillis;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final BiConsumer<String, Throwable> errorHandler;
+
+    // guarded by this
+    private final Map<String, Slot> slots = new HashMap<>();
+    private boolean shutdown;
+
+    public ConversionQueue(@NotNull String name, int parallelism, long delayMillis, @NotNull BiConsumer<String, Throwable> errorHandler) {
+        this(Executors.newSingleThreadScheduledExecutor(daemonThreads(name + " timer")),
+                Executors.newFixedThreadPool(Math.max(1, parallelism), daemonThreads(name + " worker")), delayMillis, errorHandler);
+    }
+
+    /**
+     * @param timer   runs the coalescing delays, its tasks are short
+     * @param workers runs the jobs, its number of threads bounds the jobs running at once
+     */
+    public ConversionQueue(@NotNull ScheduledExecutorService timer, @NotNull ExecutorService workers, long delayMillis,
+                           @NotNull BiConsumer<String, Throwable> errorHandler) {
+        this.delayMillis = delayMillis;
+        this.errorHandler = errorHandler;
+        this.timer = timer;
+        this.workers = workers;
+    }
+
+    public synchronized void submit(@NotNull String key, @NotNull Job job) {
+        if (shutdown) {
+            return;
+        }
+
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        slot.pending = job;
+
+        if (slot.delayed != null) {
+            slot.delayed.cancel(false);
+        }
+        slot.delayed = timer.schedule(() -> dispatch(key), delayMillis, TimeUnit.MILLISECONDS);
+
+        // whatever is running for this key is already stale
+        if (slot.running != null) {
+            slot.running.cancel();
+        }
+    }
+
+    /**
+     * Drops the job waiting for the key and cancels the running one. The slot of a running job is kept until the job
+     * returns, a job submitted meanwhile waits for it like any other.
+     */
+    public synchronized void cancel(@NotNull String key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return;
+        }
+
+        if (slot.delayed != null) {
+            slot.delayed.cancel(false);
+            slot.delayed = null;
+        }
+        slot.pending = null;
+        if (slot.running != null) {
+            slot.running.cancel();
+        } else {
+            slots.remove(key);
+        }
+    }
+
+    public synchronized boolean isIdle() {
+        return slots.isEmpty();
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            for (String key : new ArrayList<>(slots.keySet())) {
+                cancel(key);
+            }
+        }
+
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    private synchronized void dispatch(@NotNull String key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return;
+        }
+
+        slot.delayed = null;
+        if (slot.running == null) {
+            start(key, slot);
+        }
+        // otherwise the pending job starts as soon as the running one returns
+    }
+
+    private void start(@NotNull String key, @NotNull Slot slot) {
+        Job job = slot.pending;
+        slot.pending = null;
+        if (job == null) {
+            slots.remove(key);
+            return;
+        }
+
+        Cancellation cancellation = new Cancellation();
+        slot.running = cancellation;
+        try {
+            workers.execute(() -> {
+                try {
+                    if (!cancellation.isCancelled()) {
+                        job.run(cancellation);
+                    }
+                } catch (Throwable e) {
+                    errorHandler.accept(key, e);
+                } finally {
+                    finished(key, cancellation);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.remove(key);
+        }
+    }
+
+    private synchronized void finished(@NotNull String key, @NotNull Cancellation cancellation) {
+        Slot slot = slots.get(key);
+        if (slot == null || slot.running != cancellation) {
+            return;
+        }
+
+        slot.running = null;
+        if (slot.delayed == null) {
+            start(key, slot);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(@NotNull String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + " " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of converting one Netbeans project with {@link ConversionEngine}: the file to write, if any, and
+ * what it took to compute it.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class ConversionResult {
+    private final Path directory;
+    private final String name;
+    private final String type;
+    private final Path targetFile;
+    boolean created;
+    byte[] content;
+    byte[] privateContent;
+    int libraries;
+    List<Path> jars = Collections.emptyList();
+    long nanos;
+    String error;
+    ClasspathConflictAnalyzer.Report conflicts;
+
+    ConversionResult(@NotNull Path directory, @NotNull String type, @NotNull Path targetFile) {
+        this.directory = directory;
+        this.name = directory.getFileName().toString();
+        this.type = type;
+        this.targetFile = targetFile;
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * {@link ConverterFactory#NETBEANS_TO_INTELLIJ} or {@link ConverterFactory#INTELLIJ_TO_NETBEANS}.
+     */
+    @NotNull
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The .iml file or the nbproject/project.properties file the conversion writes to.
+     */
+    @NotNull
+    public Path getTargetFile() {
+        return targetFile;
+    }
+
+    /**
+     * The nbproject/private/private.properties file of the project, holding the references to jars outside of it.
+     */
+    @NotNull
+    public Path getPrivatePropertiesFile() {
+        return directory.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH);
+    }
+
+    /**
+     * True when the target file did not exist before the conversion.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * True when the target file or the private properties have to be written, false when they are already up to date.
+     */
+    public boolean isChanged() {
+        return content != null || privateContent != null;
+    }
+
+    @Nullable
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * The new content of {@link #getPrivatePropertiesFile()}, null when it does not change.
+     */
+    @Nullable
+    public byte[] getPrivateContent() {
+        return privateContent;
+    }
+
+    public int getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * The jars of the resolved libraries in classpath order, empty when converting to Netbeans.
+     */
+    @NotNull
+    public List<Path> getJars() {
+        return jars;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Duplicate classes and split packages of the classpath, null when converting to Netbeans.
+     */
+    @Nullable
+    public ClasspathConflictAnalyzer.Report getConflicts() {
+        return conflicts;
+    }
+}
@@ -0,0 +1,126 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs {@link ProjectFileConverter#convert()} in background for the modules of a project.
+ *
+ * A burst of requests for the same module and direction is merged into one conversion, a newer request
+ * cancels the conversion still running for the module. Conversions of different modules run in parallel.
+ *
+ * The two directions of a module read and convert in parallel, only their write steps run one at a time, see
+ * {@link ModuleModelCache#write(ModuleModel, ModuleModelCache.Write)}. A conversion finding the files of its module
+ * changed by then schedules itself again.
+ */
+public class ConversionScheduler implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.ConversionScheduler");
+
+    private static final long COALESCE_DELAY_MILLIS = 300;
+    private static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final ConversionQueue queue;
+
+    public ConversionScheduler(@NotNull Project project) {
+        this.project = project;
+        this.queue = new ConversionQueue("Netbeans conversion", PARALLELISM, COALESCE_DELAY_MILLIS,
+                (key, e) -> logger.error("Conversion " + key + " failed", e));
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                cancel(module);
+            }
+        });
+    }
+
+    public static ConversionScheduler getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ConversionScheduler.class);
+    }
+
+    public void schedule(@NotNull Module module, @NotNull String type) {
+        queue.submit(getKey(module, type), cancellation -> run(module, type, cancellation));
+    }
+
+    public void cancel(@NotNull Module module) {
+        queue.cancel(getKey(module, ConverterFactory.NETBEANS_TO_INTELLIJ));
+        queue.cancel(getKey(module, ConverterFactory.INTELLIJ_TO_NETBEANS));
+    }
+
+    @Override
+    public void dispose() {
+        queue.shutdown();
+    }
+
+    @NotNull
+    private static String getKey(@NotNull Module module, @NotNull String type) {
+        return type + ":" + module.getName();
+    }
+
+    private void run(@NotNull Module module, @NotNull String type, @NotNull ConversionQueue.Cancellation cancellation)
+            throws ExecutionException, InterruptedException {
+        if (project.isDisposed() || module.isDisposed()) {
+            return;
+        }
+
+        Task.Backgroundable task = new Task.Backgroundable(project, "Converting " + module.getName(), true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                if (!module.isDisposed()) {
+                    convert(module, type, indicator);
+                }
+            }
+        };
+
+        ProgressIndicator indicator = ApplicationManager.getApplication().isHeadlessEnvironment()
+                ? new EmptyProgressIndicator()
+                : new BackgroundableProcessIndicator(task);
+        cancellation.onCancel(indicator::cancel);
+
+        // block this worker until the conversion is over, so the queue bounds the number of running conversions
+        ProgressManager.getInstance().runProcessWithProgressAsynchronously(task, indicator).get();
+    }
+
+    private void convert(@NotNull Module module, @NotNull String type, @NotNull ProgressIndicator indicator) {
+        try {
+            ModuleModel model = ModuleModelService.getInstance(project).getModel(module);
+            if (model.getNetbeans() == null
+                    || (ConverterFactory.INTELLIJ_TO_NETBEANS.equals(type) && model.getIntellij() == null)) {
+                return;
+            }
+
+            // the edit the target file holds is converted first, in the other direction
+            if (ModuleModelService.getInstance(project).isBehind(model, type)) {
+                logger.info("Not converting " + module.getName() + " " + type + " over an edit of its target");
+                schedule(module, ConversionDirection.opposite(type));
+                return;
+            }
+
+            indicator.checkCanceled();
+            new ConverterFactory().getConverter(type, module, model).convert();
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Function;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@link ConversionStateStore} of a project, loaded from the system directory of the IDE and saved back when
+ * the project is closed.
+ *
+ * When a module is loaded, it is converted only if its Netbeans files, its classpath or its module file changed
+ * since its last conversion, in the direction of the side that changed, instead of on every project open.
+ */
+public class ConversionStateService implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.ConversionStateService");
+
+    @NotNull
+    private final Project project;
+
+    @NotNull
+    private final Path stateFile;
+
+    @NotNull
+    private final ConversionStateStore store;
+
+    public ConversionStateService(@NotNull Project project) {
+        this.project = project;
+        this.stateFile = Paths.get(PathManager.getSystemPath(), "netbeans-intellij", "conversion-state", project.getLocationHash() + ".dat");
+
+        ConversionStateStore loaded;
+        try {
+            loaded = ConversionStateStore.load(stateFile);
+        } catch (IOException e) {
+            logger.warn("Unable to load the conversion state, every module will be converted again", e);
+            loaded = new ConversionStateStore();
+        }
+        store = loaded;
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                store.remove(module.getName());
+            }
+
+            @Override
+            public void modulesRenamed(@NotNull Project project, @NotNull List<Module> modules, @NotNull Function<Module, String> oldNameProvider) {
+                for (Module module : modules) {
+                    store.rename(oldNameProvider.fun(module), module.getName());
+                }
+            }
+        });
+    }
+
+    public static ConversionStateService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ConversionStateService.class);
+    }
+
+    /**
+     * Records the state of the module after a successful conversion, given the jars of its classpath.
+     */
+    public void record(@NotNull Module module, @NotNull Collection<Path> jars) {
+        Path moduleFile = Paths.get(module.getModuleFilePath());
+        store.record(module.getName(), moduleFile.getParent(), moduleFile, jars, getOptions());
+    }
+
+    /**
+     * Checks the module against its recorded state in background, and schedules its conversion only when one
+     * side changed since.
+     */
+    public void scheduleIfOutdated(@NotNull Module module) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            if (module.isDisposed()) {
+                return;
+            }
+
+            Path moduleFile = Paths.get(module.getModuleFilePath());
+            String type = store.getOutdatedDirection(module.getName(), moduleFile.getParent(), moduleFile, getOptions());
+            if (type == null) {
+                logger.info(module.getName() + " did not change since its last conversion, it is not converted again");
+                return;
+            }
+            ConversionScheduler.getInstance(project).schedule(module, type);
+        });
+    }
+
+    @Override
+    public void dispose() {
+        if (!store.isDirty()) {
+            return;
+        }
+
+        try {
+            store.save(stateFile);
+        } catch (IOException e) {
+            logger.warn("Unable to save the conversion state", e);
+        }
+    }
+
+    /**
+     * The settings changing the result of a conversion, a module converted with other settings is converted again.
+     */
+    @NotNull
+    private String getOptions() {
+        return "shareLibraries=" + ConverterSettings.getInstance(project).shareLibraries;
+    }
+}
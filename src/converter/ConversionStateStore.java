@@ -0,0 +1,244 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What each module of a project looked like after its last conversion: fingerprints of the Netbeans properties, of
+ * the project.xml holding the references to other projects and of the module file, modification times of the jars of the classpath and of their directories, and the options
+ * the conversion ran with.
+ *
+ * Comparing the files on disk with the recorded state tells which side changed while nothing was converting them,
+ * typically while the project was closed, so only those modules are converted again, in the right direction.
+ * The files are read only when their size or modification time moved. The store can be saved to a file and
+ * loaded back.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ConversionStateStore {
+    private static final int FORMAT_VERSION = 2;
+    private static final long MISSING = -1;
+
+    private static final class ModuleState {
+        private final FileFingerprint properties;
+        private final FileFingerprint privateProperties;
+        private final FileFingerprint projectXml;
+        private final FileFingerprint moduleFile;
+        private final Map<String, Long> classpathStamps;
+        private final String options;
+
+        ModuleState(@Nullable FileFingerprint properties, @Nullable FileFingerprint privateProperties, @Nullable FileFingerprint projectXml,
+                    @Nullable FileFingerprint moduleFile, @NotNull Map<String, Long> classpathStamps, @NotNull String options) {
+            this.properties = properties;
+            this.privateProperties = privateProperties;
+            this.projectXml = projectXml;
+            this.moduleFile = moduleFile;
+            this.classpathStamps = Collections.unmodifiableMap(classpathStamps);
+            this.options = options;
+        }
+    }
+
+    private final Map<String, ModuleState> states = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    /**
+     * Records the state of a module right after it was converted. The jars are the classpath the conversion
+     * resolved, their directories are recorded too as new -sources and -javadoc siblings change the result.
+     */
+    public void record(@NotNull String module, @NotNull Path projectDirectory, @NotNull Path moduleFile,
+                       @NotNull Collection<Path> jars, @NotNull String options) {
+        ModuleState previous = states.get(module);
+        Map<String, Long> stamps = new LinkedHashMap<>();
+        for (Path jar : jars) {
+            Path path = jar.toAbsolutePath().normalize();
+            stamps.put(path.toString(), getModified(path));
+            if (path.getParent() != null) {
+                stamps.putIfAbsent(path.getParent().toString(), getModified(path.getParent()));
+            }
+        }
+
+        states.put(module, new ModuleState(
+                fingerprint(projectDirectory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH), previous != null ? previous.properties : null),
+                fingerprint(projectDirectory.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH), previous != null ? previous.privateProperties : null),
+                fingerprint(projectDirectory.resolve(ProjectReferenceGraph.PROJECT_XML_PATH), previous != null ? previous.projectXml : null),
+                fingerprint(moduleFile, previous != null ? previous.moduleFile : null),
+                stamps, options));
+        dirty = true;
+    }
+
+    /**
+     * Returns the direction the module has to be converted in, or null when neither side changed since the
+     * recorded state. A module never recorded is converted from Netbeans, as is a module whose both sides changed.
+     */
+    @Nullable
+    public String getOutdatedDirection(@NotNull String module, @NotNull Path projectDirectory, @NotNull Path moduleFile,
+                                       @NotNull String options) {
+        ModuleState state = states.get(module);
+        if (state == null || !state.options.equals(options)
+                || !sameContent(projectDirectory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH), state.properties)
+                || !sameContent(projectDirectory.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH), state.privateProperties)
+                || !sameContent(projectDirectory.resolve(ProjectReferenceGraph.PROJECT_XML_PATH), state.projectXml)) {
+            return ConversionDirection.NETBEANS_TO_INTELLIJ;
+        }
+
+        for (Map.Entry<String, Long> stamp : state.classpathStamps.entrySet()) {
+            if (getModified(Paths.get(stamp.getKey())) != stamp.getValue()) {
+                return ConversionDirection.NETBEANS_TO_INTELLIJ;
+            }
+        }
+
+        if (!sameContent(moduleFile, state.moduleFile)) {
+            return ConversionDirection.INTELLIJ_TO_NETBEANS;
+        }
+        return null;
+    }
+
+    public void remove(@NotNull String module) {
+        if (states.remove(module) != null) {
+            dirty = true;
+        }
+    }
+
+    public void rename(@NotNull String oldName, @NotNull String newName) {
+        ModuleState state = states.remove(oldName);
+        if (state != null) {
+            states.put(newName, state);
+            dirty = true;
+        }
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * True when states were recorded or removed since the store was loaded or last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the store through a temporary file renamed over the target.
+     */
+    public void save(@NotNull Path file) throws IOException {
+        List<Map.Entry<String, ModuleState>> entries = new ArrayList<>(states.entrySet());
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, ModuleState> entry : entries) {
+                    ModuleState state = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    writeNullable(out, state.properties);
+                    writeNullable(out, state.privateProperties);
+                    writeNullable(out, state.projectXml);
+                    writeNullable(out, state.moduleFile);
+                    out.writeInt(state.classpathStamps.size());
+                    for (Map.Entry<String, Long> stamp : state.classpathStamps.entrySet()) {
+                        out.writeUTF(stamp.getKey());
+                        out.writeLong(stamp.getValue());
+                    }
+                    out.writeUTF(state.options);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Loads a store saved by {@link #save(Path)}. A missing file, or one written by another version, gives an empty
+     * store, every module is then converted once.
+     */
+    @NotNull
+    public static ConversionStateStore load(@NotNull Path file) throws IOException {
+        ConversionStateStore store = new ConversionStateStore();
+        if (!Files.isRegularFile(file)) {
+            return store;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return store;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String module = in.readUTF();
+                FileFingerprint properties = readNullable(in);
+                FileFingerprint privateProperties = readNullable(in);
+                FileFingerprint projectXml = readNullable(in);
+                FileFingerprint moduleFile = readNullable(in);
+
+                int stampCount = in.readInt();
+                Map<String, Long> stamps = new LinkedHashMap<>();
+                for (int j = 0; j < stampCount; j++) {
+                    stamps.put(in.readUTF(), in.readLong());
+                }
+
+                store.states.put(module, new ModuleState(properties, privateProperties, projectXml, moduleFile, stamps, in.readUTF()));
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Fingerprint of the file, null when it does not exist.
+     */
+    @Nullable
+    private static FileFingerprint fingerprint(@NotNull Path file, @Nullable FileFingerprint previous) {
+        try {
+            return FileFingerprint.of(file, previous);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean sameContent(@NotNull Path file, @Nullable FileFingerprint recorded) {
+        FileFingerprint current = fingerprint(file, recorded);
+        return current == null ? recorded == null : current.sameContent(recorded);
+    }
+
+    private static long getModified(@NotNull Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    private static void writeNullable(@NotNull DataOutputStream out, @Nullable FileFingerprint fingerprint) throws IOException {
+        out.writeBoolean(fingerprint != null);
+        if (fingerprint != null) {
+            fingerprint.write(out);
+        }
+    }
+
+    @Nullable
+    private static FileFingerprint readNullable(@NotNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? FileFingerprint.read(in) : null;
+    }
+}
@@ -15,20 +15,36 @@
  */
 package converter;
 
+import com.intellij.openapi.module.Module;
+import org.jetbrains.annotations.NotNull;
+
 /**
  * Created by trangdp on 16/05/2017.
  */
 public class ConverterFactory {
+    public static final String NETBEANS_TO_INTELLIJ = ConversionDirection.NETBEANS_TO_INTELLIJ;
+    public static final String INTELLIJ_TO_NETBEANS = ConversionDirection.INTELLIJ_TO_NETBEANS;
 
     public ProjectFileConverter getConverter(String type) {
         switch(type) {
-            case "netbeans-to-intellij":
+            case NETBEANS_TO_INTELLIJ:
                 return new NetbeansToIntellijConverter();
-            case "intellij-to-netbeans":
+            case INTELLIJ_TO_NETBEANS:
                 return new IntellijToNetbeansConverter();
             default:
                 return new NetbeansToIntellijConverter();
         }
     }
 
+    /**
+     * Returns the converter of the module, given the current {@link ModuleModel} of the module.
+     */
+    @NotNull
+    public ProjectFileConverter getConverter(@NotNull String type, @NotNull Module module, @NotNull ModuleModel model) {
+        ProjectFileConverter converter = getConverter(type);
+        converter.setModule(module);
+        converter.setModel(model);
+        return converter;
+    }
+
 }
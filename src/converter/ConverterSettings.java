@@ -0,0 +1,47 @@
+package converter;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Conversion options of a project, stored in .idea/netbeans-converter.xml.
+ */
+@State(name = "NetbeansConverterSettings", storages = @Storage("netbeans-converter.xml"))
+public class ConverterSettings implements PersistentStateComponent<ConverterSettings> {
+    /**
+     * Jars used by more than one module are written as project libraries instead of module libraries.
+     */
+    public boolean shareLibraries;
+
+    /**
+     * The jar of each converted module is packaged to its dist.jar after every successful build, by its jar artifact
+     * or by {@link JarPackagingService} when {@link #jarArtifacts} is off.
+     */
+    public boolean packageJars;
+
+    /**
+     * Each converted module gets an artifact building its dist.jar the way the Netbeans build does, kept in sync with
+     * nbproject/project.properties, see {@link JarArtifactBatcher}.
+     */
+    public boolean jarArtifacts = true;
+
+    public static ConverterSettings getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ConverterSettings.class);
+    }
+
+    @NotNull
+    @Override
+    public ConverterSettings getState() {
+        return this;
+    }
+
+    @Override
+    public void loadState(ConverterSettings state) {
+        XmlSerializerUtil.copyBean(state, this);
+    }
+}
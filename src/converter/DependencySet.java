@@ -0,0 +1,248 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Ordered list of the jar roots a module depends on, with their scope and attached sources and javadoc,
+ * in a form both converters can compare.
+ *
+ * Each converter builds the set it is about to write and the set already on disk, and skips the write
+ * when the {@link Diff} between them is empty.
+ *
+ * This class has no dependency on the IDE.
+ */
+public final class DependencySet {
+    public static final String COMPILE = "COMPILE";
+    public static final String PROJECT_LIBRARY_PREFIX = "library:";
+    public static final String MODULE_PREFIX = "module:";
+
+    public static final class Dependency {
+        private final String path;
+        private final String scope;
+        private final String sources;
+        private final String javadoc;
+
+        public Dependency(@NotNull String path, @NotNull String scope) {
+            this(path, scope, null, null);
+        }
+
+        public Dependency(@NotNull String path, @NotNull String scope, @Nullable String sources, @Nullable String javadoc) {
+            this.path = normalize(path);
+            this.scope = scope;
+            this.sources = sources != null ? normalize(sources) : null;
+            this.javadoc = javadoc != null ? normalize(javadoc) : null;
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        @NotNull
+        public String getScope() {
+            return scope;
+        }
+
+        /**
+         * True for a reference to a project level library, whose name is the rest of the path.
+         */
+        public boolean isProjectLibrary() {
+            return path.startsWith(PROJECT_LIBRARY_PREFIX);
+        }
+
+        @NotNull
+        public String getLibraryName() {
+            return path.substring(PROJECT_LIBRARY_PREFIX.length());
+        }
+
+        /**
+         * True for a dependency on another module, whose name is the rest of the path.
+         */
+        public boolean isModule() {
+            return path.startsWith(MODULE_PREFIX);
+        }
+
+        @NotNull
+        public String getModuleName() {
+            return path.substring(MODULE_PREFIX.length());
+        }
+
+        @Nullable
+        public String getSources() {
+            return sources;
+        }
+
+        @Nullable
+        public String getJavadoc() {
+            return javadoc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Dependency)) {
+                return false;
+            }
+
+            Dependency that = (Dependency) o;
+            return path.equals(that.path) && scope.equals(that.scope)
+                    && Objects.equals(sources, that.sources) && Objects.equals(javadoc, that.javadoc);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, scope, sources, javadoc);
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + scope + ")" + (sources != null ? " sources=" + sources : "") + (javadoc != null ? " javadoc=" + javadoc : "");
+        }
+    }
+
+    public static final class Diff {
+        private final List<Dependency> added;
+        private final List<Dependency> removed;
+        private final boolean reordered;
+
+        private Diff(@NotNull List<Dependency> added, @NotNull List<Dependency> removed, boolean reordered) {
+            this.added = added;
+            this.removed = removed;
+            this.reordered = reordered;
+        }
+
+        @NotNull
+        public List<Dependency> getAdded() {
+            return added;
+        }
+
+        @NotNull
+        public List<Dependency> getRemoved() {
+            return removed;
+        }
+
+        public boolean isReordered() {
+            return reordered;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && !reordered;
+        }
+
+        @Override
+        public String toString() {
+            return "+" + added + " -" + removed + (reordered ? " reordered" : "");
+        }
+    }
+
+    private final List<Dependency> dependencies;
+
+    public DependencySet(@NotNull List<Dependency> dependencies) {
+        this.dependencies = Collections.unmodifiableList(new ArrayList<>(dependencies));
+    }
+
+    @NotNull
+    public static DependencySet of(@NotNull List<String> paths) {
+        List<Dependency> dependencies = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            dependencies.add(new Dependency(path, COMPILE));
+        }
+        return new DependencySet(dependencies);
+    }
+
+    @NotNull
+    public List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    public int size() {
+        return dependencies.size();
+    }
+
+    /**
+     * The dependencies without the ones on modules not in the given names.
+     */
+    @NotNull
+    public DependencySet retainModules(@NotNull Set<String> moduleNames) {
+        List<Dependency> retained = new ArrayList<>(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            if (!dependency.isModule() || moduleNames.contains(dependency.getModuleName())) {
+                retained.add(dependency);
+            }
+        }
+        return retained.size() == dependencies.size() ? this : new DependencySet(retained);
+    }
+
+    /**
+     * Returns what has to change to go from this set to the target set.
+     */
+    @NotNull
+    public Diff diff(@NotNull DependencySet target) {
+        if (dependencies.equals(target.dependencies)) {
+            return new Diff(Collections.emptyList(), Collections.emptyList(), false);
+        }
+
+        Set<Dependency> before = new LinkedHashSet<>(dependencies);
+        Set<Dependency> after = new LinkedHashSet<>(target.dependencies);
+
+        List<Dependency> added = new ArrayList<>();
+        for (Dependency dependency : after) {
+            if (!before.contains(dependency)) {
+                added.add(dependency);
+            }
+        }
+
+        List<Dependency> removed = new ArrayList<>();
+        List<Dependency> keptBefore = new ArrayList<>();
+        for (Dependency dependency : before) {
+            if (after.contains(dependency)) {
+                keptBefore.add(dependency);
+            } else {
+                removed.add(dependency);
+            }
+        }
+
+        List<Dependency> keptAfter = new ArrayList<>();
+        for (Dependency dependency : after) {
+            if (before.contains(dependency)) {
+                keptAfter.add(dependency);
+            }
+        }
+
+        // duplicated entries are the only other way for two lists with the same members to differ
+        boolean reordered = !keptBefore.equals(keptAfter)
+                || (added.isEmpty() && removed.isEmpty());
+
+        return new Diff(added, removed, reordered);
+    }
+
+    @NotNull
+    private static String normalize(@NotNull String path) {
+        return path.trim().replace('\\', '/');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof DependencySet && dependencies.equals(((DependencySet) o).dependencies));
+    }
+
+    @Override
+    public int hashCode() {
+        return dependencies.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return dependencies.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Size, modification time and content hash of a file, used to tell whether a file really changed.
+ *
+ * Computing a fingerprint against a previous one only reads the file when its size or modification time moved,
+ * the content hash is a streaming CRC32 which is enough to detect edits, not meant to resist tampering.
+ *
+ * This class has no dependency on the IDE.
+ */
+public final class FileFingerprint {
+    // file systems with a coarse timestamp resolution can write twice within the same tick,
+    // metadata taken that close to a write is not trusted
+    private static final long TIMESTAMP_RESOLUTION_MILLIS = 2000;
+
+    private final long size;
+    private final long modified;
+    private final long hash;
+    private final long takenAt;
+
+    private FileFingerprint(long size, long modified, long hash, long takenAt) {
+        this.size = size;
+        this.modified = modified;
+        this.hash = hash;
+        this.takenAt = takenAt;
+    }
+
+    @NotNull
+    public static FileFingerprint of(@NotNull Path path) throws IOException {
+        return of(path, null);
+    }
+
+    /**
+     * Returns the fingerprint of the file, reusing the hash of the previous fingerprint when size and
+     * modification time are unchanged.
+     */
+    @NotNull
+    public static FileFingerprint of(@NotNull Path path, @Nullable FileFingerprint previous) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        long now = System.currentTimeMillis();
+
+        if (previous != null && previous.size == size && previous.modified == modified
+                && previous.takenAt - modified > TIMESTAMP_RESOLUTION_MILLIS) {
+            return previous;
+        }
+
+        return new FileFingerprint(size, modified, hash(path), now);
+    }
+
+    /**
+     * The fingerprint of the content read from the file after this fingerprint was taken. When the file changed in
+     * between, the hash matches the content read and the older modification time makes the next check read it again.
+     */
+    @NotNull
+    FileFingerprint withContent(@NotNull byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new FileFingerprint(content.length, modified, crc.getValue(), takenAt);
+    }
+
+    /**
+     * Fingerprint of content about to be written, only good for {@link #sameContent(FileFingerprint)}.
+     */
+    @NotNull
+    static FileFingerprint ofContent(@NotNull byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new FileFingerprint(content.length, 0, crc.getValue(), 0);
+    }
+
+    private static long hash(@NotNull Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        try (InputStream is = Files.newInputStream(path)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    @NotNull
+    static FileFingerprint read(@NotNull DataInput in) throws IOException {
+        return new FileFingerprint(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    void write(@NotNull DataOutput out) throws IOException {
+        out.writeLong(size);
+        out.writeLong(modified);
+        out.writeLong(hash);
+        out.writeLong(takenAt);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public boolean sameContent(@Nullable FileFingerprint other) {
+        return other != null && size == other.size && hash == other.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileFingerprint)) {
+            return false;
+        }
+
+        FileFingerprint that = (FileFingerprint) o;
+        return size == that.size && modified == that.modified && hash == that.hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32)) * 31 + (int) size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d:%d:%08x", size, modified, hash);
+    }
+}
@@ -0,0 +1,938 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the library order entries of an Intellij module file in a single pass over its bytes.
+ *
+ * Every orderEntry of type module-library or of level project is taken out, as well as the orderEntry of type module
+ * of the managed modules, the ones the conversion knows about. One entry per dependency is written at the end of the
+ * NewModuleRootManager component: a dependency on another module, a reference to a project library, or a
+ * module-library holding a jar or classes directory with its sources and javadoc when known. An entry the module
+ * already had for the same dependency is copied back byte for byte, so only the added, removed and moved entries
+ * change. A dependency on a module which is not managed, added in Intellij, is kept where it is. Everything else is
+ * copied as is.
+ *
+ * {@link #readLibraries(byte[])} reads back the library entries, the ones a rewrite would replace once the modules
+ * which are not managed are left out, so a rewrite producing the same dependencies can be skipped.
+ *
+ * The added entries follow the formatting Intellij writes: the indentation of the other entries, and empty elements
+ * as &lt;x /&gt; unless the file uses &lt;x/&gt;. A rewrite giving the dependencies the file already lists, in
+ * place, returns the file as it was.
+ *
+ * The file is scanned as bytes when its encoding is ASCII compatible, otherwise it is transcoded to UTF-8 first.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class ImlRewriter {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final String ROOT_MANAGER = "NewModuleRootManager";
+    private static final String ORDER_ENTRY = "orderEntry";
+    private static final String CLASSES = "CLASSES";
+    private static final String JAVADOC = "JAVADOC";
+    private static final String SOURCES = "SOURCES";
+    private static final String DEFAULT_INDENT = "\n    ";
+
+    // markup in which a < does not start an element, with the bytes ending it
+    private static final byte[][][] MARKUPS = {
+            {ascii("<!--"), ascii("-->")},
+            {ascii("<![CDATA["), ascii("]]>")},
+            {ascii("<?"), ascii("?>")},
+            {ascii("<!"), ascii(">")},
+    };
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Same as {@link #rewrite(byte[], DependencySet, Set)}, the modules of the libraries being the only managed ones.
+     */
+    public byte[] rewrite(@NotNull byte[] imlContent, @NotNull DependencySet libraries) throws XMLStreamException {
+        return rewrite(imlContent, libraries, Collections.emptySet());
+    }
+
+    /**
+     * Replaces the library entries of the module file with the libraries. The entries of the modules which are
+     * neither managed nor among the libraries are kept.
+     */
+    public byte[] rewrite(@NotNull byte[] imlContent, @NotNull DependencySet libraries, @NotNull Set<String> managedModules) throws XMLStreamException {
+        Source source = Source.of(imlContent);
+        byte[] content = rewrite(source, libraries.getDependencies(), getModules(libraries, managedModules));
+        return content == source.bytes ? imlContent : source.encode(content);
+    }
+
+    /**
+     * The managed modules with the modules of the libraries, whose entries a rewrite replaces.
+     */
+    @NotNull
+    static Set<String> getModules(@NotNull DependencySet libraries, @NotNull Set<String> managedModules) {
+        Set<String> modules = new HashSet<>(managedModules);
+        for (DependencySet.Dependency library : libraries.getDependencies()) {
+            if (library.isModule()) {
+                modules.add(library.getModuleName());
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Returns the library entries of the module, in order: the jar roots of module libraries with the sources
+     * and javadoc attached to them, project level libraries as "library:&lt;name&gt;" and other modules as
+     * "module:&lt;name&gt;".
+     */
+    @NotNull
+    public DependencySet readLibraries(@NotNull byte[] imlContent) throws XMLStreamException {
+        Source source = Source.of(imlContent);
+        Scanner scanner = new Scanner(source.bytes, source.charset);
+        EntryReader entries = new EntryReader();
+        while (scanner.next()) {
+            entries.accept(scanner);
+        }
+        return new DependencySet(entries.dependencies);
+    }
+
+    /**
+     * Returns the classes roots of a project library, read from its .idea/libraries/*.xml file.
+     */
+    @NotNull
+    public List<String> readProjectLibraryRoots(@NotNull byte[] libraryContent) throws XMLStreamException {
+        List<String> roots = new ArrayList<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(libraryContent));
+
+        try {
+            boolean inClasses = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (CLASSES.equals(reader.getLocalName())) {
+                        inClasses = true;
+                    } else if (inClasses && "root".equals(reader.getLocalName())) {
+                        roots.add(toJarPath(reader.getAttributeValue(null, "url")));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && CLASSES.equals(reader.getLocalName())) {
+                    inClasses = false;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return roots;
+    }
+
+    @NotNull
+    private static String toJarPath(String url) {
+        if (url == null) {
+            return "";
+        }
+
+        if (url.startsWith("file://")) {
+            return url.substring("file://".length());
+        }
+
+        String path = url.startsWith("jar://") ? url.substring("jar://".length()) : url;
+        return path.endsWith("!/") ? path.substring(0, path.length() - 2) : path;
+    }
+
+    /**
+     * Archives are referenced inside the jar file system, anything else (a classes directory) as a plain file.
+     */
+    @NotNull
+    private static String toUrl(@NotNull String path) {
+        String lowerCase = path.toLowerCase();
+        if (lowerCase.endsWith(".jar") || lowerCase.endsWith(".zip")) {
+            return "jar://" + path + "!/";
+        }
+        return "file://" + path;
+    }
+
+    /**
+     * The content with the library entries replaced, the content itself when the libraries are the ones it lists.
+     */
+    @NotNull
+    private static byte[] rewrite(@NotNull Source source, @NotNull List<DependencySet.Dependency> libraries,
+                                  @NotNull Set<String> modules) throws XMLStreamException {
+        byte[] in = source.bytes;
+        Scanner scanner = new Scanner(in, source.charset);
+        EntryReader entries = new EntryReader();
+
+        // the entries holding one library, to copy back the ones that are still wanted
+        Map<DependencySet.Dependency, int[]> existing = new HashMap<>();
+        // the library entries with the whitespace before them, which are left out
+        List<int[]> removed = new ArrayList<>();
+        // the libraries are the entries as they are when each one holds a library and nothing follows them
+        boolean inPlace = true;
+        int rootManagerDepth = -1;
+        int entryIndentStart = -1;
+        int entryIndentEnd = -1;
+        // where the entries are written: before the whitespace ending the component, or the end of an empty one
+        int insertAt = -1;
+        // where the copy goes on after them
+        int resumeAt = -1;
+        String emptyRootManager = null;
+        // the entries are followed by the end tag of the component, without a line break before it
+        boolean closeIndent = false;
+        boolean spaced = false;
+        boolean unspaced = false;
+
+        int whitespace = -1;
+        while (scanner.next()) {
+            int precedingWhitespace = whitespace;
+            whitespace = scanner.isWhitespace() ? scanner.start : -1;
+            if (scanner.token == Scanner.START && scanner.empty) {
+                if (isWhitespace(in[scanner.end - 3])) {
+                    spaced = true;
+                } else {
+                    unspaced = true;
+                }
+            }
+
+            if (rootManagerDepth < 0) {
+                if (insertAt < 0 && scanner.token == Scanner.START && scanner.isName("component")
+                        && ROOT_MANAGER.equals(scanner.getAttribute("name"))) {
+                    if (scanner.empty) {
+                        insertAt = scanner.end - 2;
+                        while (isWhitespace(in[insertAt - 1])) {
+                            insertAt--;
+                        }
+                        resumeAt = scanner.end;
+                        emptyRootManager = scanner.getName();
+                        closeIndent = true;
+                    } else {
+                        rootManagerDepth = scanner.depth;
+                    }
+                }
+                continue;
+            }
+
+            if (scanner.token == Scanner.END && scanner.depth == rootManagerDepth) {
+                insertAt = precedingWhitespace >= 0 ? precedingWhitespace : scanner.start;
+                resumeAt = insertAt;
+                closeIndent = precedingWhitespace < 0;
+                rootManagerDepth = -1;
+            } else if (scanner.depth == rootManagerDepth + 1 && scanner.token != Scanner.END && whitespace < 0) {
+                if (scanner.token == Scanner.START && isLibraryEntry(scanner, modules)) {
+                    int start = scanner.start;
+                    int count = entries.dependencies.size();
+                    entries.accept(scanner);
+                    boolean open = !scanner.empty;
+                    while (open && scanner.next()) {
+                        entries.accept(scanner);
+                        open = scanner.token != Scanner.END || scanner.depth != rootManagerDepth + 1;
+                    }
+
+                    if (entries.dependencies.size() == count + 1) {
+                        existing.putIfAbsent(entries.dependencies.get(count), new int[]{start, scanner.end});
+                    } else {
+                        inPlace = false;
+                    }
+                    removed.add(new int[]{precedingWhitespace >= 0 ? precedingWhitespace : start, scanner.end});
+                    whitespace = -1;
+                    continue;
+                }
+
+                if (!removed.isEmpty()) {
+                    inPlace = false;
+                }
+                if (scanner.token == Scanner.START && precedingWhitespace >= 0) {
+                    entryIndentStart = precedingWhitespace;
+                    entryIndentEnd = scanner.start;
+                }
+            }
+        }
+
+        if (insertAt < 0 || (inPlace && entries.dependencies.equals(libraries))) {
+            return in;
+        }
+
+        String entryIndent = entryIndentStart >= 0
+                ? new String(in, entryIndentStart, entryIndentEnd - entryIndentStart, StandardCharsets.ISO_8859_1) : DEFAULT_INDENT;
+        boolean spacedEmpty = spaced || !unspaced;
+        CharsetEncoder encoder = source.charset.equals(StandardCharsets.UTF_8) ? null : source.charset.newEncoder();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(in.length + libraries.size() * 200);
+        int position = 0;
+        for (int[] range : removed) {
+            out.write(in, position, range[0] - position);
+            position = range[1];
+        }
+        out.write(in, position, insertAt - position);
+        if (emptyRootManager != null) {
+            out.write('>');
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (DependencySet.Dependency library : libraries) {
+            int[] entry = existing.get(library);
+            if (entry != null) {
+                out.write(ascii(entryIndent), 0, entryIndent.length());
+                out.write(in, entry[0], entry[1] - entry[0]);
+            } else {
+                text.setLength(0);
+                text.append(entryIndent);
+                writeLibrary(text, library, entryIndent, spacedEmpty, encoder);
+                byte[] bytes = text.toString().getBytes(source.charset);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        if (closeIndent && !libraries.isEmpty()) {
+            String closingIndent = entryIndent.substring(0, Math.max(1, entryIndent.length() - 2));
+            out.write(ascii(closingIndent), 0, closingIndent.length());
+        }
+        if (emptyRootManager != null) {
+            byte[] endTag = ("</" + emptyRootManager + ">").getBytes(source.charset);
+            out.write(endTag, 0, endTag.length);
+        }
+        out.write(in, resumeAt, in.length - resumeAt);
+        return out.toByteArray();
+    }
+
+    private static boolean isLibraryEntry(@NotNull Scanner scanner, @NotNull Set<String> modules) throws XMLStreamException {
+        if (!scanner.isName(ORDER_ENTRY)) {
+            return false;
+        }
+
+        String type = scanner.getAttribute("type");
+        return "module-library".equals(type)
+                || ("module".equals(type) && modules.contains(scanner.getAttribute("module-name")))
+                || "project".equals(scanner.getAttribute("level"));
+    }
+
+    private static void writeLibrary(@NotNull StringBuilder text, @NotNull DependencySet.Dependency library, @NotNull String indent,
+                                     boolean spacedEmpty, @Nullable CharsetEncoder encoder) {
+        String step = "  ";
+        String emptyEnd = spacedEmpty ? " />" : "/>";
+
+        if (library.isModule()) {
+            text.append('<').append(ORDER_ENTRY);
+            appendAttribute(text, "type", "module", encoder);
+            appendAttribute(text, "module-name", library.getModuleName(), encoder);
+            if (!DependencySet.COMPILE.equals(library.getScope())) {
+                appendAttribute(text, "scope", library.getScope(), encoder);
+            }
+            text.append(emptyEnd);
+            return;
+        }
+
+        if (library.isProjectLibrary()) {
+            text.append('<').append(ORDER_ENTRY);
+            appendAttribute(text, "type", "library", encoder);
+            if (!DependencySet.COMPILE.equals(library.getScope())) {
+                appendAttribute(text, "scope", library.getScope(), encoder);
+            }
+            appendAttribute(text, "name", library.getLibraryName(), encoder);
+            appendAttribute(text, "level", "project", encoder);
+            text.append(emptyEnd);
+            return;
+        }
+
+        text.append('<').append(ORDER_ENTRY);
+        appendAttribute(text, "type", "module-library", encoder);
+        if (!DependencySet.COMPILE.equals(library.getScope())) {
+            appendAttribute(text, "scope", library.getScope(), encoder);
+        }
+        text.append('>').append(indent).append(step).append("<library>");
+        writeRoots(text, CLASSES, library.getPath(), indent + step + step, emptyEnd, encoder);
+        writeRoots(text, JAVADOC, library.getJavadoc(), indent + step + step, emptyEnd, encoder);
+        writeRoots(text, SOURCES, library.getSources(), indent + step + step, emptyEnd, encoder);
+        text.append(indent).append(step).append("</library>");
+        text.append(indent).append("</").append(ORDER_ENTRY).append('>');
+    }
+
+    private static void writeRoots(@NotNull StringBuilder text, @NotNull String type, @Nullable String path, @NotNull String indent,
+                                   @NotNull String emptyEnd, @Nullable CharsetEncoder encoder) {
+        text.append(indent).append('<').append(type);
+        if (path == null) {
+            text.append(emptyEnd);
+            return;
+        }
+
+        text.append('>').append(indent).append("  <root");
+        appendAttribute(text, "url", toUrl(path), encoder);
+        text.append(emptyEnd).append(indent).append("</").append(type).append('>');
+    }
+
+    /**
+     * Appends the attribute, escaping the value as the XML writer does. A character the encoding of the file has
+     * no byte for is written as a character reference.
+     */
+    private static void appendAttribute(@NotNull StringBuilder text, @NotNull String name, @NotNull String value,
+                                        @Nullable CharsetEncoder encoder) {
+        text.append(' ').append(name).append("=\"");
+        for (int i = 0; i < value.length(); ) {
+            int c = value.codePointAt(i);
+            int length = Character.charCount(c);
+            switch (c) {
+                case '&':
+                    text.append("&amp;");
+                    break;
+                case '<':
+                    text.append("&lt;");
+                    break;
+                case '>':
+                    text.append("&gt;");
+                    break;
+                case '"':
+                    text.append("&quot;");
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    text.append("&#").append(c).append(';');
+                    break;
+                default:
+                    if (c >= 0x80 && encoder != null && !encoder.canEncode(value.substring(i, i + length))) {
+                        text.append("&#").append(c).append(';');
+                    } else {
+                        text.appendCodePoint(c);
+                    }
+                    break;
+            }
+            i += length;
+        }
+        text.append('"');
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    @NotNull
+    private static byte[] ascii(@NotNull String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean startsWith(@NotNull byte[] content, int index, @NotNull byte[] prefix) {
+        if (index + prefix.length > content.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (content[index + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(@NotNull byte[] content, int from, @NotNull byte[] bytes) {
+        byte first = bytes[0];
+        for (int i = from; i + bytes.length <= content.length; i++) {
+            if (content[i] == first && startsWith(content, i, bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(@NotNull byte[] content, int from, byte b) {
+        for (int i = from; i < content.length; i++) {
+            if (content[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The bytes of a module file in an ASCII compatible encoding, in which markup can be found byte by byte. A file
+     * in another encoding, UTF-16 for one, is transcoded to UTF-8 and back.
+     */
+    private static final class Source {
+        private static final String ASCII_PROBE = "<?xml version=\"1.0\"?>\n\t\r</a b='c' d=\"e\"/>&#x;:-_.!";
+
+        final byte[] bytes;
+        final Charset charset;
+        // the encoding of the file when it is transcoded
+        private final Charset encoding;
+        private final int byteOrderMark;
+        private final byte[] original;
+
+        private Source(@NotNull byte[] bytes, @NotNull Charset charset, @Nullable Charset encoding, int byteOrderMark, @NotNull byte[] original) {
+            this.bytes = bytes;
+            this.charset = charset;
+            this.encoding = encoding;
+            this.byteOrderMark = byteOrderMark;
+            this.original = original;
+        }
+
+        @NotNull
+        static Source of(@NotNull byte[] content) throws XMLStreamException {
+            if (content.length >= 2 && (content[0] & 0xff) == 0xfe && (content[1] & 0xff) == 0xff) {
+                return transcode(content, 2, StandardCharsets.UTF_16BE);
+            }
+            if (content.length >= 2 && (content[0] & 0xff) == 0xff && (content[1] & 0xff) == 0xfe) {
+                return transcode(content, 2, StandardCharsets.UTF_16LE);
+            }
+            if (content.length >= 2 && content[0] == 0 && content[1] == '<') {
+                return transcode(content, 0, StandardCharsets.UTF_16BE);
+            }
+            if (content.length >= 2 && content[0] == '<' && content[1] == 0) {
+                return transcode(content, 0, StandardCharsets.UTF_16LE);
+            }
+
+            Charset charset = getDeclaredCharset(content);
+            if (Arrays.equals(ASCII_PROBE.getBytes(charset), ascii(ASCII_PROBE))) {
+                return new Source(content, charset, null, 0, content);
+            }
+            return transcode(content, 0, charset);
+        }
+
+        @NotNull
+        private static Source transcode(@NotNull byte[] content, int byteOrderMark, @NotNull Charset encoding) {
+            byte[] bytes = new String(content, byteOrderMark, content.length - byteOrderMark, encoding).getBytes(StandardCharsets.UTF_8);
+            return new Source(bytes, StandardCharsets.UTF_8, encoding, byteOrderMark, content);
+        }
+
+        /**
+         * The encoding of the XML declaration, UTF-8 when there is none.
+         */
+        @NotNull
+        private static Charset getDeclaredCharset(@NotNull byte[] content) throws XMLStreamException {
+            int start = startsWith(content, 0, new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf}) ? 3 : 0;
+            if (!startsWith(content, start, ascii("<?xml"))) {
+                return StandardCharsets.UTF_8;
+            }
+            int end = indexOf(content, start, ascii("?>"));
+            int attribute = indexOf(content, start, ascii("encoding"));
+            if (end < 0 || attribute < 0 || attribute > end) {
+                return StandardCharsets.UTF_8;
+            }
+
+            int i = attribute + "encoding".length();
+            while (i < end && (isWhitespace(content[i]) || content[i] == '=')) {
+                i++;
+            }
+            int close = i < end ? indexOf(content, i + 1, content[i]) : -1;
+            if (close < 0 || close > end) {
+                throw new XMLStreamException("Malformed XML declaration");
+            }
+            String name = new String(content, i + 1, close - i - 1, StandardCharsets.US_ASCII);
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                throw new XMLStreamException("Unsupported encoding " + name);
+            }
+        }
+
+        /**
+         * The rewritten bytes in the encoding of the file.
+         */
+        @NotNull
+        byte[] encode(@NotNull byte[] rewritten) {
+            if (encoding == null) {
+                return rewritten;
+            }
+
+            byte[] encoded = new String(rewritten, StandardCharsets.UTF_8).getBytes(encoding);
+            byte[] content = Arrays.copyOf(original, byteOrderMark + encoded.length);
+            System.arraycopy(encoded, 0, content, byteOrderMark, encoded.length);
+            return content;
+        }
+    }
+
+    /**
+     * The tokens of an XML document, read from its bytes: start tags, end tags, text and other markup. Checks that
+     * the elements nest and that the tags are complete, not the whole of the well-formedness rules.
+     */
+    private static final class Scanner {
+        static final int START = 1;
+        static final int END = 2;
+        static final int TEXT = 3;
+        static final int MARKUP = 4;
+
+        private final byte[] in;
+        private final Charset charset;
+        private int position;
+        private boolean root;
+
+        int token;
+        int start;
+        int end;
+        // the start tag ends with />
+        boolean empty;
+        // the number of elements around the token, for an end tag the ones around its element
+        int depth;
+
+        private int nameStart;
+        private int nameEnd;
+        // name start, name end, value start and value end of each attribute of the start tag
+        private int[] attributes = new int[16];
+        private int attributeCount;
+        // name start and name end of each open element
+        private int[] open = new int[32];
+        private int openCount;
+
+        Scanner(@NotNull byte[] in, @NotNull Charset charset) {
+            this.in = in;
+            this.charset = charset;
+        }
+
+        boolean next() throws XMLStreamException {
+            start = position;
+            depth = openCount;
+            empty = false;
+            if (position >= in.length) {
+                if (openCount > 0) {
+                    throw error("Element " + getName(open[2 * openCount - 2], open[2 * openCount - 1]) + " is not closed", position);
+                }
+                if (!root) {
+                    throw error("No root element", position);
+                }
+                return false;
+            }
+
+            if (in[position] != '<') {
+                int next = indexOf(in, position, (byte) '<');
+                token = TEXT;
+                end = position = next < 0 ? in.length : next;
+                return true;
+            }
+
+            for (byte[][] markup : MARKUPS) {
+                if (startsWith(in, position, markup[0])) {
+                    int close = indexOf(in, position + markup[0].length, markup[1]);
+                    if (close < 0) {
+                        throw error("Markup is not closed", position);
+                    }
+                    token = MARKUP;
+                    end = position = close + markup[1].length;
+                    return true;
+                }
+            }
+
+            if (position + 1 < in.length && in[position + 1] == '/') {
+                readName(position + 2);
+                int close = skipWhitespace(nameEnd);
+                if (close >= in.length || in[close] != '>') {
+                    throw error("End tag is not closed", position);
+                }
+                if (openCount == 0 || !sameName(open[2 * openCount - 2], open[2 * openCount - 1])) {
+                    throw error("Unexpected end tag " + getName(), position);
+                }
+                depth = --openCount;
+                token = END;
+                end = position = close + 1;
+                return true;
+            }
+
+            if (openCount == 0 && root) {
+                throw error("Element after the root element", position);
+            }
+            readName(position + 1);
+            attributeCount = 0;
+            int i = nameEnd;
+            while (true) {
+                i = skipWhitespace(i);
+                if (i >= in.length) {
+                    throw error("Start tag is not closed", position);
+                }
+                if (in[i] == '>') {
+                    i++;
+                    break;
+                }
+                if (in[i] == '/' && i + 1 < in.length && in[i + 1] == '>') {
+                    empty = true;
+                    i += 2;
+                    break;
+                }
+                i = readAttribute(i);
+            }
+
+            root = true;
+            if (!empty) {
+                if (2 * openCount + 2 > open.length) {
+                    open = Arrays.copyOf(open, open.length * 2);
+                }
+                open[2 * openCount] = nameStart;
+                open[2 * openCount + 1] = nameEnd;
+                openCount++;
+            }
+            token = START;
+            end = position = i;
+            return true;
+        }
+
+        /**
+         * True when the token is whitespace between tags.
+         */
+        boolean isWhitespace() {
+            if (token != TEXT) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (!ImlRewriter.isWhitespace(in[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * True when the local name of the tag is the given one.
+         */
+        boolean isName(@NotNull String name) {
+            int localStart = nameStart;
+            for (int i = nameStart; i < nameEnd; i++) {
+                if (in[i] == ':') {
+                    localStart = i + 1;
+                }
+            }
+            if (nameEnd - localStart != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (in[localStart + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @NotNull
+        String getName() {
+            return getName(nameStart, nameEnd);
+        }
+
+        /**
+         * The value of the attribute of the start tag, null when it has none of that name.
+         */
+        @Nullable
+        String getAttribute(@NotNull String name) throws XMLStreamException {
+            for (int a = 0; a < attributeCount; a++) {
+                int attributeStart = attributes[4 * a];
+                if (attributes[4 * a + 1] - attributeStart != name.length()) {
+                    continue;
+                }
+                boolean same = true;
+                for (int i = 0; i < name.length() && same; i++) {
+                    same = in[attributeStart + i] == name.charAt(i);
+                }
+                if (same) {
+                    return decode(attributes[4 * a + 2], attributes[4 * a + 3]);
+                }
+            }
+            return null;
+        }
+
+        private void readName(int from) throws XMLStreamException {
+            int i = from;
+            while (i < in.length && !ImlRewriter.isWhitespace(in[i]) && in[i] != '/' && in[i] != '>' && in[i] != '=' && in[i] != '<') {
+                i++;
+            }
+            if (i == from) {
+                throw error("Tag without a name", position);
+            }
+            nameStart = from;
+            nameEnd = i;
+        }
+
+        private int readAttribute(int from) throws XMLStreamException {
+            int i = from;
+            while (i < in.length && !ImlRewriter.isWhitespace(in[i]) && in[i] != '=' && in[i] != '/' && in[i] != '>' && in[i] != '<') {
+                i++;
+            }
+            int nameEnd = i;
+            i = skipWhitespace(i);
+            if (nameEnd == from || i >= in.length || in[i] != '=') {
+                throw error("Malformed attribute", from);
+            }
+            i = skipWhitespace(i + 1);
+            if (i >= in.length || (in[i] != '"' && in[i] != '\'')) {
+                throw error("Attribute value is not quoted", from);
+            }
+            int valueEnd = indexOf(in, i + 1, in[i]);
+            if (valueEnd < 0) {
+                throw error("Attribute value is not closed", from);
+            }
+
+            if (4 * attributeCount + 4 > attributes.length) {
+                attributes = Arrays.copyOf(attributes, attributes.length * 2);
+            }
+            attributes[4 * attributeCount] = from;
+            attributes[4 * attributeCount + 1] = nameEnd;
+            attributes[4 * attributeCount + 2] = i + 1;
+            attributes[4 * attributeCount + 3] = valueEnd;
+            attributeCount++;
+            return valueEnd + 1;
+        }
+
+        /**
+         * The attribute value with its whitespace normalized and its references replaced, as an XML parser reads it.
+         */
+        @NotNull
+        private String decode(int valueStart, int valueEnd) throws XMLStreamException {
+            String value = new String(in, valueStart, valueEnd - valueStart, charset);
+            if (value.indexOf('\t') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                value = value.replace("\r\n", " ").replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+            }
+            if (value.indexOf('&') < 0) {
+                return value;
+            }
+
+            StringBuilder decoded = new StringBuilder(value.length());
+            int i = 0;
+            while (i < value.length()) {
+                char c = value.charAt(i);
+                int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+                if (c != '&') {
+                    decoded.append(c);
+                    i++;
+                    continue;
+                }
+                if (semicolon < 0) {
+                    throw error("Reference is not closed", valueStart);
+                }
+
+                String reference = value.substring(i + 1, semicolon);
+                if ("amp".equals(reference)) {
+                    decoded.append('&');
+                } else if ("lt".equals(reference)) {
+                    decoded.append('<');
+                } else if ("gt".equals(reference)) {
+                    decoded.append('>');
+                } else if ("quot".equals(reference)) {
+                    decoded.append('"');
+                } else if ("apos".equals(reference)) {
+                    decoded.append('\'');
+                } else if (reference.startsWith("#")) {
+                    try {
+                        decoded.appendCodePoint(reference.startsWith("#x")
+                                ? Integer.parseInt(reference.substring(2), 16) : Integer.parseInt(reference.substring(1)));
+                    } catch (IllegalArgumentException e) {
+                        throw error("Malformed character reference &" + reference + ";", valueStart);
+                    }
+                } else {
+                    throw error("Undeclared entity &" + reference + ";", valueStart);
+                }
+                i = semicolon + 1;
+            }
+            return decoded.toString();
+        }
+
+        private int skipWhitespace(int from) {
+            int i = from;
+            while (i < in.length && ImlRewriter.isWhitespace(in[i])) {
+                i++;
+            }
+            return i;
+        }
+
+        private boolean sameName(int otherStart, int otherEnd) {
+            if (otherEnd - otherStart != nameEnd - nameStart) {
+                return false;
+            }
+            for (int i = 0; i < otherEnd - otherStart; i++) {
+                if (in[otherStart + i] != in[nameStart + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @NotNull
+        private String getName(int start, int end) {
+            return new String(in, start, end - start, charset);
+        }
+
+        @NotNull
+        private static XMLStreamException error(@NotNull String message, int offset) {
+            return new XMLStreamException(message + " at byte " + offset);
+        }
+    }
+
+    /**
+     * Reads the dependencies of the library entries from the tokens of a module file, see {@link #readLibraries(byte[])}.
+     */
+    private static final class EntryReader {
+        final List<DependencySet.Dependency> dependencies = new ArrayList<>();
+
+        private String entryScope;
+        private String rootType;
+        private final List<String> classes = new ArrayList<>();
+        private String sources;
+        private String javadoc;
+
+        void accept(@NotNull Scanner scanner) throws XMLStreamException {
+            if (scanner.token == Scanner.START) {
+                start(scanner);
+                if (scanner.empty) {
+                    end(scanner);
+                }
+            } else if (scanner.token == Scanner.END) {
+                end(scanner);
+            }
+        }
+
+        private void start(@NotNull Scanner scanner) throws XMLStreamException {
+            if (scanner.isName(ORDER_ENTRY)) {
+                String scope = scanner.getAttribute("scope");
+                scope = scope != null ? scope : DependencySet.COMPILE;
+                String type = scanner.getAttribute("type");
+                if ("module-library".equals(type)) {
+                    entryScope = scope;
+                } else if ("project".equals(scanner.getAttribute("level"))) {
+                    dependencies.add(new DependencySet.Dependency(DependencySet.PROJECT_LIBRARY_PREFIX + scanner.getAttribute("name"), scope));
+                } else if ("module".equals(type)) {
+                    dependencies.add(new DependencySet.Dependency(DependencySet.MODULE_PREFIX + scanner.getAttribute("module-name"), scope));
+                }
+            } else if (entryScope != null && scanner.isName(CLASSES)) {
+                rootType = CLASSES;
+            } else if (entryScope != null && scanner.isName(SOURCES)) {
+                rootType = SOURCES;
+            } else if (entryScope != null && scanner.isName(JAVADOC)) {
+                rootType = JAVADOC;
+            } else if (rootType != null && scanner.isName("root")) {
+                String path = toJarPath(scanner.getAttribute("url"));
+                if (CLASSES.equals(rootType)) {
+                    classes.add(path);
+                } else if (SOURCES.equals(rootType) && sources == null) {
+                    sources = path;
+                } else if (JAVADOC.equals(rootType) && javadoc == null) {
+                    javadoc = path;
+                }
+            }
+        }
+
+        private void end(@NotNull Scanner scanner) {
+            if (scanner.isName(ORDER_ENTRY)) {
+                if (entryScope != null) {
+                    for (String path : classes) {
+                        dependencies.add(new DependencySet.Dependency(path, entryScope, sources, javadoc));
+                    }
+                }
+                entryScope = null;
+                classes.clear();
+                sources = null;
+                javadoc = null;
+            } else if (rootType != null && scanner.isName(rootType)) {
+                rootType = null;
+            }
+        }
+    }
+}
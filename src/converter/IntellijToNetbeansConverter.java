@@ -1,18 +1,39 @@
 package converter;
 
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.PathMacroManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.LibraryOrderEntry;
+import com.intellij.openapi.roots.ModuleOrderEntry;
 import com.intellij.openapi.roots.OrderEntry;
 import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.impl.ModuleLibraryOrderEntryImpl;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.PathUtil;
 import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.AtomicFileWriter;
+import util.FileWriteUtil;
 import util.NotificationUtil;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -26,7 +47,7 @@ public class IntellijToNetbeansConverter implements ProjectFileConverter {
     private Module module;
 
     @NotNull
-    private String projectFileContent;
+    private ModuleModel model;
 
     @Override
     public void setModule(@NotNull Module module) {
@@ -34,105 +55,189 @@ public class IntellijToNetbeansConverter implements ProjectFileConverter {
     }
 
     @Override
-    public void setProjectFileContent(@NotNull String projectFileContent) {
-        this.projectFileContent = projectFileContent;
+    public void setModel(@NotNull ModuleModel model) {
+        this.model = model;
     }
 
     @Override
     public void convert() {
         NotificationUtil.notify("Intellij to Netbeans converting...");
 
-        //TODO:clear netbeans classpath, read orderEntry module-library intellij, re-build netbeans classpath
-        Properties properties = clearNetbeansClasspath();
+        ConversionMetrics.Recording recording = ConversionMetricsService.getInstance(module.getProject()).getMetrics()
+                .start(module.getName(), ConverterFactory.INTELLIJ_TO_NETBEANS);
+        try {
+            convert(recording);
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            recording.failed();
+            throw e;
+        } finally {
+            recording.finish();
+        }
+
+        NotificationUtil.notify("Intellij to Netbeans converted DONE");
+    }
+
+    private void convert(ConversionMetrics.Recording recording) {
+        // patches javac.classpath and the file.reference.* properties with the libraries of the module, in order
+        if(model.getNetbeans() != null) {
+            List<String> references;
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.IML_PARSE)) {
+                references = ApplicationManager.getApplication().runReadAction((Computable<List<String>>) () -> extractIntellijReferences(module));
+            }
+            ProgressManager.checkCanceled();
+
+            ConversionEngine engine = new ConversionEngine(JarIndexService.getInstance().getIndex());
+            engine.setProjectGraph(ProjectReferenceService.getInstance(module.getProject()).getGraph());
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.LIBRARY_RESOLUTION)) {
+                references = engine.resolveModuleReferences(model.getDirectory(), references);
+            } catch (IOException | XMLStreamException e) {
+                recording.failed();
+                logger.error("Unable to resolve the projects " + module.getName() + " depends on", e);
+                return;
+            }
 
-        if(properties != null) {
-            List<String> references = extractIntellijReferences();
-            Properties transformedNetbeansClasspath = buildNetbeansClasspath(properties, references);
+            ConversionResult result;
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.SERIALIZATION)) {
+                result = engine.toNetbeans(model, references);
+            }
+            ProgressManager.checkCanceled();
 
+            boolean current = true;
             try {
-                flushNetbeansClasspath(transformedNetbeansClasspath);
-            } catch (IOException e) {
-                logger.error("Unable to override netbeans project properties");
+                current = ModuleModelService.getInstance(module.getProject()).write(model, () -> {
+                    if (!result.isChanged()) {
+                        logger.info("Classpath of " + module.getName() + " is up to date, project.properties is left untouched");
+                        ModuleModelService.getInstance(module.getProject()).converted(model, ConverterFactory.INTELLIJ_TO_NETBEANS, null);
+                    } else {
+                        flushNetbeansClasspath(result.getContent(), result.getPrivateContent(), recording);
+                    }
+                });
+            } catch (IOException | XMLStreamException e) {
+                recording.failed();
+                logger.error("Unable to override netbeans project properties", e);
+            }
+            if (!current) {
+                logger.info("Files of " + module.getName() + " changed while converting, it is converted again");
+                ConversionScheduler.getInstance(module.getProject()).schedule(module, ConverterFactory.INTELLIJ_TO_NETBEANS);
+                return;
             }
-        }
 
-        NotificationUtil.notify("Intellij to Netbeans converted DONE");
+            if (!recording.isFailed()) {
+                List<Path> jars = new ArrayList<>(references.size());
+                for (String reference : references) {
+                    jars.add(model.getDirectory().resolve(reference));
+                }
+                ConversionStateService.getInstance(module.getProject()).record(module, jars);
+            }
+        }
     }
 
-    private void flushNetbeansClasspath(Properties transformedNetbeansClasspath) throws IOException {
+    /**
+     * Writes private.properties first, when it changed, so the references project.properties gets resolve. Either
+     * content is null when its file does not change.
+     */
+    private void flushNetbeansClasspath(@Nullable byte[] content, @Nullable byte[] privateContent, ConversionMetrics.Recording recording) throws IOException {
         Project project = module.getProject();
         String relPath = module.getModuleFilePath().substring(0, module.getModuleFilePath().lastIndexOf(File.separator));
         VirtualFile moduleRoot = project.getBaseDir().getFileSystem().findFileByPath(relPath);
         if (moduleRoot.isDirectory()) {
             String netbeansPropertiesPath = String.format("%s/nbproject/project.properties", moduleRoot.getCanonicalPath());
+            VirtualFile netbeansPropertiesVfLocal = LocalFileSystem.getInstance().findFileByPath(netbeansPropertiesPath);
+            if (netbeansPropertiesVfLocal == null) {
+                logger.error("Netbeans property file not found. Stop process!");
+                return;
+            }
 
-            PrintWriter writer = new PrintWriter(netbeansPropertiesPath);
-            try {
-                writer.print("");
-                Enumeration propertiesKeys = sortPropertiesKeys(transformedNetbeansClasspath);
-                while(propertiesKeys.hasMoreElements()) {
-                    Object propertiesKey = propertiesKeys.nextElement();
-                    writer.println(String.format("%s=%s", propertiesKey, transformedNetbeansClasspath.get(propertiesKey)));
+            AtomicFileWriter.Outcome outcome = AtomicFileWriter.Outcome.UP_TO_DATE;
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.DISK_WRITE)) {
+                if (privateContent != null) {
+                    byte[] privateRead = model.getNetbeans().getPrivatePropertiesContent();
+                    VirtualFile privateProperties = findOrCreatePrivateProperties(moduleRoot);
+                    outcome = FileWriteUtil.write(privateProperties, privateContent, privateRead != null ? privateRead : new byte[0]);
                 }
-
-//                for (String name: transformedNetbeansClasspath.stringPropertyNames()) {
-//                    writer.println(String.format("%s=%s", name, transformedNetbeansClasspath.get(name)));
-//                }
-                writer.flush();
-            } finally {
-                if(writer != null) writer.close();
+                if (content != null && outcome != AtomicFileWriter.Outcome.STALE) {
+                    AtomicFileWriter.Outcome propertiesOutcome = FileWriteUtil.write(netbeansPropertiesVfLocal, content, model.getNetbeans().getPropertiesContent());
+                    outcome = propertiesOutcome != AtomicFileWriter.Outcome.UP_TO_DATE ? propertiesOutcome : outcome;
+                }
+            }
+            switch (outcome) {
+                case WRITTEN:
+                    recording.written((content != null ? content.length : 0) + (privateContent != null ? privateContent.length : 0));
+                    ModuleModelService.getInstance(project).converted(model, ConverterFactory.INTELLIJ_TO_NETBEANS, content, privateContent);
+                    break;
+                case UP_TO_DATE:
+                    // the properties already hold the content, the module is in sync all the same
+                    recording.writeAvoided();
+                    ModuleModelService.getInstance(project).converted(model, ConverterFactory.INTELLIJ_TO_NETBEANS, content, privateContent);
+                    break;
+                case STALE:
+                    recording.writeStale();
+                    break;
             }
         }
     }
 
-    private Properties buildNetbeansClasspath(Properties properties, List<String> references) {
-        String javacClassPath = "\\\r\n";
-        for (int i = 0; i < references.size(); ++i) {
-            String reference = references.get(i);
-            String[] split = reference.split("/");
-            String libraryName = split[split.length - 1];
-
-            properties.put("file.reference." + libraryName, reference);
-            if(i < references.size() - 1) {
-                javacClassPath += String.format("\t${file.reference.%s}:\\\r\n", libraryName);
-            } else {
-                javacClassPath += String.format("\t${file.reference.%s}", libraryName);
-            }
+    /**
+     * nbproject/private/private.properties of the project, created empty when missing.
+     */
+    private static VirtualFile findOrCreatePrivateProperties(VirtualFile moduleRoot) throws IOException {
+        String path = moduleRoot.getPath() + "/" + NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH;
+        VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByPath(path);
+        if (file != null) {
+            return file;
         }
 
-        properties.put("javac.classpath", javacClassPath);
-
-        return properties;
-    }
-
-    private Enumeration sortPropertiesKeys(Properties properties) {
-        Enumeration<?> keysEnum = properties.propertyNames();
+        Ref<IOException> error = Ref.create();
+        Ref<VirtualFile> created = Ref.create();
+        Application application = ApplicationManager.getApplication();
+        application.invokeAndWait(() -> application.runWriteAction(() -> {
+            try {
+                VirtualFile directory = VfsUtil.createDirectoryIfMissing(PathUtil.getParentPath(path));
+                if (directory == null) {
+                    throw new IOException("Unable to create " + PathUtil.getParentPath(path));
+                }
+                VirtualFile existing = directory.findChild(PathUtil.getFileName(path));
+                created.set(existing != null ? existing : directory.createChildData(FileWriteUtil.REQUESTOR, PathUtil.getFileName(path)));
+            } catch (IOException e) {
+                error.set(e);
+            }
+        }), ModalityState.defaultModalityState());
 
-        Vector keyList = new Vector();
-        while(keysEnum.hasMoreElements()){
-            keyList.add(keysEnum.nextElement());
+        if (!error.isNull()) {
+            throw error.get();
         }
-        Collections.sort(keyList);
-
-        return keyList.elements();
+        return created.get();
     }
 
-    private List<String> extractIntellijReferences() {
+    /**
+     * Jars of the module libraries and project libraries of a module, as Netbeans references them, and the modules
+     * it depends on as "module:&lt;directory&gt;", see {@link ConversionEngine#resolveModuleReferences(Path, List)}.
+     * Needs read access.
+     */
+    static List<String> extractIntellijReferences(Module module) {
         List<String> references = new ArrayList<String>();
-        String moduleName = module.getName();
+        Path moduleDirectory = Paths.get(PathUtil.getParentPath(FileUtil.toSystemIndependentName(module.getModuleFilePath())));
+        PathMacroManager macros = PathMacroManager.getInstance(module);
 
         OrderEnumerator.orderEntries(module).forEach(new Processor<OrderEntry>() {
             @Override
             public boolean process(OrderEntry orderEntry) {
                 if(orderEntry instanceof ModuleLibraryOrderEntryImpl) {
-                    System.out.println(orderEntry.getPresentableName());
-                    String libraryReference = orderEntry.getPresentableName();
-
-                    if(libraryReference.contains(moduleName)) {
-                        String[] split = libraryReference.split(moduleName + "/");
-                        references.add(split[1]);
-                    } else {
-                        references.add(libraryReference);
+                    // the roots as the module file stores them, which ConversionEngine reads outside the IDE
+                    for (String url : ((LibraryOrderEntry) orderEntry).getRootUrls(OrderRootType.CLASSES)) {
+                        String path = PathUtil.getLocalPath(VfsUtilCore.urlToPath(url));
+                        String collapsed = macros.collapsePath(path);
+                        references.add(ConversionEngine.toNetbeansReference(collapsed.startsWith("$MODULE_DIR$/") ? collapsed : path, moduleDirectory));
+                    }
+                } else if (orderEntry instanceof ModuleOrderEntry && ((ModuleOrderEntry) orderEntry).getModule() != null) {
+                    String dependency = PathUtil.getParentPath(FileUtil.toSystemIndependentName(((ModuleOrderEntry) orderEntry).getModule().getModuleFilePath()));
+                    references.add(DependencySet.MODULE_PREFIX + dependency);
+                } else if (orderEntry instanceof LibraryOrderEntry && ((LibraryOrderEntry) orderEntry).getLibrary() != null) {
+                    // project libraries, such as the ones holding jars shared between modules
+                    for (String url : ((LibraryOrderEntry) orderEntry).getLibrary().getUrls(OrderRootType.CLASSES)) {
+                        references.add(ConversionEngine.toNetbeansReference(PathUtil.getLocalPath(VfsUtilCore.urlToPath(url)), moduleDirectory));
                     }
                 }
 
@@ -142,38 +247,4 @@ public class IntellijToNetbeansConverter implements ProjectFileConverter {
 
         return references;
     }
-
-    private Properties clearNetbeansClasspath() {
-        Project project = module.getProject();
-        String relPath = module.getModuleFilePath().substring(0, module.getModuleFilePath().lastIndexOf(File.separator));
-        VirtualFile moduleRoot = project.getBaseDir().getFileSystem().findFileByPath(relPath);
-        if (moduleRoot.isDirectory()) {
-            String netbeansPropertiesPath = String.format("%s/nbproject/project.properties", moduleRoot.getCanonicalPath());
-
-            VirtualFile netbeansPropertiesVfLocal = LocalFileSystem.getInstance().findFileByPath(netbeansPropertiesPath);
-
-            if (netbeansPropertiesVfLocal!= null) {
-                try {
-                    Properties properties = new Properties();
-                    InputStream is = new ByteArrayInputStream(netbeansPropertiesVfLocal.contentsToByteArray());
-                    properties.load(is);
-
-                    Set<String> propertyNames = properties.stringPropertyNames();
-                    for(String name: propertyNames) {
-                        if(name.startsWith("file.reference") || name.equals("javac.classpath")) {
-                            properties.remove(name);
-                        }
-                    }
-
-                    return properties;
-                } catch (IOException e) {
-                    logger.error("Unable to read Netbeans property file. Stop process!");
-                }
-            } else {
-                logger.error("Netbeans property file not found. Stop process!");
-            }
-        }
-        return null;
-    }
 }
-
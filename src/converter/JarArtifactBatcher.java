@@ -0,0 +1,228 @@
+package converter;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.packaging.artifacts.Artifact;
+import com.intellij.packaging.artifacts.ArtifactManager;
+import com.intellij.packaging.artifacts.ModifiableArtifact;
+import com.intellij.packaging.artifacts.ModifiableArtifactModel;
+import com.intellij.packaging.elements.CompositePackagingElement;
+import com.intellij.packaging.elements.PackagingElement;
+import com.intellij.packaging.elements.PackagingElementFactory;
+import com.intellij.packaging.impl.artifacts.PlainArtifactType;
+import com.intellij.packaging.impl.elements.ArchivePackagingElement;
+import com.intellij.packaging.impl.elements.DirectoryPackagingElement;
+import com.intellij.packaging.impl.elements.FileCopyPackagingElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Creates or updates the artifact building the jar of converted modules, so the IDE builds it incrementally
+ * instead of the Ant build of the Netbeans project, see {@link NetbeansJarLayout}.
+ *
+ * The artifact writes dist.jar, holding the module output and the generated manifest, and copies the libraries to
+ * dist/lib. It is built on make when {@link ConverterSettings#packageJars} is on. An artifact is identified by its
+ * output directory and jar name, it is only rebuilt when the layout of its module changed.
+ *
+ * Conversions only queue a request. The requests queued while the UI thread is busy are applied together in one
+ * commit of the artifact model, the latest request of a module winning.
+ */
+public class JarArtifactBatcher {
+    private final Logger logger = Logger.getInstance("com.trangdp.JarArtifactBatcher");
+
+    private static final String MANIFEST_DIRECTORY = "META-INF";
+    private static final String MANIFEST_NAME = "MANIFEST.MF";
+    private static final String LIBRARY_DIRECTORY = "lib";
+
+    @NotNull
+    private final Project project;
+
+    private final Map<String, Request> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // layout each artifact was last built from, by module name
+    private final Map<String, NetbeansJarLayout> applied = new ConcurrentHashMap<>();
+
+    private static class Request {
+        private final Module module;
+        private final NetbeansJarLayout layout;
+
+        Request(@NotNull Module module, @NotNull NetbeansJarLayout layout) {
+            this.module = module;
+            this.layout = layout;
+        }
+    }
+
+    public JarArtifactBatcher(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static JarArtifactBatcher getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, JarArtifactBatcher.class);
+    }
+
+    /**
+     * Queues the artifact of a module, it is created or updated in the next pass on the UI thread. The manifest of
+     * the layout is expected to be generated already.
+     */
+    public void request(@NotNull Module module, @NotNull NetbeansJarLayout layout) {
+        synchronized (pending) {
+            pending.put(module.getName(), new Request(module, layout));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Applies {@link ConverterSettings#packageJars} to the artifacts already created.
+     */
+    public void updateBuildOnMake() {
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            ApplicationManager.getApplication().invokeLater(this::flush, project.getDisposed());
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        List<Request> requests;
+        synchronized (pending) {
+            requests = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        boolean buildOnMake = ConverterSettings.getInstance(project).packageJars;
+        ModifiableArtifactModel model = ArtifactManager.getInstance(project).createModifiableModel();
+
+        int created = 0;
+        int updated = 0;
+        for (Request request : requests) {
+            if (request.module.isDisposed()) {
+                continue;
+            }
+
+            Artifact artifact = find(model.getArtifacts(), request.layout);
+            ModifiableArtifact modifiable;
+            if (artifact == null) {
+                modifiable = model.addArtifact(getUniqueName(model, request.module.getName()), PlainArtifactType.getInstance());
+                created++;
+            } else if (!request.layout.equals(applied.get(request.module.getName()))) {
+                modifiable = model.getOrCreateModifiableArtifact(artifact);
+                updated++;
+            } else {
+                continue;
+            }
+
+            modifiable.setOutputPath(toPath(request.layout.getDistDirectory()));
+            modifiable.setRootElement(createRoot(request.module, request.layout));
+            modifiable.setBuildOnMake(buildOnMake);
+            applied.put(request.module.getName(), request.layout);
+        }
+
+        // the artifacts of the modules not converted since the project was opened follow the setting too
+        for (Artifact artifact : model.getArtifacts()) {
+            if (artifact.isBuildOnMake() != buildOnMake && isGenerated(artifact)) {
+                model.getOrCreateModifiableArtifact(artifact).setBuildOnMake(buildOnMake);
+                updated++;
+            }
+        }
+
+        if (created + updated == 0) {
+            model.dispose();
+            return;
+        }
+
+        ApplicationManager.getApplication().runWriteAction(model::commit);
+        logger.info("Jar artifacts: " + requests.size() + " requested, " + created + " created, " + updated + " updated");
+    }
+
+    /**
+     * dist.jar with the module output and the manifest in META-INF, next to lib holding the libraries.
+     */
+    @NotNull
+    private static CompositePackagingElement<?> createRoot(@NotNull Module module, @NotNull NetbeansJarLayout layout) {
+        PackagingElementFactory factory = PackagingElementFactory.getInstance();
+
+        CompositePackagingElement<?> archive = factory.createArchive(layout.getJar().getFileName().toString());
+        archive.addOrFindChild(factory.createModuleOutput(module));
+        factory.addFileCopy(archive, MANIFEST_DIRECTORY, toPath(layout.getArtifactManifest()), MANIFEST_NAME);
+
+        CompositePackagingElement<?> root = factory.createArtifactRootElement();
+        root.addOrFindChild(archive);
+        for (Path library : layout.getLibraries()) {
+            factory.addFileCopy(root, LIBRARY_DIRECTORY, toPath(library));
+        }
+        return root;
+    }
+
+    @Nullable
+    private static Artifact find(@NotNull Artifact[] artifacts, @NotNull NetbeansJarLayout layout) {
+        String outputPath = toPath(layout.getDistDirectory());
+        String jarName = layout.getJar().getFileName().toString();
+        for (Artifact artifact : artifacts) {
+            if (!outputPath.equals(artifact.getOutputPath())) {
+                continue;
+            }
+            for (PackagingElement<?> element : artifact.getRootElement().getChildren()) {
+                if (element instanceof ArchivePackagingElement
+                        && jarName.equals(((ArchivePackagingElement) element).getArchiveFileName())) {
+                    return artifact;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True when the jar of the artifact holds the generated manifest, the artifact was created by this class.
+     */
+    private static boolean isGenerated(@NotNull Artifact artifact) {
+        for (PackagingElement<?> archive : artifact.getRootElement().getChildren()) {
+            if (!(archive instanceof ArchivePackagingElement)) {
+                continue;
+            }
+            for (PackagingElement<?> directory : ((ArchivePackagingElement) archive).getChildren()) {
+                if (!(directory instanceof DirectoryPackagingElement)
+                        || !MANIFEST_DIRECTORY.equals(((DirectoryPackagingElement) directory).getDirectoryName())) {
+                    continue;
+                }
+                for (PackagingElement<?> file : ((DirectoryPackagingElement) directory).getChildren()) {
+                    if (file instanceof FileCopyPackagingElement
+                            && ((FileCopyPackagingElement) file).getFilePath().endsWith("/" + NetbeansJarLayout.ARTIFACT_MANIFEST_PATH)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private static String getUniqueName(@NotNull ModifiableArtifactModel model, @NotNull String name) {
+        String unique = name;
+        for (int i = 2; model.findArtifact(unique) != null; i++) {
+            unique = name + " (" + i + ")";
+        }
+        return unique;
+    }
+
+    @NotNull
+    private static String toPath(@NotNull Path path) {
+        return FileUtil.toSystemIndependentName(path.toString());
+    }
+}
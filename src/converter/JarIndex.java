@@ -0,0 +1,409 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Metadata of the jars a module depends on: main manifest attributes, Class-Path, sibling -sources and -javadoc
+ * jars, a checksum identifying copies of the same jar, and whether the jar can be read at all.
+ *
+ * An entry is keyed by the path of the jar and stays valid as long as its size and modification time do not change,
+ * only the central directory and the manifest of a jar are read to build it. Siblings are looked up again when
+ * the modification time of the directory changes. The index can be saved to a file and loaded back, so a restart
+ * does not read every jar again.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class JarIndex {
+    private static final int FORMAT_VERSION = 2;
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String[] SOURCES_SUFFIXES = {"-sources.jar", "-src.jar", "-sources.zip", "-src.zip"};
+    private static final String[] JAVADOC_SUFFIXES = {"-javadoc.jar", "-javadoc.zip", "-doc.zip"};
+
+    public static final class JarInfo {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final long directoryModified;
+        private final boolean valid;
+        private final long checksum;
+        private final Map<String, String> manifest;
+        private final List<String> classPath;
+        private final String sources;
+        private final String javadoc;
+
+        JarInfo(@NotNull String path, long size, long modified, long directoryModified, boolean valid, long checksum,
+                @NotNull Map<String, String> manifest, @NotNull List<String> classPath,
+                @Nullable String sources, @Nullable String javadoc) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.directoryModified = directoryModified;
+            this.valid = valid;
+            this.checksum = checksum;
+            this.manifest = Collections.unmodifiableMap(manifest);
+            this.classPath = Collections.unmodifiableList(classPath);
+            this.sources = sources;
+            this.javadoc = javadoc;
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Size of the jar in bytes, -1 when it is missing.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * False when the file is missing or is not a readable zip file.
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Checksum of the central directory of the jar, equal for copies of the same jar. Zero for directories and invalid jars.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Main attributes of the manifest, empty when the jar has none.
+         */
+        @NotNull
+        public Map<String, String> getManifest() {
+            return manifest;
+        }
+
+        /**
+         * Absolute paths of the Class-Path manifest entries, in order, whether they exist or not.
+         */
+        @NotNull
+        public List<String> getClassPath() {
+            return classPath;
+        }
+
+        @Nullable
+        public String getSources() {
+            return sources;
+        }
+
+        @Nullable
+        public String getJavadoc() {
+            return javadoc;
+        }
+
+        private boolean isCurrent(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+
+        @NotNull
+        private JarInfo withSiblings(long directoryModified, @Nullable String sources, @Nullable String javadoc) {
+            return new JarInfo(path, size, modified, directoryModified, valid, checksum, manifest, classPath, sources, javadoc);
+        }
+    }
+
+    private final Map<String, JarInfo> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    /**
+     * Returns the metadata of the jar, reading it only when it is not indexed yet or has changed on disk.
+     */
+    @NotNull
+    public JarInfo get(@NotNull Path jar) {
+        Path path = jar.toAbsolutePath().normalize();
+        String key = path.toString();
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // missing jars are not cached, they are likely to be built later
+            entries.remove(key);
+            return new JarInfo(key, -1, -1, -1, false, 0, Collections.emptyMap(), Collections.emptyList(), null, null);
+        }
+
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        long directoryModified = getModified(path.getParent());
+
+        JarInfo info = entries.get(key);
+        if (info != null && info.isCurrent(size, modified)) {
+            if (info.directoryModified == directoryModified) {
+                return info;
+            }
+            info = info.withSiblings(directoryModified, findSibling(path, SOURCES_SUFFIXES), findSibling(path, JAVADOC_SUFFIXES));
+        } else {
+            info = read(path, size, modified, directoryModified);
+        }
+
+        entries.put(key, info);
+        dirty = true;
+        return info;
+    }
+
+    /**
+     * Brings the entries of all the jars up to date, in parallel.
+     */
+    public void index(@NotNull Collection<Path> jars) {
+        jars.parallelStream().forEach(this::get);
+    }
+
+    /**
+     * Returns the jars reachable from the Class-Path of the jar, in the order the JVM searches them:
+     * the entries of a jar come right after it. The jar itself and missing jars are not part of the result.
+     */
+    @NotNull
+    public List<JarInfo> expandClassPath(@NotNull Path jar) {
+        Set<String> visited = new LinkedHashSet<>();
+        List<JarInfo> expanded = new ArrayList<>();
+        JarInfo info = get(jar);
+        visited.add(info.getPath());
+        expand(info, visited, expanded);
+        return expanded;
+    }
+
+    private void expand(@NotNull JarInfo info, @NotNull Set<String> visited, @NotNull List<JarInfo> expanded) {
+        for (String entry : info.getClassPath()) {
+            if (!visited.add(entry)) {
+                continue;
+            }
+
+            JarInfo child = get(Paths.get(entry));
+            if (child.isValid()) {
+                expanded.add(child);
+                expand(child, visited, expanded);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * True when entries were added or updated since the index was loaded or last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the index through a temporary file renamed over the target. Entries of jars that no longer exist are dropped.
+     */
+    public void save(@NotNull Path file) throws IOException {
+        List<JarInfo> infos = new ArrayList<>();
+        for (JarInfo info : entries.values()) {
+            if (Files.exists(Paths.get(info.path))) {
+                infos.add(info);
+            }
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(infos.size());
+                for (JarInfo info : infos) {
+                    out.writeUTF(info.path);
+                    out.writeLong(info.size);
+                    out.writeLong(info.modified);
+                    out.writeLong(info.directoryModified);
+                    out.writeBoolean(info.valid);
+                    out.writeLong(info.checksum);
+                    out.writeInt(info.manifest.size());
+                    for (Map.Entry<String, String> attribute : info.manifest.entrySet()) {
+                        out.writeUTF(attribute.getKey());
+                        out.writeUTF(attribute.getValue());
+                    }
+                    out.writeInt(info.classPath.size());
+                    for (String entry : info.classPath) {
+                        out.writeUTF(entry);
+                    }
+                    writeNullable(out, info.sources);
+                    writeNullable(out, info.javadoc);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Loads an index saved by {@link #save(Path)}. A missing file, or one written by another version, gives an empty index.
+     */
+    @NotNull
+    public static JarIndex load(@NotNull Path file) throws IOException {
+        JarIndex index = new JarIndex();
+        if (!Files.isRegularFile(file)) {
+            return index;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return index;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                long directoryModified = in.readLong();
+                boolean valid = in.readBoolean();
+                long checksum = in.readLong();
+
+                int attributeCount = in.readInt();
+                Map<String, String> manifest = new LinkedHashMap<>();
+                for (int j = 0; j < attributeCount; j++) {
+                    manifest.put(in.readUTF(), in.readUTF());
+                }
+
+                int classPathCount = in.readInt();
+                List<String> classPath = new ArrayList<>(classPathCount);
+                for (int j = 0; j < classPathCount; j++) {
+                    classPath.add(in.readUTF());
+                }
+
+                String sources = readNullable(in);
+                String javadoc = readNullable(in);
+                index.entries.put(path, new JarInfo(path, size, modified, directoryModified, valid, checksum, manifest, classPath, sources, javadoc));
+            }
+        }
+        return index;
+    }
+
+    private static void writeNullable(@NotNull DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(@NotNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @NotNull
+    private static JarInfo read(@NotNull Path path, long size, long modified, long directoryModified) {
+        String sources = findSibling(path, SOURCES_SUFFIXES);
+        String javadoc = findSibling(path, JAVADOC_SUFFIXES);
+
+        if (Files.isDirectory(path)) {
+            // a classes directory, nothing more to read
+            return new JarInfo(path.toString(), size, modified, directoryModified, true, 0,
+                    Collections.emptyMap(), Collections.emptyList(), sources, javadoc);
+        }
+
+        Map<String, String> manifest = new LinkedHashMap<>();
+        List<String> classPath = new ArrayList<>();
+        boolean valid;
+        long checksum = 0;
+        try {
+            ZipCentralDirectory directory = ZipCentralDirectory.read(path);
+            checksum = directory.getChecksum();
+            byte[] content = directory.readEntry(MANIFEST);
+            if (content != null) {
+                Attributes attributes = new Manifest(new ByteArrayInputStream(content)).getMainAttributes();
+                for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+                    manifest.put(attribute.getKey().toString(), String.valueOf(attribute.getValue()));
+                }
+
+                String entries = attributes.getValue(Attributes.Name.CLASS_PATH);
+                if (entries != null) {
+                    classPath.addAll(resolveClassPath(path.getParent(), entries));
+                }
+            }
+            valid = true;
+        } catch (IOException | RuntimeException e) {
+            valid = false;
+        }
+
+        return new JarInfo(path.toString(), size, modified, directoryModified, valid, valid ? checksum : 0, manifest, classPath, sources, javadoc);
+    }
+
+    /**
+     * Class-Path entries are URLs relative to the directory of the jar, separated by spaces.
+     */
+    @NotNull
+    private static List<String> resolveClassPath(@Nullable Path directory, @NotNull String entries) {
+        List<String> classPath = new ArrayList<>();
+        if (directory == null) {
+            return classPath;
+        }
+
+        URI base = directory.toUri();
+        for (String entry : entries.trim().split("\\s+")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            try {
+                URI uri = base.resolve(entry);
+                if ("file".equals(uri.getScheme())) {
+                    classPath.add(Paths.get(uri).normalize().toString());
+                }
+            } catch (IllegalArgumentException e) {
+                // malformed entries are ignored, as the JVM does
+            }
+        }
+        return classPath;
+    }
+
+    @Nullable
+    private static String findSibling(@NotNull Path jar, @NotNull String[] suffixes) {
+        String fileName = jar.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+        for (String suffix : suffixes) {
+            Path sibling = jar.resolveSibling(baseName + suffix);
+            if (Files.isRegularFile(sibling)) {
+                return sibling.toString();
+            }
+        }
+        return null;
+    }
+
+    private static long getModified(@Nullable Path path) {
+        try {
+            return path != null ? Files.getLastModifiedTime(path).toMillis() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package converter;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Application wide {@link JarIndex}, loaded from the system directory of the IDE and saved back when the IDE exits.
+ */
+public class JarIndexService implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.JarIndexService");
+
+    @NotNull
+    private final Path indexFile = Paths.get(PathManager.getSystemPath(), "netbeans-intellij", "jar-index.dat");
+
+    @NotNull
+    private final JarIndex index;
+
+    private final ClasspathConflictAnalyzer conflictAnalyzer = new ClasspathConflictAnalyzer();
+
+    public JarIndexService() {
+        JarIndex loaded;
+        try {
+            loaded = JarIndex.load(indexFile);
+        } catch (IOException e) {
+            logger.warn("Unable to load the jar index, jars will be read again", e);
+            loaded = new JarIndex();
+        }
+        index = loaded;
+    }
+
+    public static JarIndexService getInstance() {
+        return ServiceManager.getService(JarIndexService.class);
+    }
+
+    @NotNull
+    public JarIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Shared by all the conversions, so each jar is read once as long as it does not change.
+     */
+    @NotNull
+    public ClasspathConflictAnalyzer getConflictAnalyzer() {
+        return conflictAnalyzer;
+    }
+
+    @Override
+    public void dispose() {
+        if (!index.isDirty()) {
+            return;
+        }
+
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            logger.warn("Unable to save the jar index", e);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import util.AtomicFileWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Packages the compiled classes and resources of a module into a jar, like the jar target of a Netbeans build,
+ * reusing what it can of the previous jar.
+ *
+ * An entry whose file has the same size and time as in the previous jar, and was not modified after that jar was
+ * written, is copied over still compressed. Only the other entries are read and compressed, in parallel, and the
+ * new jar replaces the previous one by an atomic rename. The manifest comes first, the other entries follow in
+ * name order, so the same classes always give the same jar.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class JarPackager {
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    // changed entries are compressed in batches, to bound the memory held by compressed data not yet written
+    private static final int BATCH_ENTRIES = 512;
+    private static final long BATCH_BYTES = 32 * 1024 * 1024;
+
+    public static class Result {
+        private Path jar;
+        private int entries;
+        private int reused;
+        private int compressed;
+        private long size;
+        private long nanos;
+
+        @NotNull
+        public Path getJar() {
+            return jar;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Entries copied from the previous jar without being read from the classes directory.
+         */
+        public int getReused() {
+            return reused;
+        }
+
+        public int getCompressed() {
+            return compressed;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries, %d reused, %d compressed, %d bytes in %d ms",
+                    entries, reused, compressed, size, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * A file or directory to package, or an entry of the previous jar.
+     */
+    private static class Entry {
+        private final String name;
+        private Path file;
+        private byte[] content;
+        private long size;
+        private long modified;
+        private int dosTime;
+
+        // compressed data of a changed entry, or the location of a reused one in the previous jar
+        private int method;
+        private long crc;
+        private byte[] data;
+        private long compressedSize;
+        private long previousOffset = -1;
+
+        Entry(@NotNull String name) {
+            this.name = name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Writes the jar of the given class and resource directories. A file found in several directories is taken
+     * from the first one, as the compiler output comes before the resources.
+     */
+    @NotNull
+    public Result pack(@NotNull List<Path> roots, @NotNull Manifest manifest, @NotNull Path jar) throws IOException {
+        long start = System.nanoTime();
+        List<Entry> entries = collect(roots, manifest);
+        if (entries.size() > MAX_ENTRIES) {
+            throw new IOException("Too many entries for " + jar + ": " + entries.size());
+        }
+
+        Result result = new Result();
+        result.jar = jar;
+        result.entries = entries.size();
+
+        Path directory = jar.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        FileChannel previous = Files.isRegularFile(jar) ? reuse(jar, entries, result) : null;
+
+        Path temp = AtomicFileWriter.createTemp(jar.toAbsolutePath());
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(entries, previous, out, result);
+                result.size = out.size();
+            } finally {
+                if (previous != null) {
+                    previous.close();
+                }
+            }
+
+            try {
+                Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Writes the jar of a Netbeans project where its build would, see {@link NetbeansJarLayout}.
+     */
+    @NotNull
+    public Result packProject(@NotNull Path projectDirectory, @NotNull List<Path> roots) throws IOException {
+        NetbeansJarLayout layout = NetbeansJarLayout.of(projectDirectory, NetbeansPropertyEvaluator.load(projectDirectory));
+        List<String> classPath = copyLibraries(layout.getLibraries(), layout.getLibraryDirectory());
+        return pack(roots, layout.newManifest(classPath), layout.getJar());
+    }
+
+    /**
+     * Copies the jars a packaged module needs next to it, as the Netbeans build does in dist/lib. A jar is copied
+     * again only when its size or time changed. Returns the names to list in the Class-Path of the manifest.
+     */
+    @NotNull
+    public static List<String> copyLibraries(@NotNull List<Path> jars, @NotNull Path libraryDirectory) throws IOException {
+        List<String> classPath = new ArrayList<>();
+        for (Path jar : jars) {
+            if (!Files.isRegularFile(jar)) {
+                continue;
+            }
+
+            Path target = libraryDirectory.resolve(jar.getFileName().toString());
+            if (!Files.isRegularFile(target) || Files.size(target) != Files.size(jar)
+                    || !Files.getLastModifiedTime(target).equals(Files.getLastModifiedTime(jar))) {
+                Files.createDirectories(libraryDirectory);
+                Files.copy(jar, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            classPath.add(libraryDirectory.getFileName() + "/" + jar.getFileName());
+        }
+        return classPath;
+    }
+
+    @NotNull
+    private static List<Entry> collect(@NotNull List<Path> roots, @NotNull Manifest manifest) throws IOException {
+        Map<String, Entry> files = new TreeMap<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    if (!dir.equals(root)) {
+                        add(dir, attributes, toName(root, dir) + "/");
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    add(file, attributes, toName(root, file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void add(Path file, BasicFileAttributes attributes, String name) {
+                    if (files.containsKey(name) || name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || name.equalsIgnoreCase("META-INF/")) {
+                        return;
+                    }
+
+                    Entry entry = new Entry(name);
+                    entry.file = file;
+                    entry.size = attributes.isDirectory() ? 0 : attributes.size();
+                    entry.modified = attributes.lastModifiedTime().toMillis();
+                    entry.dosTime = toDosTime(entry.modified);
+                    files.put(name, entry);
+                }
+            });
+        }
+
+        ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+        manifest.write(manifestContent);
+
+        Entry metaInf = new Entry("META-INF/");
+        metaInf.dosTime = toDosTime(0);
+        Entry manifestEntry = new Entry(JarFile.MANIFEST_NAME);
+        manifestEntry.content = manifestContent.toByteArray();
+        manifestEntry.size = manifestEntry.content.length;
+        manifestEntry.dosTime = toDosTime(0);
+
+        List<Entry> entries = new ArrayList<>(files.size() + 2);
+        entries.add(metaInf);
+        entries.add(manifestEntry);
+        entries.addAll(files.values());
+        return entries;
+    }
+
+    @NotNull
+    private static String toName(@NotNull Path root, @NotNull Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Marks the entries that can be copied from the previous jar, and returns the channel to copy them from.
+     * A previous jar that cannot be read is ignored.
+     */
+    private static FileChannel reuse(@NotNull Path jar, @NotNull List<Entry> entries, @NotNull Result result) throws IOException {
+        long jarModified = Files.getLastModifiedTime(jar).toMillis();
+        Map<String, Entry> byName = new HashMap<>();
+        for (Entry entry : entries) {
+            byName.put(entry.name, entry);
+        }
+
+        CRC32 crc = new CRC32();
+        try {
+            ZipCentralDirectory.read(jar).forEachHeader((name, method, entryCrc, compressedSize, size, dosTime, localHeaderOffset) -> {
+                Entry entry = byName.get(name);
+                if (entry == null || (method != STORED && method != DEFLATED) || size != entry.size || dosTime != entry.dosTime) {
+                    return;
+                }
+
+                if (entry.content != null) {
+                    crc.reset();
+                    crc.update(entry.content);
+                    if (crc.getValue() != entryCrc) {
+                        return;
+                    }
+                } else if (entry.modified > jarModified) {
+                    return;
+                }
+
+                entry.method = method;
+                entry.crc = entryCrc;
+                entry.compressedSize = compressedSize;
+                entry.previousOffset = localHeaderOffset;
+            });
+        } catch (IOException e) {
+            for (Entry entry : entries) {
+                entry.previousOffset = -1;
+            }
+            return null;
+        }
+
+        FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ);
+        try {
+            for (Entry entry : entries) {
+                if (entry.previousOffset >= 0) {
+                    entry.previousOffset = ZipCentralDirectory.getDataOffset(channel, entry.previousOffset);
+                    result.reused++;
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            for (Entry entry : entries) {
+                entry.previousOffset = -1;
+            }
+            result.reused = 0;
+            return null;
+        }
+        return channel;
+    }
+
+    private static void write(@NotNull List<Entry> entries, FileChannel previous, @NotNull FileChannel out,
+                              @NotNull Result result) throws IOException {
+        long[] offsets = new long[entries.size()];
+        List<Entry> batch = new ArrayList<>();
+        long batchBytes = 0;
+        int batchStart = 0;
+
+        for (int i = 0; i <= entries.size(); i++) {
+            Entry entry = i < entries.size() ? entries.get(i) : null;
+            boolean changed = entry != null && entry.previousOffset < 0;
+
+            if (changed) {
+                batch.add(entry);
+                batchBytes += entry.size;
+                if (batch.size() < BATCH_ENTRIES && batchBytes < BATCH_BYTES) {
+                    continue;
+                }
+            }
+
+            // the batch of changed entries before this one is compressed in parallel, then written in order
+            if (!batch.isEmpty()) {
+                compress(batch);
+                result.compressed += batch.size();
+                for (int j = batchStart; j < batchStart + batch.size(); j++) {
+                    offsets[j] = out.position();
+                    writeEntry(entries.get(j), previous, out);
+                    entries.get(j).data = null;
+                }
+                batchStart += batch.size();
+                batch.clear();
+                batchBytes = 0;
+                if (changed) {
+                    continue;
+                }
+            }
+
+            if (entry != null) {
+                offsets[i] = out.position();
+                writeEntry(entry, previous, out);
+                batchStart = i + 1;
+            }
+        }
+
+        long directoryOffset = out.position();
+        for (int i = 0; i < entries.size(); i++) {
+            writeDirectoryEntry(entries.get(i), offsets[i], out);
+        }
+        long directorySize = out.position() - directoryOffset;
+        if (out.position() > MAX_SIZE) {
+            throw new IOException("Jar too large: " + out.position() + " bytes");
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                .putShort((short) entries.size()).putShort((short) entries.size())
+                .putInt((int) directorySize).putInt((int) directoryOffset).putShort((short) 0);
+        end.flip();
+        writeFully(out, end);
+    }
+
+    private static void compress(@NotNull List<Entry> batch) throws IOException {
+        try {
+            batch.parallelStream().forEach(entry -> {
+                try {
+                    compress(entry);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void compress(@NotNull Entry entry) throws IOException {
+        if (entry.isDirectory()) {
+            entry.method = STORED;
+            entry.data = new byte[0];
+            return;
+        }
+
+        byte[] content = entry.content != null ? entry.content : Files.readAllBytes(entry.file);
+        if (content.length != entry.size) {
+            throw new IOException("File changed while packaging: " + entry.file);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.crc = crc.getValue();
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            // content that does not compress is stored, as the jar tool does
+            if (compressed.size() < content.length) {
+                entry.method = DEFLATED;
+                entry.data = compressed.toByteArray();
+            } else {
+                entry.method = STORED;
+                entry.data = content;
+            }
+        } finally {
+            deflater.end();
+        }
+        entry.compressedSize = entry.data.length;
+    }
+
+    private static void writeEntry(@NotNull Entry entry, FileChannel previous, @NotNull FileChannel out) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_SIGNATURE).putShort((short) VERSION).putShort((short) UTF8_FLAG).putShort((short) entry.method)
+                .putInt(entry.dosTime).putInt((int) entry.crc).putInt((int) entry.compressedSize).putInt((int) entry.size)
+                .putShort((short) name.length).putShort((short) 0).put(name);
+        header.flip();
+        writeFully(out, header);
+
+        if (entry.data != null) {
+            writeFully(out, ByteBuffer.wrap(entry.data));
+        } else {
+            long copied = 0;
+            while (copied < entry.compressedSize) {
+                long transferred = previous.transferTo(entry.previousOffset + copied, entry.compressedSize - copied, out);
+                if (transferred <= 0) {
+                    throw new IOException("Truncated entry " + entry.name + " in the previous jar");
+                }
+                copied += transferred;
+            }
+        }
+    }
+
+    private static void writeDirectoryEntry(@NotNull Entry entry, long offset, @NotNull FileChannel out) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ENTRY_SIGNATURE).putShort((short) VERSION).putShort((short) VERSION).putShort((short) UTF8_FLAG)
+                .putShort((short) entry.method).putInt(entry.dosTime).putInt((int) entry.crc)
+                .putInt((int) entry.compressedSize).putInt((int) entry.size)
+                .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(entry.isDirectory() ? 0x10 : 0).putInt((int) offset)
+                .put(name);
+        header.flip();
+        writeFully(out, header);
+    }
+
+    private static void writeFully(@NotNull FileChannel out, @NotNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Date and time in the MS-DOS format of zip headers, in the local time zone with a two seconds resolution.
+     */
+    private static int toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+}
@@ -0,0 +1,127 @@
+package converter;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.compiler.CompilationStatusListener;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import listener.NetbeansFileDispatcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packages the jar of each converted module after a successful build, as the jar target of the Netbeans build does,
+ * when {@link ConverterSettings#packageJars} is on and {@link ConverterSettings#jarArtifacts} is off, the jar
+ * artifacts of the modules being built by the IDE otherwise.
+ *
+ * Only the modules of the build scope are packaged, in background, and {@link JarPackager} copies the entries that
+ * did not change from the previous jar instead of compressing the whole output again.
+ */
+public class JarPackagingService implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.JarPackagingService");
+
+    @NotNull
+    private final Project project;
+
+    private final JarPackager packager = new JarPackager();
+    private final Map<String, Object> moduleLocks = new ConcurrentHashMap<>();
+
+    public JarPackagingService(@NotNull Project project) {
+        this.project = project;
+
+        project.getMessageBus().connect(this).subscribe(CompilerTopics.COMPILATION_STATUS, new CompilationStatusListener() {
+            @Override
+            public void compilationFinished(boolean aborted, int errors, int warnings, CompileContext compileContext) {
+                if (!aborted && errors == 0) {
+                    JarPackagingService.this.compilationFinished(compileContext.getCompileScope().getAffectedModules());
+                }
+            }
+
+            @Override
+            public void fileGenerated(String outputRoot, String relativePath) {
+            }
+        });
+    }
+
+    public static JarPackagingService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, JarPackagingService.class);
+    }
+
+    @Override
+    public void dispose() {
+        moduleLocks.clear();
+    }
+
+    private void compilationFinished(@NotNull Module[] modules) {
+        ConverterSettings settings = ConverterSettings.getInstance(project);
+        if (!settings.packageJars || settings.jarArtifacts) {
+            return;
+        }
+
+        NetbeansFileDispatcher dispatcher = NetbeansFileDispatcher.getInstance(project);
+        List<Module> packaged = new ArrayList<>();
+        for (Module module : modules) {
+            if (!module.isDisposed() && dispatcher.isRegistered(module)) {
+                packaged.add(module);
+            }
+        }
+
+        if (!packaged.isEmpty()) {
+            new Task.Backgroundable(project, "Packaging Netbeans jars", true) {
+                @Override
+                public void run(@NotNull ProgressIndicator indicator) {
+                    for (int i = 0; i < packaged.size(); i++) {
+                        indicator.checkCanceled();
+                        indicator.setFraction((double) i / packaged.size());
+                        indicator.setText2(packaged.get(i).getName());
+                        pack(packaged.get(i));
+                    }
+                }
+            }.queue();
+        }
+    }
+
+    private void pack(@NotNull Module module) {
+        if (module.isDisposed()) {
+            return;
+        }
+
+        CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+        String outputUrl = extension != null ? extension.getCompilerOutputUrl() : null;
+        if (outputUrl == null) {
+            return;
+        }
+
+        Path projectDirectory = Paths.get(module.getModuleFilePath()).getParent();
+        List<Path> roots = Collections.singletonList(Paths.get(VfsUtilCore.urlToPath(outputUrl)));
+
+        synchronized (moduleLocks.computeIfAbsent(module.getName(), m -> new Object())) {
+            try {
+                JarPackager.Result result = packager.packProject(projectDirectory, roots);
+                logger.info("Packaged " + module.getName() + ": " + result);
+
+                File dist = result.getJar().toAbsolutePath().getParent().toFile();
+                LocalFileSystem.getInstance().refreshIoFiles(Collections.singletonList(dist), true, true, null);
+            } catch (IOException e) {
+                logger.warn("Cannot package " + module.getName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
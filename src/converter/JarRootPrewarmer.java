@@ -0,0 +1,193 @@
+package converter;
+
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the jars a conversion is about to reference into the virtual file system before the module file or the
+ * project library holding them is committed, so the roots change once over jars the IDE already knows.
+ *
+ * Otherwise the IDE finds each new jar://...!/ root on its own after the roots changed, one jar at a time, each
+ * with its own refresh and indexing round. The jars requested within {@link #BATCH_DELAY_MILLIS}, by one conversion
+ * or by all the conversions of a bulk import, are refreshed in one asynchronous refresh, then their jar roots are
+ * opened in background. Jars already loaded are not requested again.
+ */
+public class JarRootPrewarmer implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.JarRootPrewarmer");
+
+    private static final long BATCH_DELAY_MILLIS = 100;
+    private static final long MAX_WAIT_MILLIS = 30000;
+    private static final long POLL_MILLIS = 100;
+
+    @NotNull
+    private final Project project;
+
+    // absolute paths of the jars whose root is loaded
+    private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+    private final Object lock = new Object();
+    private Set<File> pending = new LinkedHashSet<>();
+    private CompletableFuture<Void> batch;
+
+    public JarRootPrewarmer(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static JarRootPrewarmer getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, JarRootPrewarmer.class);
+    }
+
+    /**
+     * Adds the jars not loaded yet to the next batch. The future completes once the batch is over, at once when
+     * every jar is already loaded. Directories and missing files are left to the IDE.
+     */
+    @NotNull
+    public CompletableFuture<Void> prewarm(@NotNull Collection<Path> jars) {
+        List<File> files = new ArrayList<>();
+        for (Path jar : jars) {
+            Path path = jar.toAbsolutePath().normalize();
+            if (!loaded.contains(path.toString()) && Files.isRegularFile(path)) {
+                files.add(path.toFile());
+            }
+        }
+        if (files.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (lock) {
+            pending.addAll(files);
+            if (batch == null) {
+                batch = new CompletableFuture<>();
+                JobScheduler.getScheduler().schedule(this::flush, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Same as {@link #prewarm(Collection)}, waiting for the batch in a cancellable way. Gives up after
+     * {@link #MAX_WAIT_MILLIS}, the IDE then loads the remaining jars itself. Never call it from the UI thread or
+     * under a read action, the refresh needs both.
+     */
+    public void prewarmAndWait(@NotNull Collection<Path> jars) {
+        CompletableFuture<Void> future = prewarm(jars);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        while (!future.isDone()) {
+            ProgressManager.checkCanceled();
+            if (System.nanoTime() > deadline) {
+                logger.warn("Jars of " + project.getName() + " still loading after " + MAX_WAIT_MILLIS + " ms, not waiting for them");
+                return;
+            }
+
+            try {
+                future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // checks the cancellation again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (lock) {
+            pending.clear();
+            if (batch != null) {
+                batch.complete(null);
+                batch = null;
+            }
+        }
+    }
+
+    private void flush() {
+        Set<File> files;
+        CompletableFuture<Void> future;
+        synchronized (lock) {
+            files = pending;
+            future = batch;
+            pending = new LinkedHashSet<>();
+            batch = null;
+        }
+        if (future == null) {
+            return;
+        }
+        if (files.isEmpty() || project.isDisposed()) {
+            future.complete(null);
+            return;
+        }
+
+        long start = System.nanoTime();
+        LocalFileSystem.getInstance().refreshIoFiles(files, true, false, () ->
+                ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                    try {
+                        int opened = openJarRoots(files);
+                        logger.info("Loaded " + opened + " of " + files.size() + " jars in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                    } finally {
+                        future.complete(null);
+                    }
+                }));
+    }
+
+    private int openJarRoots(@NotNull Set<File> files) {
+        int opened = 0;
+        for (File file : files) {
+            if (project.isDisposed()) {
+                break;
+            }
+            if (openJarRoot(file)) {
+                loaded.add(file.getPath());
+                opened++;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Opens the jar root of the file, which reads its central directory. One read action per jar, so a write
+     * action is never kept waiting for the whole batch.
+     */
+    private static boolean openJarRoot(@NotNull File file) {
+        return ApplicationManager.getApplication().runReadAction((Computable<Boolean>) () -> {
+            VirtualFile local = LocalFileSystem.getInstance().findFileByIoFile(file);
+            if (local == null || local.isDirectory()) {
+                return false;
+            }
+
+            VirtualFile root = JarFileSystem.getInstance().getJarRootForLocalFile(local);
+            if (root == null) {
+                return false;
+            }
+            root.getChildren();
+            return true;
+        });
+    }
+}
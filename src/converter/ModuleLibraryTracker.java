@@ -0,0 +1,200 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.LibraryOrderEntry;
+import com.intellij.openapi.roots.ModuleOrderEntry;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEntry;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.util.Computable;
+import com.intellij.util.Function;
+import listener.NetbeansFileDispatcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Converts a module back to Netbeans when its libraries change in the root model, whatever the change came from:
+ * the module settings, a project library, or a module file reloaded from disk.
+ *
+ * The libraries of every tracked module are remembered with the urls of its roots. A root change is handled in a
+ * background read action: only the modules whose root urls changed have their libraries read again, and only the
+ * ones whose libraries were added, removed or reordered are scheduled. No module file is read or hashed.
+ *
+ * A module file written by a conversion to Intellij is reloaded as a root change. The references the conversion
+ * wrote are recorded, see {@link #written(Module, List)}, and a change to exactly those is not converted back.
+ */
+public class ModuleLibraryTracker implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.ModuleLibraryTracker");
+
+    @NotNull
+    private final Project project;
+
+    private final Map<String, List<String>> librariesByModule = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> rootUrlsByModule = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> writtenByModule = new ConcurrentHashMap<>();
+
+    // a root change is waiting for the background update, the ones coming meanwhile are handled by it
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+
+    public ModuleLibraryTracker(@NotNull Project project) {
+        this.project = project;
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+            @Override
+            public void beforeRootsChange(ModuleRootEvent event) {
+            }
+
+            @Override
+            public void rootsChanged(ModuleRootEvent event) {
+                ModuleLibraryTracker.this.rootsChanged();
+            }
+        });
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                librariesByModule.remove(module.getName());
+                rootUrlsByModule.remove(module.getName());
+                writtenByModule.remove(module.getName());
+            }
+
+            @Override
+            public void modulesRenamed(@NotNull Project project, @NotNull List<Module> modules, @NotNull Function<Module, String> oldNameProvider) {
+                for (Module module : modules) {
+                    rename(librariesByModule, oldNameProvider.fun(module), module.getName());
+                    rename(rootUrlsByModule, oldNameProvider.fun(module), module.getName());
+                    rename(writtenByModule, oldNameProvider.fun(module), module.getName());
+                }
+            }
+        });
+    }
+
+    public static ModuleLibraryTracker getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ModuleLibraryTracker.class);
+    }
+
+    /**
+     * Remembers the current libraries of a module, later changes to them are converted back to Netbeans.
+     */
+    public void track(@NotNull Module module) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            rootUrlsByModule.put(module.getName(), getRootUrls(module));
+            librariesByModule.put(module.getName(), IntellijToNetbeansConverter.extractIntellijReferences(module));
+        });
+    }
+
+    /**
+     * Records the references of a module file a conversion is about to write, in the form of
+     * {@link IntellijToNetbeansConverter#extractIntellijReferences(Module)}. The root change reloading the file is
+     * not converted back: the Netbeans project already lists those references.
+     */
+    public void written(@NotNull Module module, @NotNull List<String> references) {
+        writtenByModule.put(module.getName(), references);
+    }
+
+    @Override
+    public void dispose() {
+        librariesByModule.clear();
+    }
+
+    /**
+     * Called on the UI thread once the root model is committed, the libraries are read in background.
+     */
+    private void rootsChanged() {
+        if (!updateQueued.compareAndSet(false, true)) {
+            return;
+        }
+
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            updateQueued.set(false);
+            if (project.isDisposed()) {
+                return;
+            }
+
+            List<Module> changed = ApplicationManager.getApplication().runReadAction((Computable<List<Module>>) this::findChangedModules);
+            for (Module module : changed) {
+                ConversionScheduler.getInstance(project).schedule(module, ConverterFactory.INTELLIJ_TO_NETBEANS);
+            }
+        });
+    }
+
+    /**
+     * Reads the libraries of the tracked modules whose root urls changed, returns the ones to convert back.
+     */
+    @NotNull
+    private List<Module> findChangedModules() {
+        List<Module> changed = new ArrayList<>();
+        if (project.isDisposed()) {
+            return changed;
+        }
+
+        NetbeansFileDispatcher dispatcher = NetbeansFileDispatcher.getInstance(project);
+        for (Module module : ModuleManager.getInstance(project).getModules()) {
+            if (module.isDisposed() || !dispatcher.isRegistered(module) || !librariesByModule.containsKey(module.getName())) {
+                continue;
+            }
+
+            List<String> rootUrls = getRootUrls(module);
+            if (rootUrls.equals(rootUrlsByModule.put(module.getName(), rootUrls))) {
+                continue;
+            }
+
+            List<String> libraries = IntellijToNetbeansConverter.extractIntellijReferences(module);
+            List<String> previous = librariesByModule.put(module.getName(), libraries);
+            List<String> written = writtenByModule.remove(module.getName());
+            if (libraries.equals(previous)) {
+                continue;
+            }
+            if (libraries.equals(written)) {
+                logger.debug("Libraries of " + module.getName() + " were written by a conversion to Intellij");
+                continue;
+            }
+
+            logger.info("Libraries of " + module.getName() + " changed: " + DependencySet.of(previous).diff(DependencySet.of(libraries)));
+            changed.add(module);
+        }
+        return changed;
+    }
+
+    /**
+     * The classes urls of the libraries and the modules the module depends on, as the root model lists them. Cheap
+     * to read, it tells whether the libraries of the module can have changed.
+     */
+    @NotNull
+    private static List<String> getRootUrls(@NotNull Module module) {
+        List<String> urls = new ArrayList<>();
+        for (OrderEntry entry : ModuleRootManager.getInstance(module).getOrderEntries()) {
+            if (entry instanceof LibraryOrderEntry) {
+                Collections.addAll(urls, ((LibraryOrderEntry) entry).getRootUrls(OrderRootType.CLASSES));
+            } else if (entry instanceof ModuleOrderEntry && ((ModuleOrderEntry) entry).getModule() != null) {
+                urls.add(((ModuleOrderEntry) entry).getModule().getModuleFilePath());
+            }
+        }
+        return urls;
+    }
+
+    private static void rename(@NotNull Map<String, List<String>> byModule, @NotNull String oldName, @NotNull String newName) {
+        List<String> value = byModule.remove(oldName);
+        if (value != null) {
+            byModule.put(newName, value);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * What the converters know about a module, read once from its Netbeans and Intellij files: the classpath, main
+ * class, JVM arguments, source directories and references of the Netbeans project, and the libraries of the module
+ * file, with the fingerprints of the files they were read from.
+ *
+ * A model never changes, {@link ModuleModelCache} builds a new one when a file changed, reading again only the
+ * side that changed. Either side is null when its main file does not exist.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public final class ModuleModel {
+    public static final class NetbeansSide {
+        private final FileFingerprint propertiesFingerprint;
+        private final FileFingerprint privatePropertiesFingerprint;
+        private final FileFingerprint projectXmlFingerprint;
+        private final byte[] propertiesContent;
+        private final byte[] privatePropertiesContent;
+        private final Properties properties;
+        private final Properties privateProperties;
+        private final List<String> classpath;
+        private final List<ProjectReferenceGraph.ProjectReference> references;
+        private final String mainClass;
+        private final String jvmArgs;
+        private final String sourceDirectory;
+        private final String testSourceDirectory;
+
+        NetbeansSide(@NotNull FileFingerprint propertiesFingerprint, @Nullable FileFingerprint privatePropertiesFingerprint,
+                     @Nullable FileFingerprint projectXmlFingerprint, @NotNull byte[] propertiesContent, @Nullable byte[] privatePropertiesContent,
+                     @NotNull Properties properties, @Nullable Properties privateProperties,
+                     @NotNull List<ProjectReferenceGraph.ProjectReference> references) {
+            this.propertiesFingerprint = propertiesFingerprint;
+            this.privatePropertiesFingerprint = privatePropertiesFingerprint;
+            this.projectXmlFingerprint = projectXmlFingerprint;
+            this.propertiesContent = propertiesContent;
+            this.privatePropertiesContent = privatePropertiesContent;
+            this.properties = properties;
+            this.privateProperties = privateProperties;
+            this.references = Collections.unmodifiableList(references);
+
+            NetbeansPropertyEvaluator evaluator = newEvaluator();
+            this.classpath = Collections.unmodifiableList(NetbeansClasspath.extractLibraries(evaluator));
+            this.mainClass = trimToNull(evaluator.getProperty("main.class"));
+            this.jvmArgs = evaluator.getProperty("run.jvmargs");
+            this.sourceDirectory = evaluator.getProperty("src.dir");
+            this.testSourceDirectory = evaluator.getProperty("test.src.dir");
+        }
+
+        private NetbeansSide(@NotNull NetbeansSide side, @NotNull FileFingerprint propertiesFingerprint,
+                             @Nullable FileFingerprint privatePropertiesFingerprint, @Nullable FileFingerprint projectXmlFingerprint) {
+            this.propertiesFingerprint = propertiesFingerprint;
+            this.privatePropertiesFingerprint = privatePropertiesFingerprint;
+            this.projectXmlFingerprint = projectXmlFingerprint;
+            this.propertiesContent = side.propertiesContent;
+            this.privatePropertiesContent = side.privatePropertiesContent;
+            this.properties = side.properties;
+            this.privateProperties = side.privateProperties;
+            this.references = side.references;
+            this.classpath = side.classpath;
+            this.mainClass = side.mainClass;
+            this.jvmArgs = side.jvmArgs;
+            this.sourceDirectory = side.sourceDirectory;
+            this.testSourceDirectory = side.testSourceDirectory;
+        }
+
+        /**
+         * The same content, read from files whose metadata moved.
+         */
+        @NotNull
+        NetbeansSide withFingerprints(@NotNull FileFingerprint propertiesFingerprint, @Nullable FileFingerprint privatePropertiesFingerprint,
+                                      @Nullable FileFingerprint projectXmlFingerprint) {
+            return new NetbeansSide(this, propertiesFingerprint, privatePropertiesFingerprint, projectXmlFingerprint);
+        }
+
+        @NotNull
+        public FileFingerprint getPropertiesFingerprint() {
+            return propertiesFingerprint;
+        }
+
+        @Nullable
+        public FileFingerprint getPrivatePropertiesFingerprint() {
+            return privatePropertiesFingerprint;
+        }
+
+        @Nullable
+        public FileFingerprint getProjectXmlFingerprint() {
+            return projectXmlFingerprint;
+        }
+
+        /**
+         * A copy of nbproject/project.properties, free to modify.
+         */
+        @NotNull
+        public Properties getProperties() {
+            return copy(properties);
+        }
+
+        /**
+         * A copy of nbproject/project.properties as it was read.
+         */
+        @NotNull
+        public byte[] getPropertiesContent() {
+            return propertiesContent.clone();
+        }
+
+        /**
+         * A new document of nbproject/project.properties as it was read, to patch its lines.
+         */
+        @NotNull
+        public PropertiesDocument newPropertiesDocument() {
+            return PropertiesDocument.parse(propertiesContent);
+        }
+
+        /**
+         * A copy of nbproject/private/private.properties as it was read, null when the file does not exist.
+         */
+        @Nullable
+        public byte[] getPrivatePropertiesContent() {
+            return privatePropertiesContent != null ? privatePropertiesContent.clone() : null;
+        }
+
+        /**
+         * A new document of nbproject/private/private.properties as it was read, empty when the file does not exist.
+         */
+        @NotNull
+        public PropertiesDocument newPrivatePropertiesDocument() {
+            return PropertiesDocument.parse(privatePropertiesContent != null ? privatePropertiesContent : new byte[0]);
+        }
+
+        /**
+         * A copy of nbproject/private/private.properties, null when the file does not exist.
+         */
+        @Nullable
+        public Properties getPrivateProperties() {
+            return privateProperties != null ? copy(privateProperties) : null;
+        }
+
+        /**
+         * A new evaluator of the properties, evaluators are not thread safe.
+         */
+        @NotNull
+        public NetbeansPropertyEvaluator newEvaluator() {
+            return NetbeansPropertyEvaluator.of(properties, privateProperties);
+        }
+
+        /**
+         * The jars of javac.classpath, see {@link NetbeansClasspath#extractLibraries(NetbeansPropertyEvaluator)}.
+         */
+        @NotNull
+        public List<String> getClasspath() {
+            return classpath;
+        }
+
+        @NotNull
+        public List<ProjectReferenceGraph.ProjectReference> getReferences() {
+            return references;
+        }
+
+        @Nullable
+        public String getMainClass() {
+            return mainClass;
+        }
+
+        @Nullable
+        public String getJvmArgs() {
+            return jvmArgs;
+        }
+
+        @Nullable
+        public String getSourceDirectory() {
+            return sourceDirectory;
+        }
+
+        @Nullable
+        public String getTestSourceDirectory() {
+            return testSourceDirectory;
+        }
+    }
+
+    public static final class IntellijSide {
+        private final FileFingerprint moduleFileFingerprint;
+        private final byte[] content;
+        private final DependencySet libraries;
+
+        IntellijSide(@NotNull FileFingerprint moduleFileFingerprint, @NotNull byte[] content, @NotNull DependencySet libraries) {
+            this.moduleFileFingerprint = moduleFileFingerprint;
+            this.content = content;
+            this.libraries = libraries;
+        }
+
+        @NotNull
+        IntellijSide withFingerprint(@NotNull FileFingerprint moduleFileFingerprint) {
+            return new IntellijSide(moduleFileFingerprint, content, libraries);
+        }
+
+        @NotNull
+        public FileFingerprint getModuleFileFingerprint() {
+            return moduleFileFingerprint;
+        }
+
+        /**
+         * A copy of the module file.
+         */
+        @NotNull
+        public byte[] getContent() {
+            return content.clone();
+        }
+
+        /**
+         * The library entries of the module file, see {@link ImlRewriter#readLibraries(byte[])}.
+         */
+        @NotNull
+        public DependencySet getLibraries() {
+            return libraries;
+        }
+    }
+
+    private final Path directory;
+    private final Path moduleFile;
+    private final NetbeansSide netbeans;
+    private final IntellijSide intellij;
+
+    ModuleModel(@NotNull Path directory, @NotNull Path moduleFile, @Nullable NetbeansSide netbeans, @Nullable IntellijSide intellij) {
+        this.directory = directory;
+        this.moduleFile = moduleFile;
+        this.netbeans = netbeans;
+        this.intellij = intellij;
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @NotNull
+    public Path getModuleFile() {
+        return moduleFile;
+    }
+
+    /**
+     * The Netbeans project, null when it has no nbproject/project.properties.
+     */
+    @Nullable
+    public NetbeansSide getNetbeans() {
+        return netbeans;
+    }
+
+    /**
+     * The module file, null when it does not exist.
+     */
+    @Nullable
+    public IntellijSide getIntellij() {
+        return intellij;
+    }
+
+    @NotNull
+    private static Properties copy(@NotNull Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    @Nullable
+    private static String trimToNull(@Nullable String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
@@ -0,0 +1,283 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last {@link ModuleModel} of each module, kept until its files change.
+ *
+ * Getting a model checks the fingerprints of the files it was read from, which only reads a file when its size or
+ * modification time moved. When a file of one side changed, only that side is read and parsed again.
+ *
+ * It also remembers the content of the files of each module when a conversion last left both sides in sync, so a
+ * conversion started by the echo of another one does not overwrite an edit waiting for its own conversion, see
+ * {@link #isBehind(ModuleModel, String)}. The write step of a conversion runs through
+ * {@link #write(ModuleModel, Write)}, one at a time per module, so the two directions of a module never write over
+ * each other while reading and converting in parallel.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ModuleModelCache {
+    private final ImlRewriter imlRewriter = new ImlRewriter();
+    private final Map<Path, ModuleModel> models = new ConcurrentHashMap<>();
+    private final Map<Path, Sync> synced = new ConcurrentHashMap<>();
+    private final Map<Path, Object> writeLocks = new ConcurrentHashMap<>();
+
+    /**
+     * The write step of a conversion: writing its target and recording the module as converted.
+     */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    private static final class Sync {
+        private final FileFingerprint properties;
+        private final FileFingerprint privateProperties;
+        private final FileFingerprint projectXml;
+        private final FileFingerprint moduleFile;
+
+        Sync(@NotNull FileFingerprint properties, @Nullable FileFingerprint privateProperties, @Nullable FileFingerprint projectXml,
+             @NotNull FileFingerprint moduleFile) {
+            this.properties = properties;
+            this.privateProperties = privateProperties;
+            this.projectXml = projectXml;
+            this.moduleFile = moduleFile;
+        }
+    }
+
+    /**
+     * Returns the model of the module, the cached one when none of its files changed.
+     */
+    @NotNull
+    public ModuleModel get(@NotNull Path projectDirectory, @NotNull Path moduleFile) throws IOException, XMLStreamException {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+        ModuleModel previous = models.get(directory);
+        if (previous != null && !previous.getModuleFile().equals(moduleFile)) {
+            previous = null;
+        }
+
+        ModuleModel.NetbeansSide netbeans = readNetbeans(directory, previous != null ? previous.getNetbeans() : null);
+        ModuleModel.IntellijSide intellij = readIntellij(moduleFile, previous != null ? previous.getIntellij() : null);
+        if (previous != null && previous.getNetbeans() == netbeans && previous.getIntellij() == intellij) {
+            return previous;
+        }
+
+        ModuleModel model = new ModuleModel(directory, moduleFile, netbeans, intellij);
+        models.put(directory, model);
+        return model;
+    }
+
+    /**
+     * True when converting the model in the given direction would overwrite an edit not converted yet: the target
+     * file changed since the module was last in sync and the source files did not. The edit scheduled its own
+     * conversion, in the other direction. False when both sides changed, the conversion running first wins.
+     */
+    public boolean isBehind(@NotNull ModuleModel model, @NotNull String type) {
+        Sync sync = synced.get(model.getDirectory());
+        ModuleModel.NetbeansSide netbeans = model.getNetbeans();
+        ModuleModel.IntellijSide intellij = model.getIntellij();
+        if (sync == null || netbeans == null || intellij == null) {
+            return false;
+        }
+
+        boolean propertiesChanged = !netbeans.getPropertiesFingerprint().sameContent(sync.properties);
+        boolean netbeansChanged = propertiesChanged
+                || !sameContent(netbeans.getPrivatePropertiesFingerprint(), sync.privateProperties)
+                || !sameContent(netbeans.getProjectXmlFingerprint(), sync.projectXml);
+        boolean moduleFileChanged = !intellij.getModuleFileFingerprint().sameContent(sync.moduleFile);
+
+        return ConversionDirection.INTELLIJ_TO_NETBEANS.equals(type)
+                ? propertiesChanged && !moduleFileChanged
+                : moduleFileChanged && !netbeansChanged;
+    }
+
+    /**
+     * Runs the write step of a conversion of the model, unless a file of the module changed since the model was
+     * read: an edit or a conversion in the other direction got there first, and the conversion has to run again on
+     * the new model. Returns false then, without running it. The write steps of a module run one at a time.
+     */
+    public boolean write(@NotNull ModuleModel model, @NotNull Write write) throws IOException, XMLStreamException {
+        synchronized (writeLocks.computeIfAbsent(model.getDirectory(), directory -> new Object())) {
+            if (!isCurrent(model)) {
+                return false;
+            }
+            write.run();
+            return true;
+        }
+    }
+
+    /**
+     * Remembers the module as in sync after a conversion of the model in the given direction, which wrote the
+     * content to its target, or found the target up to date when the content is null.
+     */
+    public void converted(@NotNull ModuleModel model, @NotNull String type, @Nullable byte[] written) {
+        converted(model, type, written, null);
+    }
+
+    /**
+     * Same as {@link #converted(ModuleModel, String, byte[])}, the conversion to Netbeans having written the private
+     * properties too when their content is not null.
+     */
+    public void converted(@NotNull ModuleModel model, @NotNull String type, @Nullable byte[] written, @Nullable byte[] writtenPrivate) {
+        ModuleModel.NetbeansSide netbeans = model.getNetbeans();
+        ModuleModel.IntellijSide intellij = model.getIntellij();
+        if (netbeans == null || intellij == null) {
+            synced.remove(model.getDirectory());
+            return;
+        }
+
+        boolean toNetbeans = ConversionDirection.INTELLIJ_TO_NETBEANS.equals(type);
+        FileFingerprint properties = toNetbeans && written != null ? FileFingerprint.ofContent(written) : netbeans.getPropertiesFingerprint();
+        FileFingerprint moduleFile = !toNetbeans && written != null ? FileFingerprint.ofContent(written) : intellij.getModuleFileFingerprint();
+        FileFingerprint privateProperties = toNetbeans && writtenPrivate != null
+                ? FileFingerprint.ofContent(writtenPrivate) : netbeans.getPrivatePropertiesFingerprint();
+        Sync sync = new Sync(properties, privateProperties, netbeans.getProjectXmlFingerprint(), moduleFile);
+        synced.put(model.getDirectory(), sync);
+        // a conversion ending after its module was removed leaves nothing behind, remove() drops the model first
+        if (!models.containsKey(model.getDirectory())) {
+            synced.remove(model.getDirectory(), sync);
+        }
+    }
+
+    public void remove(@NotNull Path projectDirectory) {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+        models.remove(directory);
+        synced.remove(directory);
+        writeLocks.remove(directory);
+    }
+
+    public void clear() {
+        models.clear();
+        synced.clear();
+        writeLocks.clear();
+    }
+
+    public int size() {
+        return models.size();
+    }
+
+    @Nullable
+    private static ModuleModel.NetbeansSide readNetbeans(@NotNull Path directory, @Nullable ModuleModel.NetbeansSide previous)
+            throws IOException, XMLStreamException {
+        FileFingerprint properties = fingerprint(directory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH),
+                previous != null ? previous.getPropertiesFingerprint() : null);
+        if (properties == null) {
+            return null;
+        }
+
+        FileFingerprint privateProperties = fingerprint(directory.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH),
+                previous != null ? previous.getPrivatePropertiesFingerprint() : null);
+        FileFingerprint projectXml = fingerprint(directory.resolve(ProjectReferenceGraph.PROJECT_XML_PATH),
+                previous != null ? previous.getProjectXmlFingerprint() : null);
+
+        if (previous != null && properties.sameContent(previous.getPropertiesFingerprint())
+                && sameContent(privateProperties, previous.getPrivatePropertiesFingerprint())
+                && sameContent(projectXml, previous.getProjectXmlFingerprint())) {
+            if (properties == previous.getPropertiesFingerprint() && privateProperties == previous.getPrivatePropertiesFingerprint()
+                    && projectXml == previous.getProjectXmlFingerprint()) {
+                return previous;
+            }
+            return previous.withFingerprints(properties, privateProperties, projectXml);
+        }
+
+        byte[] content = read(directory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH));
+        if (content == null) {
+            return null;
+        }
+        properties = properties.withContent(content);
+
+        byte[] privateContent = privateProperties != null ? read(directory.resolve(NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH)) : null;
+        privateProperties = privateContent != null ? privateProperties.withContent(privateContent) : null;
+
+        Properties projectProperties = load(content);
+        Properties privateProjectProperties = privateContent != null ? load(privateContent) : null;
+        return new ModuleModel.NetbeansSide(properties, privateProperties, projectXml, content, privateContent, projectProperties, privateProjectProperties,
+                ProjectReferenceGraph.readReferences(directory, NetbeansPropertyEvaluator.of(projectProperties, privateProjectProperties)));
+    }
+
+    @Nullable
+    private ModuleModel.IntellijSide readIntellij(@NotNull Path moduleFile, @Nullable ModuleModel.IntellijSide previous)
+            throws IOException, XMLStreamException {
+        FileFingerprint fingerprint = fingerprint(moduleFile, previous != null ? previous.getModuleFileFingerprint() : null);
+        if (fingerprint == null) {
+            return null;
+        }
+
+        if (previous != null && fingerprint.sameContent(previous.getModuleFileFingerprint())) {
+            return fingerprint == previous.getModuleFileFingerprint() ? previous : previous.withFingerprint(fingerprint);
+        }
+
+        byte[] content = read(moduleFile);
+        if (content == null) {
+            return null;
+        }
+        return new ModuleModel.IntellijSide(fingerprint.withContent(content), content, imlRewriter.readLibraries(content));
+    }
+
+    /**
+     * Content of the file, null when it was deleted since its fingerprint was taken.
+     */
+    @Nullable
+    private static byte[] read(@NotNull Path file) throws IOException {
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fingerprint of the file, null when it does not exist.
+     */
+    @Nullable
+    private static FileFingerprint fingerprint(@NotNull Path file, @Nullable FileFingerprint previous) throws IOException {
+        try {
+            return FileFingerprint.of(file, previous);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * True when the files of the module hold the content the model was read from.
+     */
+    private boolean isCurrent(@NotNull ModuleModel model) throws IOException, XMLStreamException {
+        ModuleModel current = get(model.getDirectory(), model.getModuleFile());
+        if (current == model) {
+            return true;
+        }
+
+        ModuleModel.NetbeansSide netbeans = model.getNetbeans();
+        ModuleModel.NetbeansSide currentNetbeans = current.getNetbeans();
+        ModuleModel.IntellijSide intellij = model.getIntellij();
+        ModuleModel.IntellijSide currentIntellij = current.getIntellij();
+        if (netbeans == null || currentNetbeans == null || intellij == null || currentIntellij == null) {
+            return netbeans == currentNetbeans && intellij == currentIntellij;
+        }
+        return netbeans.getPropertiesFingerprint().sameContent(currentNetbeans.getPropertiesFingerprint())
+                && sameContent(netbeans.getPrivatePropertiesFingerprint(), currentNetbeans.getPrivatePropertiesFingerprint())
+                && sameContent(netbeans.getProjectXmlFingerprint(), currentNetbeans.getProjectXmlFingerprint())
+                && intellij.getModuleFileFingerprint().sameContent(currentIntellij.getModuleFileFingerprint());
+    }
+
+    private static boolean sameContent(@Nullable FileFingerprint current, @Nullable FileFingerprint previous) {
+        return current == null ? previous == null : current.sameContent(previous);
+    }
+
+    @NotNull
+    private static Properties load(@NotNull byte[] content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(content));
+        return properties;
+    }
+}
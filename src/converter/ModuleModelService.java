@@ -0,0 +1,82 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The {@link ModuleModelCache} of a project, {@link ConverterFactory} hands the model of a module to its
+ * converters so each file is read and parsed once per change instead of once per step.
+ */
+public class ModuleModelService implements Disposable {
+    private final ModuleModelCache cache = new ModuleModelCache();
+
+    public ModuleModelService(@NotNull Project project) {
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                cache.remove(getProjectDirectory(module));
+            }
+        });
+    }
+
+    public static ModuleModelService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ModuleModelService.class);
+    }
+
+    /**
+     * The model of the module as its files are now on disk.
+     */
+    @NotNull
+    public ModuleModel getModel(@NotNull Module module) throws IOException, XMLStreamException {
+        return cache.get(getProjectDirectory(module), Paths.get(module.getModuleFilePath()));
+    }
+
+    /**
+     * See {@link ModuleModelCache#isBehind(ModuleModel, String)}.
+     */
+    public boolean isBehind(@NotNull ModuleModel model, @NotNull String type) {
+        return cache.isBehind(model, type);
+    }
+
+    /**
+     * See {@link ModuleModelCache#converted(ModuleModel, String, byte[])}.
+     */
+    public void converted(@NotNull ModuleModel model, @NotNull String type, @Nullable byte[] written) {
+        cache.converted(model, type, written);
+    }
+
+    /**
+     * See {@link ModuleModelCache#converted(ModuleModel, String, byte[], byte[])}.
+     */
+    public void converted(@NotNull ModuleModel model, @NotNull String type, @Nullable byte[] written, @Nullable byte[] writtenPrivate) {
+        cache.converted(model, type, written, writtenPrivate);
+    }
+
+    /**
+     * See {@link ModuleModelCache#write(ModuleModel, ModuleModelCache.Write)}.
+     */
+    public boolean write(@NotNull ModuleModel model, @NotNull ModuleModelCache.Write write) throws IOException, XMLStreamException {
+        return cache.write(model, write);
+    }
+
+    @Override
+    public void dispose() {
+        cache.clear();
+    }
+
+    @NotNull
+    private static Path getProjectDirectory(@NotNull Module module) {
+        return Paths.get(module.getModuleFilePath()).getParent();
+    }
+}
@@ -0,0 +1,158 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the classpath of a Netbeans project from its evaluated properties.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class NetbeansClasspath {
+    private static final String MODULE_DIR = "$MODULE_DIR$";
+    private static final String DIST_JAR = "dist.jar";
+
+    /**
+     * Resolves the jars listed in javac.classpath, in order, as they are written to the .iml file.
+     * Paths relative to the project are made relative to $MODULE_DIR$, unresolved references are skipped.
+     */
+    @NotNull
+    public static List<String> extractLibraries(@NotNull NetbeansPropertyEvaluator evaluator) {
+        List<String> moduleLibraries = new ArrayList<>();
+
+        for (String pathToJar : evaluator.getPath("javac.classpath")) {
+            if (pathToJar.contains("${")) {
+                continue;
+            }
+
+            pathToJar = pathToJar.replace('\\', '/');
+            if (!isAbsolute(pathToJar)) {
+                pathToJar = MODULE_DIR + "/" + pathToJar;
+            }
+
+            moduleLibraries.add(pathToJar);
+        }
+
+        return moduleLibraries;
+    }
+
+    /**
+     * Completes the jars returned by {@link #extractLibraries(NetbeansPropertyEvaluator)} from the jar index:
+     * sibling sources and javadoc are attached, and the jars listed in the Class-Path of a jar are added right after it.
+     * Jars missing on disk are kept as they are, they may be built later.
+     */
+    @NotNull
+    public static DependencySet resolveLibraries(@NotNull List<String> jarPaths, @NotNull Path moduleDirectory, @NotNull JarIndex jarIndex) {
+        return resolveLibraries(jarPaths, moduleDirectory, jarIndex, Collections.emptyMap());
+    }
+
+    /**
+     * Same as {@link #resolveLibraries(List, Path, JarIndex)}, a jar built by another module, given as its absolute
+     * path to the name of the module, becomes a dependency on that module instead.
+     */
+    @NotNull
+    public static DependencySet resolveLibraries(@NotNull List<String> jarPaths, @NotNull Path moduleDirectory, @NotNull JarIndex jarIndex,
+                                                 @NotNull Map<Path, String> moduleArtifacts) {
+        String moduleDir = moduleDirectory.toAbsolutePath().normalize().toString().replace('\\', '/');
+
+        List<Path> files = new ArrayList<>(jarPaths.size());
+        List<Path> jars = new ArrayList<>(jarPaths.size());
+        for (String jarPath : jarPaths) {
+            Path file = Paths.get(expand(jarPath, moduleDir));
+            files.add(file);
+            if (!moduleArtifacts.containsKey(file.toAbsolutePath().normalize())) {
+                jars.add(file);
+            }
+        }
+        jarIndex.index(jars);
+
+        List<DependencySet.Dependency> dependencies = new ArrayList<>();
+        Set<String> added = new HashSet<>();
+        for (int i = 0; i < jarPaths.size(); i++) {
+            String module = moduleArtifacts.get(files.get(i).toAbsolutePath().normalize());
+            if (module != null) {
+                if (added.add(DependencySet.MODULE_PREFIX + module)) {
+                    dependencies.add(new DependencySet.Dependency(DependencySet.MODULE_PREFIX + module, DependencySet.COMPILE));
+                }
+                continue;
+            }
+
+            JarIndex.JarInfo info = jarIndex.get(files.get(i));
+            if (!added.add(info.getPath())) {
+                continue;
+            }
+            // the files found next to a jar referenced relative to the module are referenced the same way
+            boolean relative = jarPaths.get(i).startsWith(MODULE_DIR + "/");
+            dependencies.add(new DependencySet.Dependency(jarPaths.get(i), DependencySet.COMPILE,
+                    collapse(info.getSources(), moduleDir, relative), collapse(info.getJavadoc(), moduleDir, relative)));
+
+            for (JarIndex.JarInfo entry : jarIndex.expandClassPath(files.get(i))) {
+                if (added.add(entry.getPath())) {
+                    dependencies.add(new DependencySet.Dependency(collapse(entry.getPath(), moduleDir, relative), DependencySet.COMPILE,
+                            collapse(entry.getSources(), moduleDir, relative), collapse(entry.getJavadoc(), moduleDir, relative)));
+                }
+            }
+        }
+
+        return new DependencySet(dependencies);
+    }
+
+    /**
+     * Returns the jar the build of the project produces, dist.jar or dist/&lt;directory&gt;.jar when it is not set.
+     */
+    @NotNull
+    public static Path getDistJar(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator) {
+        String distJar = evaluator.getProperty(DIST_JAR);
+        return projectDirectory.resolve(distJar != null && !distJar.contains("${")
+                ? distJar : "dist/" + projectDirectory.getFileName() + ".jar").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the file of a library path as written to the .iml file.
+     */
+    @NotNull
+    static Path toPath(@NotNull String jarPath, @NotNull Path moduleDirectory) {
+        return Paths.get(expand(jarPath, moduleDirectory.toAbsolutePath().normalize().toString().replace('\\', '/')));
+    }
+
+    @NotNull
+    private static String expand(@NotNull String path, @NotNull String moduleDir) {
+        return path.startsWith(MODULE_DIR) ? moduleDir + path.substring(MODULE_DIR.length()) : path;
+    }
+
+    /**
+     * The path as written to the .iml file: relative to $MODULE_DIR$ when it is under the module directory, or when
+     * relative is set and it is on the same file system root, absolute otherwise.
+     */
+    private static String collapse(String path, @NotNull String moduleDir, boolean relative) {
+        if (path == null) {
+            return null;
+        }
+
+        path = path.replace('\\', '/');
+        if (path.equals(moduleDir) || path.startsWith(moduleDir + "/")) {
+            return MODULE_DIR + path.substring(moduleDir.length());
+        }
+        if (relative) {
+            try {
+                return MODULE_DIR + "/" + Paths.get(moduleDir).relativize(Paths.get(path)).toString().replace('\\', '/');
+            } catch (IllegalArgumentException e) {
+                // another drive
+            }
+        }
+        return path;
+    }
+
+    private static boolean isAbsolute(@NotNull String path) {
+        return path.startsWith("/") || path.startsWith("$")
+                || (path.length() > 2 && Character.isLetter(path.charAt(0)) && path.charAt(1) == ':' && path.charAt(2) == '/');
+    }
+}
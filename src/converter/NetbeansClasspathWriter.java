@@ -0,0 +1,227 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the classpath of an Intellij module back to the properties of a Netbeans project: one file.reference.*
+ * property per jar, and javac.classpath listing them in order.
+ *
+ * {@link #patchClasspath(PropertiesDocument, List)} changes only the entries that differ, on the lines of the file,
+ * leaving every other line as it is.
+ *
+ * Given nbproject/private/private.properties, the file.reference.* properties it defines resolve the classpath, and
+ * the jars referenced by an absolute path are written to it, as Netbeans keeps the paths local to the machine out of
+ * the shared project.properties.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class NetbeansClasspathWriter {
+    private static final String FILE_REFERENCE = "file.reference.";
+    private static final String JAVAC_CLASSPATH = "javac.classpath";
+
+    /**
+     * Changes the classpath of the properties file to the references, touching only what differs. The javac.classpath
+     * items that still resolve to wanted jars are kept as written, with their file.reference.* property. The items of
+     * jars no longer wanted are dropped with their file.reference.* property, and every new jar gets a new
+     * file.reference.* property. Items that do not resolve, like a library undefined on this machine, are kept
+     * in place since the module cannot know about them. Only the entries of the file.reference.* properties added or
+     * removed and of javac.classpath are rewritten. Returns true when the document changed.
+     */
+    public static boolean patchClasspath(@NotNull PropertiesDocument document, @NotNull List<String> references) {
+        return patchClasspath(document, null, null, references);
+    }
+
+    /**
+     * Same as {@link #patchClasspath(PropertiesDocument, List)}, the classpath being resolved with the private
+     * properties too. A new jar referenced by an absolute path gets its file.reference.* property in the private
+     * document. The paths relative to the project are compared as the files they resolve to when the project
+     * directory is given. Returns true when either document changed.
+     */
+    public static boolean patchClasspath(@NotNull PropertiesDocument document, @Nullable PropertiesDocument privateDocument,
+                                         @Nullable Path projectDirectory, @NotNull List<String> references) {
+        Properties properties = document.toProperties();
+        Properties original = (Properties) properties.clone();
+        Properties privateProperties = privateDocument != null ? privateDocument.toProperties() : null;
+        Properties privateOriginal = privateProperties != null ? (Properties) privateProperties.clone() : null;
+        List<String> patched = patch(properties, privateProperties, projectDirectory, references);
+        if (patched == null) {
+            return false;
+        }
+
+        patchFileReferences(document, original, properties);
+        if (privateDocument != null) {
+            patchFileReferences(privateDocument, privateOriginal, privateProperties);
+        }
+        document.setPath(JAVAC_CLASSPATH, patched);
+        return document.isModified() || (privateDocument != null && privateDocument.isModified());
+    }
+
+    private static void patchFileReferences(@NotNull PropertiesDocument document, @NotNull Properties original, @NotNull Properties properties) {
+        for (String name : original.stringPropertyNames()) {
+            if (name.startsWith(FILE_REFERENCE) && !properties.containsKey(name)) {
+                document.removeProperty(name);
+            }
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(FILE_REFERENCE) && !properties.getProperty(name).equals(original.getProperty(name))) {
+                document.setProperty(name, properties.getProperty(name));
+            }
+        }
+    }
+
+    /**
+     * Patches the file.reference.* properties and returns the new javac.classpath items, null when the classpath
+     * did not change.
+     */
+    @Nullable
+    private static List<String> patch(@NotNull Properties properties, @Nullable Properties privateProperties,
+                                      @Nullable Path projectDirectory, @NotNull List<String> references) {
+        NetbeansPropertyEvaluator evaluator = NetbeansPropertyEvaluator.of(properties, privateProperties);
+        List<String> items = NetbeansPropertyEvaluator.splitPath(properties.getProperty(JAVAC_CLASSPATH, ""));
+
+        // file of each jar to its reference
+        Map<String, String> wanted = new LinkedHashMap<>();
+        for (String reference : references) {
+            wanted.putIfAbsent(toFile(reference, projectDirectory), normalize(reference));
+        }
+
+        // jar to the kept item holding it, unresolved items with their position
+        Map<String, String> keptItems = new HashMap<>();
+        Map<Integer, String> unresolvedItems = new TreeMap<>();
+        List<String> removedItems = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            String item = items.get(i);
+            List<String> paths = NetbeansPropertyEvaluator.splitPath(evaluator.evaluate(item));
+            boolean unresolved = paths.isEmpty();
+            boolean allWanted = true;
+            for (String path : paths) {
+                unresolved |= path.contains("${");
+                allWanted &= wanted.containsKey(toFile(path, projectDirectory)) && !keptItems.containsKey(toFile(path, projectDirectory));
+            }
+
+            if (unresolved) {
+                unresolvedItems.put(i, item);
+            } else if (allWanted) {
+                for (String path : paths) {
+                    keptItems.put(toFile(path, projectDirectory), item);
+                }
+            } else {
+                removedItems.add(item);
+            }
+        }
+
+        List<String> patched = new ArrayList<>();
+        Set<String> emitted = new HashSet<>();
+        for (Map.Entry<String, String> reference : wanted.entrySet()) {
+            String item = keptItems.get(reference.getKey());
+            if (item == null) {
+                item = "${" + addFileReference(properties, privateProperties, reference.getValue()) + "}";
+            }
+            if (emitted.add(item)) {
+                patched.add(item);
+            }
+        }
+        for (Map.Entry<Integer, String> unresolved : unresolvedItems.entrySet()) {
+            patched.add(Math.min(unresolved.getKey(), patched.size()), unresolved.getValue());
+        }
+
+        for (String item : removedItems) {
+            String name = getFileReferenceName(item);
+            if (name != null && !isReferenced(patched, name)) {
+                properties.remove(name);
+                if (privateProperties != null) {
+                    privateProperties.remove(name);
+                }
+            }
+        }
+
+        return patched.equals(items) ? null : patched;
+    }
+
+    /**
+     * Adds a file.reference.* property for the jar, named after its file name and made unique, and returns its name.
+     * The property of a jar referenced by an absolute path goes to the private properties when there are some.
+     */
+    @NotNull
+    private static String addFileReference(@NotNull Properties properties, @Nullable Properties privateProperties, @NotNull String reference) {
+        String[] split = reference.split("/");
+        String name = FILE_REFERENCE + split[split.length - 1];
+        String unique = name;
+        for (int i = 2; !isFileReference(properties, unique, reference) && !isFileReference(privateProperties, unique, reference)
+                && (properties.containsKey(unique) || (privateProperties != null && privateProperties.containsKey(unique))); i++) {
+            unique = name + "-" + i;
+        }
+
+        // the same name left in the other file would shadow the path, or be shadowed by it
+        if (privateProperties != null && isAbsolute(reference)) {
+            privateProperties.put(unique, reference);
+            properties.remove(unique);
+        } else {
+            properties.put(unique, reference);
+            if (privateProperties != null) {
+                privateProperties.remove(unique);
+            }
+        }
+        return unique;
+    }
+
+    private static boolean isFileReference(@Nullable Properties properties, @NotNull String name, @NotNull String reference) {
+        String value = properties != null ? properties.getProperty(name) : null;
+        return value != null && reference.equals(normalize(value));
+    }
+
+    private static boolean isAbsolute(@NotNull String reference) {
+        return reference.startsWith("/") || reference.matches("[A-Za-z]:/.*");
+    }
+
+    /**
+     * The file a classpath path resolves to, relative paths being resolved against the project directory when known.
+     */
+    @NotNull
+    private static String toFile(@NotNull String path, @Nullable Path projectDirectory) {
+        String normalized = normalize(path);
+        if (projectDirectory == null || isAbsolute(normalized) || normalized.contains("${")) {
+            return normalized;
+        }
+        try {
+            return projectDirectory.toAbsolutePath().resolve(normalized).normalize().toString().replace('\\', '/');
+        } catch (InvalidPathException e) {
+            return normalized;
+        }
+    }
+
+    @Nullable
+    private static String getFileReferenceName(@NotNull String item) {
+        if (item.startsWith("${" + FILE_REFERENCE) && item.endsWith("}") && item.indexOf('}') == item.length() - 1) {
+            return item.substring(2, item.length() - 1);
+        }
+        return null;
+    }
+
+    private static boolean isReferenced(@NotNull List<String> items, @NotNull String name) {
+        for (String item : items) {
+            if (item.contains("${" + name + "}")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private static String normalize(@NotNull String path) {
+        return path.trim().replace('\\', '/');
+    }
+}
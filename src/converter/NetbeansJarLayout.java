@@ -0,0 +1,181 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * What the jar target of a Netbeans build produces: dist.jar with its manifest, and the jars of javac.classpath
+ * copied to dist/lib and listed in the Class-Path of the manifest, main.class being the Main-Class.
+ *
+ * Both {@link JarPackager} and the jar artifacts of {@link JarArtifactBatcher} follow it. Two layouts are equal when
+ * they produce the same files from the same inputs, the content of manifest.file apart.
+ *
+ * This class has no dependency on the IDE.
+ */
+public final class NetbeansJarLayout {
+    /**
+     * Where the manifest of the jar artifact is generated, with the attributes the Netbeans build adds to manifest.file.
+     */
+    public static final String ARTIFACT_MANIFEST_PATH = "nbproject/private/artifact/MANIFEST.MF";
+
+    private static final String MAIN_CLASS = "main.class";
+    private static final String MANIFEST_FILE = "manifest.file";
+    private static final String CLASSPATH = "javac.classpath";
+    private static final String LIBRARY_DIRECTORY = "lib";
+
+    private final Path projectDirectory;
+    private final Path jar;
+    private final String mainClass;
+    private final Path manifestFile;
+    private final List<Path> libraries;
+
+    private NetbeansJarLayout(@NotNull Path projectDirectory, @NotNull Path jar, @Nullable String mainClass,
+                              @Nullable Path manifestFile, @NotNull List<Path> libraries) {
+        this.projectDirectory = projectDirectory;
+        this.jar = jar;
+        this.mainClass = mainClass;
+        this.manifestFile = manifestFile;
+        this.libraries = Collections.unmodifiableList(libraries);
+    }
+
+    /**
+     * The layout of the project as its properties are now. Unresolved properties are ignored, as well as the entries
+     * of javac.classpath which are not jars on disk, the Netbeans build does not copy them either.
+     */
+    @NotNull
+    public static NetbeansJarLayout of(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator) {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+
+        List<Path> libraries = new ArrayList<>();
+        for (String element : evaluator.getPath(CLASSPATH)) {
+            if (!element.contains("${")) {
+                Path library = directory.resolve(element).normalize();
+                if (Files.isRegularFile(library)) {
+                    libraries.add(library);
+                }
+            }
+        }
+
+        String mainClass = evaluator.getProperty(MAIN_CLASS);
+        if (mainClass != null && (mainClass.trim().isEmpty() || mainClass.contains("${"))) {
+            mainClass = null;
+        }
+
+        String manifest = evaluator.getProperty(MANIFEST_FILE);
+        Path manifestFile = manifest != null && !manifest.contains("${") ? directory.resolve(manifest).normalize() : null;
+        if (manifestFile != null && !Files.isRegularFile(manifestFile)) {
+            manifestFile = null;
+        }
+
+        return new NetbeansJarLayout(directory, NetbeansClasspath.getDistJar(directory, evaluator),
+                mainClass != null ? mainClass.trim() : null, manifestFile, libraries);
+    }
+
+    @NotNull
+    public Path getJar() {
+        return jar;
+    }
+
+    @NotNull
+    public Path getDistDirectory() {
+        return jar.getParent();
+    }
+
+    @NotNull
+    public Path getLibraryDirectory() {
+        return getDistDirectory().resolve(LIBRARY_DIRECTORY);
+    }
+
+    @Nullable
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    /**
+     * The jars of javac.classpath, copied to {@link #getLibraryDirectory()}.
+     */
+    @NotNull
+    public List<Path> getLibraries() {
+        return libraries;
+    }
+
+    @NotNull
+    public Path getArtifactManifest() {
+        return projectDirectory.resolve(ARTIFACT_MANIFEST_PATH);
+    }
+
+    /**
+     * The manifest of the jar: manifest.file when there is one, with the Main-Class and the Class-Path of the
+     * libraries as the Netbeans build sets them.
+     */
+    @NotNull
+    public Manifest newManifest(@NotNull List<String> classPath) throws IOException {
+        Manifest manifest = new Manifest();
+        if (manifestFile != null) {
+            try (InputStream is = Files.newInputStream(manifestFile)) {
+                manifest.read(is);
+            }
+        }
+
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            attributes.put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        if (!classPath.isEmpty()) {
+            attributes.put(Attributes.Name.CLASS_PATH, String.join(" ", classPath));
+        }
+        return manifest;
+    }
+
+    /**
+     * The content of {@link #newManifest(List)} with every library listed, to generate {@link #getArtifactManifest()}.
+     */
+    @NotNull
+    public byte[] newManifestContent() throws IOException {
+        List<String> classPath = new ArrayList<>();
+        for (Path library : libraries) {
+            classPath.add(LIBRARY_DIRECTORY + "/" + library.getFileName());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        newManifest(classPath).write(out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NetbeansJarLayout)) {
+            return false;
+        }
+
+        NetbeansJarLayout that = (NetbeansJarLayout) o;
+        return projectDirectory.equals(that.projectDirectory) && jar.equals(that.jar) && Objects.equals(mainClass, that.mainClass)
+                && Objects.equals(manifestFile, that.manifestFile) && libraries.equals(that.libraries);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(projectDirectory, jar, mainClass, manifestFile, libraries);
+    }
+
+    @Override
+    public String toString() {
+        return jar + " (" + libraries.size() + " libraries" + (mainClass != null ? ", main class " + mainClass : "") + ")";
+    }
+}
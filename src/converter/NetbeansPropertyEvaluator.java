@@ -0,0 +1,183 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Evaluates the properties of a Netbeans project the way its Ant build does.
+ *
+ * Property files are layered, the first definition of a property wins: nbproject/private/private.properties
+ * overrides nbproject/project.properties. References like ${name} are resolved recursively anywhere in a value,
+ * references to undefined properties and cyclic references are left as they are.
+ * Each property is resolved at most once per evaluator, build a new evaluator when the files change.
+ *
+ * This class has no dependency on the IDE and is not thread safe.
+ */
+public class NetbeansPropertyEvaluator {
+    public static final String PROJECT_PROPERTIES_PATH = "nbproject/project.properties";
+    public static final String PRIVATE_PROPERTIES_PATH = "nbproject/private/private.properties";
+
+    private final Map<String, String> definitions = new HashMap<>();
+    private final Map<String, String> resolved = new HashMap<>();
+    private final Set<String> resolving = new HashSet<>();
+
+    /**
+     * @param layers property files, from the highest precedence to the lowest
+     */
+    public NetbeansPropertyEvaluator(@NotNull List<Properties> layers) {
+        for (Properties layer : layers) {
+            for (String name : layer.stringPropertyNames()) {
+                definitions.putIfAbsent(name, layer.getProperty(name));
+            }
+        }
+    }
+
+    @NotNull
+    public static NetbeansPropertyEvaluator of(@NotNull Properties projectProperties, @Nullable Properties privateProperties) {
+        if (privateProperties == null) {
+            return new NetbeansPropertyEvaluator(Arrays.asList(projectProperties));
+        }
+        return new NetbeansPropertyEvaluator(Arrays.asList(privateProperties, projectProperties));
+    }
+
+    /**
+     * Loads nbproject/project.properties and, when present, nbproject/private/private.properties of a project.
+     */
+    @NotNull
+    public static NetbeansPropertyEvaluator load(@NotNull Path projectDirectory) throws IOException {
+        Properties privateProperties = null;
+        Path privatePath = projectDirectory.resolve(PRIVATE_PROPERTIES_PATH);
+        if (Files.isRegularFile(privatePath)) {
+            privateProperties = load(privatePath, new Properties());
+        }
+
+        return of(load(projectDirectory.resolve(PROJECT_PROPERTIES_PATH), new Properties()), privateProperties);
+    }
+
+    private static Properties load(@NotNull Path path, @NotNull Properties properties) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            properties.load(is);
+        }
+        return properties;
+    }
+
+    public boolean isDefined(@NotNull String name) {
+        return definitions.containsKey(name);
+    }
+
+    /**
+     * Returns the evaluated value of the property, or null when it is not defined.
+     */
+    @Nullable
+    public String getProperty(@NotNull String name) {
+        String value = resolved.get(name);
+        if (value != null) {
+            return value;
+        }
+
+        String definition = definitions.get(name);
+        if (definition == null || !resolving.add(name)) {
+            return null;
+        }
+
+        try {
+            value = evaluate(definition);
+        } finally {
+            resolving.remove(name);
+        }
+
+        resolved.put(name, value);
+        return value;
+    }
+
+    /**
+     * Replaces every ${name} reference of the text by the evaluated value of the property.
+     */
+    @NotNull
+    public String evaluate(@NotNull String text) {
+        int start = text.indexOf("${");
+        if (start < 0) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text.length() + 32);
+        int position = 0;
+        while (start >= 0) {
+            int end = text.indexOf('}', start + 2);
+            if (end < 0) {
+                break;
+            }
+
+            builder.append(text, position, start);
+            String value = getProperty(text.substring(start + 2, end));
+            if (value != null) {
+                builder.append(value);
+            } else {
+                // undefined or cyclic, kept as written
+                builder.append(text, start, end + 1);
+            }
+
+            position = end + 1;
+            start = text.indexOf("${", position);
+        }
+        builder.append(text, position, text.length());
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the evaluated value of a path-like property split into its elements, or an empty list when
+     * it is not defined. Both ':' and ';' separate elements, except the colon of a Windows drive letter.
+     */
+    @NotNull
+    public List<String> getPath(@NotNull String name) {
+        String value = getProperty(name);
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        return splitPath(value);
+    }
+
+    @NotNull
+    static List<String> splitPath(@NotNull String path) {
+        List<String> elements = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            boolean end = i == path.length();
+            char c = end ? 0 : path.charAt(i);
+            if (!end && c != ':' && c != ';') {
+                continue;
+            }
+
+            if (!end && c == ':' && isDriveLetter(path, start, i)) {
+                continue;
+            }
+
+            String element = path.substring(start, i).trim();
+            if (!element.isEmpty()) {
+                elements.add(element);
+            }
+            start = i + 1;
+        }
+        return elements;
+    }
+
+    private static boolean isDriveLetter(@NotNull String path, int start, int colon) {
+        String element = path.substring(start, colon).trim();
+        return element.length() == 1 && Character.isLetter(element.charAt(0))
+                && colon + 1 < path.length() && (path.charAt(colon + 1) == '\\' || path.charAt(colon + 1) == '/');
+    }
+}
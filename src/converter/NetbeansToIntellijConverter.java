@@ -15,47 +15,29 @@
  */
 package converter;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.module.OrderEntryNavigatable;
-import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.LibraryOrderEntry;
-import com.intellij.openapi.roots.OrderEntry;
-import com.intellij.openapi.roots.OrderEnumerator;
-import com.intellij.openapi.roots.RootProvider;
-import com.intellij.openapi.roots.impl.ModuleLibraryOrderEntryImpl;
-import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiManager;
-import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import util.AtomicFileWriter;
+import util.FileWriteUtil;
 import util.NotificationUtil;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.*;
-import java.io.*;
-import java.security.NoSuchAlgorithmException;
-import java.util.Properties;
-import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Created by trangdp on 16/05/2017.
  *
- * This class is to convert netbeans dependencies to intellij module & build ANT run file + Intellij run file
+ * This class is to convert netbeans dependencies to intellij module & build jar artifact + Intellij run file
  */
 public class NetbeansToIntellijConverter implements ProjectFileConverter {
     private final Logger logger = Logger.getInstance("com.trangdp.NetbeansToIntellijConverter");
@@ -64,292 +46,197 @@ public class NetbeansToIntellijConverter implements ProjectFileConverter {
     private Module module;
 
     @NotNull
-    private String projectFileContent;
+    private ModuleModel model;
 
     public void setModule(Module module) {
         this.module = module;
     }
 
-    public void setProjectFileContent(String projectFileContent) {
-        this.projectFileContent = projectFileContent;
+    @Override
+    public void setModel(ModuleModel model) {
+        this.model = model;
     }
 
     public void convert() {
         NotificationUtil.notify("Converting " + module.getName() + " ...");
 
-        byte[] contentWithLibraryRemoved = clearIntellijModuleLibrary();
-
-        if (contentWithLibraryRemoved != null) {
-            Properties properties = new Properties();
-            InputStream is = new ByteArrayInputStream(projectFileContent.getBytes());
-            String moduleLibraries = "<root>";
-            try {
-                properties.load(is);
-            } catch (IOException e) {
-                logger.error("Unable to load netbeans properties. Is it valid?", e);
-                return;
-            }
-
-            Set<String> propertyNames = properties.stringPropertyNames();
-            for (String name : propertyNames) {
-                if (name.equals("javac.classpath")) {
-                    String classPath = properties.getProperty(name);
-                    String[] referenceClasses = classPath.split(":");
-                    for (String reference : referenceClasses) {
-                        reference = reference.replace("${", "").replace("}", "");
-                        String pathToJar = properties.getProperty(reference);
-                        if(pathToJar != null ) {
-                            if ((pathToJar.startsWith("lib/") || pathToJar.startsWith("libs/"))) {
-                                pathToJar = "$MODULE_DIR$/" + pathToJar;
-                                NotificationUtil.notify(pathToJar);
-                            }
-
-                            moduleLibraries += extractNetbeansLibrary(pathToJar);
-                        }
-
-
-
-                    }
-                }
-            }
-
-            moduleLibraries += "</root>";
-
-            resolveIntellijLibrary(moduleLibraries, contentWithLibraryRemoved);
-
-            generateRunConfiguration(properties);
-
-            try {
-                storeChecksumIml();
-            } catch (IOException | NoSuchAlgorithmException e) {
-                logger.error("Checksum failed", e);
-            }
+        ConversionMetrics.Recording recording = ConversionMetricsService.getInstance(module.getProject()).getMetrics()
+                .start(module.getName(), ConverterFactory.NETBEANS_TO_INTELLIJ);
+        try {
+            convert(recording);
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            recording.failed();
+            throw e;
+        } finally {
+            recording.finish();
         }
 
         NotificationUtil.notify("Converted " + module.getName() + " DONE");
     }
 
-    private void generateRunConfiguration(Properties properties) {
-        Project project = module.getProject();
-        VirtualFile workspaceFile = project.getWorkspaceFile();
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = null;
-        FileOutputStream os = null;
-        String moduleXpath = "contains(@value, '"  + module.getName() + "')]";
-        String xpathMatcher = "//component[@name=\"RunManager\"]/configuration/option[@name='WORKING_DIRECTORY' and " + moduleXpath;
-
-        System.out.println(xpathMatcher);
-
-        try {
-            dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(workspaceFile.getInputStream());
-            XPathFactory xpf = XPathFactory.newInstance();
-            XPath xpath = xpf.newXPath();
-            XPathExpression expression = xpath.compile(xpathMatcher);
-            Node nl = (Node) expression.evaluate(doc, XPathConstants.NODE);
+    private void convert(ConversionMetrics.Recording recording) {
+        JarIndexService jarIndexService = JarIndexService.getInstance();
+        ConversionEngine engine = new ConversionEngine(jarIndexService.getIndex(), jarIndexService.getConflictAnalyzer());
+        engine.setProjectGraph(ProjectReferenceService.getInstance(module.getProject()).getGraph());
 
-            if(nl == null) {
-                //main.class=com.vng.zing.oa.app.MainApp
-                //TODO create new configuration
-                String mainClass = properties.getProperty("main.class");
-                String jvmArg = properties.getProperty("run.jvmargs");
-                String runConfiguration = getRunConfiguration(module, mainClass, jvmArg);
-
-                System.out.println(runConfiguration);
-
-                expression = xpath.compile("//component[@name='RunManager']");
-                Node runManager = (Node) expression.evaluate(doc, XPathConstants.NODE);
+        ModuleModel.NetbeansSide netbeans = model.getNetbeans();
+        ModuleModel.IntellijSide intellij = model.getIntellij();
+        if (netbeans == null) {
+            return;
+        }
+        if (intellij == null) {
+            String moduleFilePath = module.getModuleFilePath();
+            ApplicationManager.getApplication().invokeLater(() -> Messages.showInfoMessage(moduleFilePath, "Intellij Project file not found."));
+            return;
+        }
 
-                if(runManager != null) {
-//                    runManager.appendChild(doc.cre(runConfiguration));
+        Path moduleDirectory = model.getDirectory();
+        DependencySet moduleLibraries;
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.LIBRARY_RESOLUTION)) {
+            moduleLibraries = engine.resolveClasspath(moduleDirectory, netbeans.getClasspath(), netbeans.getReferences());
+        }
+        List<Path> jars = ConversionEngine.getJars(moduleDirectory, moduleLibraries);
+        ProgressManager.checkCanceled();
 
-                    os = new FileOutputStream(new File(module.getProject().getWorkspaceFile().getCanonicalPath()), false);
-                    TransformerFactory tf = TransformerFactory.newInstance();
-                    Transformer t = tf.newTransformer();
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.CONFLICT_ANALYSIS)) {
+            reportConflicts(engine.analyzeConflicts(moduleDirectory, moduleLibraries));
+        }
 
-                    t.transform(new DOMSource(doc), new StreamResult(byteArrayOutputStream));
-                    t.reset();
+        // the IDE knows every jar before a project library or the module file referencing it is committed
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.JAR_LOADING)) {
+            JarRootPrewarmer.getInstance(module.getProject()).prewarmAndWait(jars);
+        }
+        ProgressManager.checkCanceled();
 
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.LIBRARY_SHARING)) {
+            if (ConverterSettings.getInstance(module.getProject()).shareLibraries) {
+                moduleLibraries = SharedLibraryManager.getInstance(module.getProject()).share(module, moduleLibraries, moduleDirectory);
+            }
+        }
+        ProgressManager.checkCanceled();
 
-                    os.write(byteArrayOutputStream.toByteArray());
-                    os.flush();
-                }
+        try {
+            ConversionResult result;
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.SERIALIZATION)) {
+                result = engine.toIntellij(model, moduleLibraries);
             }
-        } catch (Exception e) {
-            if(os != null) {
-                try {
-                    os.close();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
+            boolean current = ModuleModelService.getInstance(module.getProject()).write(model, () -> {
+                if (result.getContent() == null) {
+                    logger.info("Libraries of " + module.getName() + " are up to date, .iml file is left untouched");
+                    ModuleModelService.getInstance(module.getProject()).converted(model, ConverterFactory.NETBEANS_TO_INTELLIJ, null);
+                } else {
+                    logger.info("Libraries of " + module.getName() + " changed, " + result.getLibraries() + " libraries");
+                    resolveIntellijLibrary(engine, result.getContent(), intellij.getContent(), recording);
                 }
+            });
+            if (!current) {
+                logger.info("Files of " + module.getName() + " changed while converting, it is converted again");
+                ConversionScheduler.getInstance(module.getProject()).schedule(module, ConverterFactory.NETBEANS_TO_INTELLIJ);
+                return;
             }
+        } catch (IOException | XMLStreamException e) {
+            recording.failed();
+            logger.error("Error resolving libraries", e);
         }
-    }
-
-    private void storeChecksumIml() throws IOException, NoSuchAlgorithmException {
-        IntellijModuleImlChecksum.getInstance().updateLastChecksum(module.getName(), module.getModuleFilePath());
-    }
+        ProgressManager.checkCanceled();
 
-    private byte[] clearIntellijModuleLibrary() {
-        if (module == null) {
-            return null;
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.RUN_CONFIGURATION)) {
+            generateRunConfiguration(netbeans);
         }
 
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = null;
-        FileOutputStream os = null;
-
-        try {
-            PsiFile moduleImlFile = getModuleImlFile();
-            InputStream inputStream = moduleImlFile.getVirtualFile().getInputStream();
-
-            dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(inputStream);
-
-            inputStream.close();
-
-            doc.getDocumentElement().normalize();
-            XPathFactory xpf = XPathFactory.newInstance();
-            XPath xpath = xpf.newXPath();
-            XPathExpression expression = xpath.compile("//module/component/orderEntry[@type=\"module-library\"] | //module/component/orderEntry[@level=\"project\"]");
-            NodeList node = (NodeList) expression.evaluate(doc, XPathConstants.NODESET);
-
-            for (int i = 0; i < node.getLength(); i++) {
-                Node item = node.item(i);
-                item.getParentNode().removeChild(item);
-            }
-
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer t = tf.newTransformer();
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-            t.transform(new DOMSource(doc), new StreamResult(byteArrayOutputStream));
-            t.reset();
-
-            return byteArrayOutputStream.toByteArray();
-        } catch (Exception e) {
-            logger.error("Error processing DOM .iml file", e);
+        try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.ARTIFACT)) {
+            generateArtifact(netbeans, recording);
         }
 
-        return null;
+        if (!recording.isFailed()) {
+            ConversionStateService.getInstance(module.getProject()).record(module, jars);
+        }
     }
 
-    private String extractNetbeansLibrary(@NotNull String pathToJar) {
-        String template = "" +
-                "<orderEntry type=\"module-library\">\n" +
-                "   <library>\n" +
-                "       <CLASSES>\n" +
-                "           <root url=\"jar://%s!/\" />\n" +
-                "       </CLASSES>\n" +
-                "       <JAVADOC />\n" +
-                "       <SOURCES />\n" +
-                "   </library>\n" +
-                "</orderEntry>\n";
-        String configuration = String.format(template, pathToJar);
+    private void reportConflicts(ClasspathConflictAnalyzer.Report conflicts) {
+        if (conflicts.isEmpty()) {
+            return;
+        }
 
-        return configuration;
+        logger.warn("Classpath conflicts in " + module.getName() + ": " + conflicts);
+        NotificationUtil.notify(module.getName() + ": " + conflicts.getDuplicateClasses() + " duplicate classes, "
+                + conflicts.getSplitPackages().size() + " split packages, " + conflicts.getShadowedJars().size()
+                + " shadowed jars on the classpath, see the log for details");
     }
 
-    private void resolveIntellijLibrary(String input, byte[] contentWithLibraryRemoved) {
-        if (module == null) {
+    /**
+     * Queues the run configuration of the module, it is created together with the ones of the other converted modules.
+     */
+    private void generateRunConfiguration(ModuleModel.NetbeansSide netbeans) {
+        if (netbeans.getMainClass() == null) {
             return;
         }
 
-        if (!isModuleImlFileExist()) {
-            Messages.showInfoMessage(module.getModuleFilePath(), "Intellij Project file not found.");
+        RunConfigurationBatcher.getInstance(module.getProject()).request(module, netbeans.getMainClass(),
+                netbeans.getJvmArgs(), FileUtil.toSystemIndependentName(model.getDirectory().toString()));
+    }
+
+    /**
+     * Generates the manifest of the jar artifact of the module and queues the artifact, it is created or updated
+     * together with the ones of the other converted modules.
+     */
+    private void generateArtifact(ModuleModel.NetbeansSide netbeans, ConversionMetrics.Recording recording) {
+        if (!ConverterSettings.getInstance(module.getProject()).jarArtifacts) {
             return;
         }
 
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = null;
-        FileOutputStream os = null;
-
+        NetbeansJarLayout layout = NetbeansJarLayout.of(model.getDirectory(), netbeans.newEvaluator());
         try {
+            Files.createDirectories(layout.getArtifactManifest().getParent());
+            AtomicFileWriter.write(layout.getArtifactManifest(), layout.newManifestContent());
+        } catch (IOException e) {
+            recording.failed();
+            logger.error("Unable to write the manifest of " + module.getName(), e);
+            return;
+        }
 
-            InputStream inputStream = new ByteArrayInputStream(contentWithLibraryRemoved);
-            dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(inputStream);
+        JarArtifactBatcher.getInstance(module.getProject()).request(module, layout);
+    }
 
-            inputStream.close();
+    private void resolveIntellijLibrary(ConversionEngine engine, byte[] content, byte[] imlContent, ConversionMetrics.Recording recording) {
+        VirtualFile moduleFile = module.getModuleFile();
+        if (moduleFile == null) {
+            String moduleFilePath = module.getModuleFilePath();
+            ApplicationManager.getApplication().invokeLater(() -> Messages.showInfoMessage(moduleFilePath, "Intellij Project file not found."));
+            return;
+        }
 
-            doc.getDocumentElement().normalize();
-            XPathFactory xpf = XPathFactory.newInstance();
-            XPath xpath = xpf.newXPath();
-            XPathExpression expression = xpath.compile("//module/component[@name=\"NewModuleRootManager\"]");
-            Node node = (Node) expression.evaluate(doc, XPathConstants.NODE);
+        // the module file is reloaded once written, the tracker must not convert its libraries back
+        try {
+            ModuleLibraryTracker.getInstance(module.getProject()).written(module, engine.readIntellijReferences(content, model.getDirectory()));
+        } catch (IOException | XMLStreamException e) {
+            logger.debug("Unable to read the references written to " + module.getName(), e);
+        }
 
-            if (node != null) {
-                Node dependencyRoot = dBuilder
-                        .parse(new ByteArrayInputStream(input.getBytes())).getDocumentElement();
-                NodeList childNodes = dependencyRoot.getChildNodes();
-                for (int i = 0; i < childNodes.getLength(); ++i) {
-                    Node dependency = childNodes.item(i);
-                    dependency = doc.importNode(dependency, true);
-                    node.appendChild(dependency);
-                }
+        try {
+            AtomicFileWriter.Outcome outcome;
+            try (ConversionMetrics.Span ignored = recording.phase(ConversionMetrics.Phase.DISK_WRITE)) {
+                outcome = FileWriteUtil.write(moduleFile, content, imlContent);
             }
-
-            os = new FileOutputStream(new File(module.getModuleFilePath()), false);
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer t = tf.newTransformer();
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-            t.transform(new DOMSource(doc), new StreamResult(byteArrayOutputStream));
-            t.reset();
-
-            os.write(byteArrayOutputStream.toByteArray());
-            os.flush();
-
-        } catch (Exception e) {
-            logger.error("Error resolving libraries", e);
-        } finally {
-            if (os != null) try {
-                os.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            switch (outcome) {
+                case WRITTEN:
+                    recording.written(content.length);
+                    ModuleModelService.getInstance(module.getProject()).converted(model, ConverterFactory.NETBEANS_TO_INTELLIJ, content);
+                    break;
+                case UP_TO_DATE:
+                    // the module file already holds the content, the module is in sync all the same
+                    recording.writeAvoided();
+                    ModuleModelService.getInstance(module.getProject()).converted(model, ConverterFactory.NETBEANS_TO_INTELLIJ, content);
+                    break;
+                case STALE:
+                    recording.writeStale();
+                    break;
             }
+        } catch (IOException e) {
+            recording.failed();
+            logger.error("Error writing the libraries of " + module.getName(), e);
         }
     }
-
-    private boolean isModuleImlFileExist() {
-        String relPath = module.getModuleFilePath().substring(0, module.getModuleFilePath().lastIndexOf(File.separator));
-        String path = relPath + File.separator + module.getName() + ".iml";
-        VirtualFile moduleImlFile = module.getProject().getBaseDir().getFileSystem().findFileByPath(path);
-
-        return (moduleImlFile != null);
-    }
-
-    private PsiFile getModuleImlFile() {
-        String relPath = module.getModuleFilePath().substring(0, module.getModuleFilePath().lastIndexOf(File.separator));
-        String path = relPath + File.separator + module.getName() + ".iml";
-        VirtualFile moduleImlFile = module.getProject().getBaseDir().getFileSystem().findFileByPath(path);
-
-        PsiFile moduleFile = PsiManager.getInstance(module.getProject()).findFile(moduleImlFile);
-        return moduleFile;
-    }
-
-    private String getRunConfiguration(Module module, String mainClass, String jvmArg) {
-        String modulePath = module.getModuleFile().getPath().replace(module.getName() + ".iml", "");
-        String moduleName = module.getName();
-        return "<configuration default=\"false\" name=\"" + moduleName + "\" type=\"Application\" factoryName=\"Application\">\n" +
-                "      <extension name=\"coverage\" enabled=\"false\" merge=\"false\" sample_coverage=\"true\" runner=\"idea\" />\n" +
-                "      <option name=\"MAIN_CLASS_NAME\" value=\""+ mainClass +"\" />\n" +
-                "      <option name=\"VM_PARAMETERS\" value=\""+ jvmArg +"\" />\n" +
-                "      <option name=\"PROGRAM_PARAMETERS\" value=\"\" />\n" +
-                "      <option name=\"WORKING_DIRECTORY\" value=\"file:/"+ modulePath + "\" />\n" +
-                "      <option name=\"ALTERNATIVE_JRE_PATH_ENABLED\" value=\"false\" />\n" +
-                "      <option name=\"ALTERNATIVE_JRE_PATH\" />\n" +
-                "      <option name=\"ENABLE_SWING_INSPECTOR\" value=\"false\" />\n" +
-                "      <option name=\"ENV_VARIABLES\" />\n" +
-                "      <option name=\"PASS_PARENT_ENVS\" value=\"true\" />\n" +
-                "      <module name=\""+ moduleName +"\" />\n" +
-                "      <envs />\n" +
-                "      <method />\n" +
-                "    </configuration>" +
-                "   <configuration default=\"false\" name=\"" + moduleName + "\" type=\"AntRunConfiguration\" factoryName=\"Ant Target\">\n" +
-                "      <antsettings antfile=\"file:/" + modulePath + "/build.xml\" target=\"default\" />\n" +
-                "      <method />\n" +
-                "    </configuration>";
-    }
 }
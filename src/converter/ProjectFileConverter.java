@@ -22,6 +22,6 @@ import com.intellij.openapi.module.Module;
  */
 public interface ProjectFileConverter {
   default void setModule(Module module) {}
-  default void setProjectFileContent(String content) {}
+  default void setModel(ModuleModel model) {}
   default void convert() {}
 }
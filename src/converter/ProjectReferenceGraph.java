@@ -0,0 +1,375 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Netbeans projects of a workspace and the references between them.
+ *
+ * A project references another one in nbproject/project.xml, with a reference element naming the foreign project
+ * and the artifact it uses, and in project.properties, where project.&lt;name&gt; is the directory of the foreign
+ * project and reference.&lt;name&gt;.&lt;id&gt; the jar it builds. The converters turn a classpath entry holding
+ * the jar of a project of the graph into a dependency on its module, so Intellij compiles against its sources.
+ *
+ * Projects are read one at a time, {@link #update(Path, String)} reads a project again when one of its files
+ * changes and tells whether its node changed. {@link #getLevels(Collection)} orders projects so that the projects
+ * of a level only reference projects of the previous levels.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class ProjectReferenceGraph {
+    public static final String PROJECT_XML_PATH = "nbproject/project.xml";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * A reference of a project to the jar of another project.
+     */
+    public static final class ProjectReference {
+        private final Path directory;
+        private final String jar;
+        private final Path artifact;
+
+        ProjectReference(@NotNull Path directory, @Nullable String jar, @Nullable Path artifact) {
+            this.directory = directory;
+            this.jar = jar;
+            this.artifact = artifact;
+        }
+
+        /**
+         * Absolute directory of the foreign project.
+         */
+        @NotNull
+        public Path getDirectory() {
+            return directory;
+        }
+
+        /**
+         * The jar as the classpath of the referencing project evaluates it, null when the reference has no jar property.
+         */
+        @Nullable
+        public String getJar() {
+            return jar;
+        }
+
+        /**
+         * Absolute path of {@link #getJar()}.
+         */
+        @Nullable
+        public Path getArtifact() {
+            return artifact;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ProjectReference)) {
+                return false;
+            }
+
+            ProjectReference that = (ProjectReference) o;
+            return directory.equals(that.directory) && Objects.equals(jar, that.jar);
+        }
+
+        @Override
+        public int hashCode() {
+            return directory.hashCode() * 31 + Objects.hashCode(jar);
+        }
+
+        @Override
+        public String toString() {
+            return directory + (jar != null ? " (" + jar + ")" : "");
+        }
+    }
+
+    public static final class ProjectNode {
+        private final Path directory;
+        private final String moduleName;
+        private final Path artifact;
+        private final List<ProjectReference> references;
+
+        ProjectNode(@NotNull Path directory, @NotNull String moduleName, @NotNull Path artifact, @NotNull List<ProjectReference> references) {
+            this.directory = directory;
+            this.moduleName = moduleName;
+            this.artifact = artifact;
+            this.references = Collections.unmodifiableList(references);
+        }
+
+        @NotNull
+        public Path getDirectory() {
+            return directory;
+        }
+
+        @NotNull
+        public String getModuleName() {
+            return moduleName;
+        }
+
+        /**
+         * Absolute path of the jar the project builds.
+         */
+        @NotNull
+        public Path getArtifact() {
+            return artifact;
+        }
+
+        @NotNull
+        public List<ProjectReference> getReferences() {
+            return references;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ProjectNode)) {
+                return false;
+            }
+
+            ProjectNode that = (ProjectNode) o;
+            return directory.equals(that.directory) && moduleName.equals(that.moduleName)
+                    && artifact.equals(that.artifact) && references.equals(that.references);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(directory, moduleName, artifact, references);
+        }
+    }
+
+    private final Map<Path, ProjectNode> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Reads the project again, returns true when its node is new or changed: another module name, artifact or
+     * references. A project that cannot be read is removed from the graph.
+     */
+    public boolean update(@NotNull Path projectDirectory, @NotNull String moduleName) {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+        ProjectNode node;
+        try {
+            NetbeansPropertyEvaluator evaluator = NetbeansPropertyEvaluator.load(directory);
+            node = new ProjectNode(directory, moduleName, NetbeansClasspath.getDistJar(directory, evaluator),
+                    readReferences(directory, evaluator));
+        } catch (IOException | XMLStreamException e) {
+            return nodes.remove(directory) != null;
+        }
+
+        return !node.equals(nodes.put(directory, node));
+    }
+
+    /**
+     * Adds the projects, read in parallel, named after their directory as the converted modules are.
+     */
+    public void updateAll(@NotNull Collection<Path> projectDirectories) {
+        projectDirectories.parallelStream().forEach(directory -> update(directory, directory.getFileName().toString()));
+    }
+
+    public void remove(@NotNull Path projectDirectory) {
+        nodes.remove(projectDirectory.toAbsolutePath().normalize());
+    }
+
+    public boolean contains(@NotNull Path projectDirectory) {
+        return nodes.containsKey(projectDirectory.toAbsolutePath().normalize());
+    }
+
+    @Nullable
+    public ProjectNode get(@NotNull Path projectDirectory) {
+        return nodes.get(projectDirectory.toAbsolutePath().normalize());
+    }
+
+    @Nullable
+    public ProjectNode findByModuleName(@NotNull String moduleName) {
+        for (ProjectNode node : nodes.values()) {
+            if (node.moduleName.equals(moduleName)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The jar of every project of the graph, to the name of its module.
+     */
+    @NotNull
+    public Map<Path, String> getArtifacts() {
+        Map<Path, String> artifacts = new HashMap<>();
+        for (ProjectNode node : nodes.values()) {
+            artifacts.put(node.artifact, node.moduleName);
+        }
+        return artifacts;
+    }
+
+    /**
+     * The projects of the graph referencing the given one directly.
+     */
+    @NotNull
+    public List<ProjectNode> getDependents(@NotNull Path projectDirectory) {
+        Path directory = projectDirectory.toAbsolutePath().normalize();
+        List<ProjectNode> dependents = new ArrayList<>();
+        for (ProjectNode node : nodes.values()) {
+            for (ProjectReference reference : node.references) {
+                if (reference.directory.equals(directory)) {
+                    dependents.add(node);
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Orders the projects in levels, the projects of a level reference only projects of the previous levels, so
+     * the projects of one level can be converted in parallel. References to projects outside the collection are
+     * ignored. Projects in a reference cycle come in a last level of their own. The order of the collection is kept
+     * within each level.
+     */
+    @NotNull
+    public List<List<Path>> getLevels(@NotNull Collection<Path> projectDirectories) {
+        Map<Path, Path> byDirectory = new HashMap<>();
+        for (Path directory : projectDirectories) {
+            byDirectory.put(directory.toAbsolutePath().normalize(), directory);
+        }
+
+        Map<Path, Integer> pending = new HashMap<>();
+        Map<Path, List<Path>> dependents = new HashMap<>();
+        for (Path directory : byDirectory.keySet()) {
+            Set<Path> dependencies = new LinkedHashSet<>();
+            ProjectNode node = nodes.get(directory);
+            if (node != null) {
+                for (ProjectReference reference : node.references) {
+                    if (byDirectory.containsKey(reference.directory) && !reference.directory.equals(directory)) {
+                        dependencies.add(reference.directory);
+                    }
+                }
+            }
+            pending.put(directory, dependencies.size());
+            for (Path dependency : dependencies) {
+                dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(directory);
+            }
+        }
+
+        List<List<Path>> levels = new ArrayList<>();
+        List<Path> remaining = new ArrayList<>(projectDirectories);
+        while (!remaining.isEmpty()) {
+            List<Path> level = new ArrayList<>();
+            List<Path> next = new ArrayList<>();
+            for (Path directory : remaining) {
+                (pending.get(directory.toAbsolutePath().normalize()) == 0 ? level : next).add(directory);
+            }
+
+            if (level.isEmpty()) {
+                levels.add(next);
+                break;
+            }
+
+            for (Path directory : level) {
+                for (Path dependent : dependents.getOrDefault(directory.toAbsolutePath().normalize(), Collections.emptyList())) {
+                    pending.put(dependent, pending.get(dependent) - 1);
+                }
+            }
+            levels.add(level);
+            remaining = next;
+        }
+        return levels;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Reads the references of a project to other projects from its project.xml, resolved with its properties.
+     * A project without project.xml references nothing.
+     */
+    @NotNull
+    public static List<ProjectReference> readReferences(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator)
+            throws IOException, XMLStreamException {
+        Path projectXml = projectDirectory.resolve(PROJECT_XML_PATH);
+        if (!Files.isRegularFile(projectXml)) {
+            return Collections.emptyList();
+        }
+
+        Set<ProjectReference> references = new LinkedHashSet<>();
+        try (InputStream is = Files.newInputStream(projectXml)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                String element = null;
+                String foreignProject = null;
+                String id = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        element = reader.getLocalName();
+                        if ("reference".equals(element)) {
+                            foreignProject = null;
+                            id = null;
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS && element != null) {
+                        if ("foreign-project".equals(element)) {
+                            foreignProject = reader.getText().trim();
+                        } else if ("id".equals(element)) {
+                            id = reader.getText().trim();
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        element = null;
+                        if ("reference".equals(reader.getLocalName()) && foreignProject != null) {
+                            ProjectReference reference = resolve(projectDirectory, evaluator, foreignProject, id);
+                            if (reference != null) {
+                                references.add(reference);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return new ArrayList<>(references);
+    }
+
+    @Nullable
+    private static ProjectReference resolve(@NotNull Path projectDirectory, @NotNull NetbeansPropertyEvaluator evaluator,
+                                            @NotNull String foreignProject, @Nullable String id) {
+        String directory = evaluator.getProperty("project." + foreignProject);
+        if (directory == null || directory.contains("${")) {
+            return null;
+        }
+
+        String jar = id != null ? evaluator.getProperty("reference." + foreignProject + "." + id) : null;
+        if (jar != null && jar.contains("${")) {
+            jar = null;
+        }
+        return new ProjectReference(projectDirectory.resolve(directory).toAbsolutePath().normalize(), jar,
+                jar != null ? projectDirectory.resolve(jar).toAbsolutePath().normalize() : null);
+    }
+}
@@ -0,0 +1,112 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Function;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The {@link ProjectReferenceGraph} of the converted modules of a project, given to the converters so a jar built
+ * by another module becomes a dependency on that module.
+ *
+ * When the project.properties or project.xml of a module changes, its node is read again, and if its jar or module
+ * name changed, the modules referencing it are converted again. The other modules are left alone.
+ */
+public class ProjectReferenceService implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.ProjectReferenceService");
+
+    @NotNull
+    private final Project project;
+
+    private final ProjectReferenceGraph graph = new ProjectReferenceGraph();
+
+    public ProjectReferenceService(@NotNull Project project) {
+        this.project = project;
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                unregister(module);
+            }
+
+            @Override
+            public void modulesRenamed(@NotNull Project project, @NotNull List<Module> modules, @NotNull Function<Module, String> oldNameProvider) {
+                for (Module module : modules) {
+                    if (graph.contains(getProjectDirectory(module))) {
+                        projectChanged(module);
+                    }
+                }
+            }
+        });
+    }
+
+    public static ProjectReferenceService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, ProjectReferenceService.class);
+    }
+
+    @NotNull
+    public ProjectReferenceGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Adds the module to the graph in background. Its dependents are not converted again: until the module is in
+     * the graph, the converters find it by its module file.
+     */
+    public void register(@NotNull Module module) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            if (!module.isDisposed()) {
+                graph.update(getProjectDirectory(module), module.getName());
+            }
+        });
+    }
+
+    public void unregister(@NotNull Module module) {
+        graph.remove(getProjectDirectory(module));
+    }
+
+    /**
+     * Reads the module again in background, and converts the modules referencing it when its node changed.
+     */
+    public void projectChanged(@NotNull Module module) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            if (module.isDisposed()) {
+                return;
+            }
+
+            Path directory = getProjectDirectory(module);
+            if (!graph.update(directory, module.getName())) {
+                return;
+            }
+
+            ModuleManager moduleManager = ModuleManager.getInstance(project);
+            for (ProjectReferenceGraph.ProjectNode dependent : graph.getDependents(directory)) {
+                Module dependentModule = moduleManager.findModuleByName(dependent.getModuleName());
+                if (dependentModule != null && !dependentModule.isDisposed()) {
+                    logger.info(dependent.getModuleName() + " references " + module.getName() + ", which changed, it is converted again");
+                    ConversionScheduler.getInstance(project).schedule(dependentModule, ConverterFactory.NETBEANS_TO_INTELLIJ);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @NotNull
+    private static Path getProjectDirectory(@NotNull Module module) {
+        return Paths.get(module.getModuleFilePath()).getParent();
+    }
+}
@@ -0,0 +1,449 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A properties file kept line by line, as written: comments, blank lines, order, escaping and line continuations.
+ *
+ * Setting or removing a property replaces only the lines of its entry, a new property is inserted after the last
+ * entry sharing its dotted prefix, like file.reference.*, or at the end. Rendering a document nobody changed gives
+ * back the original bytes, so patching a file touches only the lines of what really changed.
+ *
+ * The entries are kept in a linked list indexed by key and by dotted prefix on first use, and the value of an entry
+ * is decoded once, so patching many properties stays linear in the size of the file.
+ *
+ * Properties files are read and written in ISO-8859-1, characters outside of it are written as \\uXXXX escapes.
+ *
+ * This class has no dependency on the IDE and is not thread safe.
+ */
+public class PropertiesDocument {
+    private static final class Entry {
+        // the lines of the entry with their terminators, a continued property spans several lines
+        private String text;
+        private final String key;
+        // the value of the entry, decoded when first read
+        private String value;
+        private Entry next;
+
+        Entry(@NotNull String text, @Nullable String key, @Nullable String value) {
+            this.text = text;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private Entry first;
+    private Entry last;
+    // the last entry of each key, null until first used and after a removal
+    private Map<String, Entry> lastEntries;
+    // the last entry of each dotted prefix of the keys, like file. and file.reference.
+    private Map<String, Entry> lastPrefixEntries;
+    private final String lineSeparator;
+    private boolean modified;
+
+    private PropertiesDocument(@NotNull String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+    }
+
+    @NotNull
+    public static PropertiesDocument parse(@NotNull byte[] content) {
+        return parse(new String(content, StandardCharsets.ISO_8859_1));
+    }
+
+    @NotNull
+    public static PropertiesDocument parse(@NotNull String text) {
+        PropertiesDocument document = new PropertiesDocument(detectLineSeparator(text));
+
+        StringBuilder entry = new StringBuilder();
+        StringBuilder logical = new StringBuilder();
+        int start = 0;
+        while (start < text.length()) {
+            int end = endOfLine(text, start);
+            String line = text.substring(start, end);
+            String content = stripTerminator(line);
+            start = end;
+
+            boolean continuing = entry.length() > 0;
+            if (!continuing && isBlankOrComment(content)) {
+                document.append(new Entry(line, null, null));
+                continue;
+            }
+
+            entry.append(line);
+            String stripped = continuing ? stripLeadingWhitespace(content) : content;
+            if (endsWithContinuation(stripped) && start < text.length()) {
+                logical.append(stripped, 0, stripped.length() - 1);
+                continue;
+            }
+
+            logical.append(stripped);
+            document.append(new Entry(entry.toString(), parseKey(logical.toString()), null));
+            entry.setLength(0);
+            logical.setLength(0);
+        }
+        return document;
+    }
+
+    /**
+     * The values of the document, as {@link Properties#load(java.io.Reader)} reads them.
+     */
+    @NotNull
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(render()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties;
+    }
+
+    public boolean containsKey(@NotNull String key) {
+        return getLastEntries().containsKey(key);
+    }
+
+    /**
+     * Replaces the lines of the property with key=value, or inserts it. Nothing changes when the property already
+     * holds the value.
+     */
+    public void setProperty(@NotNull String key, @NotNull String value) {
+        String current = getValue(key);
+        if (value.equals(current)) {
+            return;
+        }
+        setEntry(key, escape(key, true) + "=" + escape(value, false) + lineSeparator, value);
+    }
+
+    /**
+     * Sets a path property one item per line, the way Netbeans writes javac.classpath. Nothing changes when the
+     * property already holds the same items.
+     */
+    public void setPath(@NotNull String key, @NotNull List<String> items) {
+        String current = getValue(key);
+        if (current != null && NetbeansPropertyEvaluator.splitPath(current).equals(items)) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder(escape(key, true)).append('=');
+        if (!items.isEmpty()) {
+            text.append('\\').append(lineSeparator);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            text.append("    ").append(escape(items.get(i), false));
+            if (i < items.size() - 1) {
+                text.append(":\\");
+            }
+            text.append(lineSeparator);
+        }
+        if (items.isEmpty()) {
+            text.append(lineSeparator);
+        }
+        setEntry(key, text.toString(), String.join(":", items));
+    }
+
+    /**
+     * Removes every entry of the property.
+     */
+    public void removeProperty(@NotNull String key) {
+        Entry previous = null;
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            if (!key.equals(entry.key)) {
+                previous = entry;
+                continue;
+            }
+
+            if (previous == null) {
+                first = entry.next;
+            } else {
+                previous.next = entry.next;
+            }
+            if (entry == last) {
+                last = previous;
+            }
+            modified = true;
+            lastEntries = null;
+            lastPrefixEntries = null;
+        }
+    }
+
+    /**
+     * True when a property was set to another value, added or removed since the document was parsed.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    @NotNull
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            text.append(entry.text);
+        }
+        return text.toString();
+    }
+
+    @NotNull
+    public byte[] toBytes() {
+        return render().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Nullable
+    private String getValue(@NotNull String key) {
+        Entry entry = getLastEntries().get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.value == null) {
+            Properties properties = new Properties();
+            try {
+                properties.load(new StringReader(entry.text));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entry.value = properties.getProperty(key);
+        }
+        return entry.value;
+    }
+
+    private void setEntry(@NotNull String key, @NotNull String text, @NotNull String value) {
+        modified = true;
+        Entry entry = getLastEntries().get(key);
+        if (entry != null) {
+            entry.text = text;
+            entry.value = value;
+            return;
+        }
+
+        entry = new Entry(text, key, value);
+        Entry anchor = getInsertAnchor(key);
+        if (anchor == null) {
+            if (last != null && !endsWithTerminator(last.text)) {
+                last.text += lineSeparator;
+            }
+            append(entry);
+        } else {
+            if (!endsWithTerminator(anchor.text)) {
+                anchor.text += lineSeparator;
+            }
+            entry.next = anchor.next;
+            anchor.next = entry;
+            if (anchor == last) {
+                last = entry;
+            }
+        }
+
+        // the entry follows the anchor, it is the last of the prefixes the anchor was the last of, and the only one
+        // of its longer prefixes
+        lastEntries.put(key, entry);
+        for (int dot = key.indexOf('.'); dot >= 0; dot = key.indexOf('.', dot + 1)) {
+            String prefix = key.substring(0, dot + 1);
+            Entry lastOfPrefix = lastPrefixEntries.get(prefix);
+            if (lastOfPrefix == null || lastOfPrefix == anchor) {
+                lastPrefixEntries.put(prefix, entry);
+            }
+        }
+    }
+
+    private void append(@NotNull Entry entry) {
+        if (last == null) {
+            first = entry;
+        } else {
+            last.next = entry;
+        }
+        last = entry;
+    }
+
+    /**
+     * The last entry of each key, which is the one {@link Properties} keeps.
+     */
+    @NotNull
+    private Map<String, Entry> getLastEntries() {
+        if (lastEntries == null) {
+            lastEntries = new HashMap<>();
+            lastPrefixEntries = new HashMap<>();
+            for (Entry entry = first; entry != null; entry = entry.next) {
+                if (entry.key == null) {
+                    continue;
+                }
+
+                lastEntries.put(entry.key, entry);
+                for (int dot = entry.key.indexOf('.'); dot >= 0; dot = entry.key.indexOf('.', dot + 1)) {
+                    lastPrefixEntries.put(entry.key.substring(0, dot + 1), entry);
+                }
+            }
+        }
+        return lastEntries;
+    }
+
+    /**
+     * The last entry sharing the longest dotted prefix with the key, the new entry goes right after it. Null when
+     * none does, it goes at the end.
+     */
+    @Nullable
+    private Entry getInsertAnchor(@NotNull String key) {
+        for (int dot = key.lastIndexOf('.'); dot >= 0; dot = key.lastIndexOf('.', dot - 1)) {
+            Entry anchor = lastPrefixEntries.get(key.substring(0, dot + 1));
+            if (anchor != null) {
+                return anchor;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String detectLineSeparator(@NotNull String text) {
+        int index = text.indexOf('\n');
+        if (index > 0 && text.charAt(index - 1) == '\r') {
+            return "\r\n";
+        }
+        if (index < 0 && text.indexOf('\r') >= 0) {
+            return "\r";
+        }
+        return "\n";
+    }
+
+    private static int endOfLine(@NotNull String text, int start) {
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            }
+            if (c == '\r') {
+                return i + 1 < text.length() && text.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+        }
+        return text.length();
+    }
+
+    private static boolean endsWithTerminator(@NotNull String text) {
+        return text.endsWith("\n") || text.endsWith("\r");
+    }
+
+    @NotNull
+    private static String stripTerminator(@NotNull String line) {
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    @NotNull
+    private static String stripLeadingWhitespace(@NotNull String line) {
+        int start = 0;
+        while (start < line.length() && isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return line.substring(start);
+    }
+
+    private static boolean isBlankOrComment(@NotNull String line) {
+        String stripped = stripLeadingWhitespace(line);
+        return stripped.isEmpty() || stripped.charAt(0) == '#' || stripped.charAt(0) == '!';
+    }
+
+    /**
+     * An odd number of trailing backslashes continues the line, an even number is escaped backslashes.
+     */
+    private static boolean endsWithContinuation(@NotNull String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    /**
+     * The key of a logical line, unescaped: up to the first unescaped '=', ':' or whitespace.
+     */
+    @NotNull
+    private static String parseKey(@NotNull String line) {
+        String text = stripLeadingWhitespace(line);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '=' || c == ':' || isWhitespace(c)) {
+                break;
+            }
+            if (c != '\\' || i + 1 == text.length()) {
+                key.append(c);
+                continue;
+            }
+
+            c = text.charAt(++i);
+            if (c == 'u' && i + 4 < text.length()) {
+                try {
+                    key.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    continue;
+                } catch (NumberFormatException e) {
+                    // not an escape, kept as Properties does
+                }
+            }
+            key.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c == 'f' ? '\f' : c);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Escapes a key or value so {@link Properties} reads it back as is. Values keep ':' and '=' as they are, as
+     * Netbeans writes them.
+     */
+    @NotNull
+    private static String escape(@NotNull String text, boolean key) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\f':
+                    escaped.append("\\f");
+                    break;
+                case ' ':
+                    escaped.append(key || i == 0 ? "\\ " : " ");
+                    break;
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    if (key) {
+                        escaped.append('\\');
+                    }
+                    escaped.append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c > 0xff) {
+                        escaped.append(String.format("\\u%04X", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package converter;
+
+import com.intellij.execution.RunManager;
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.application.ApplicationConfiguration;
+import com.intellij.execution.application.ApplicationConfigurationType;
+import com.intellij.execution.configurations.ConfigurationFactory;
+import com.intellij.execution.configurations.RunConfiguration;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Comparing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Creates or updates the Application run configuration of converted modules through the {@link RunManager}.
+ *
+ * Conversions only queue a request. The requests queued while the UI thread is busy are applied together
+ * in one pass, the latest request of a module winning. A configuration is identified by its module and main class.
+ */
+public class RunConfigurationBatcher {
+    private final Logger logger = Logger.getInstance("com.trangdp.RunConfigurationBatcher");
+
+    @NotNull
+    private final Project project;
+
+    private final Map<String, Request> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static class Request {
+        private final Module module;
+        private final String mainClass;
+        private final String vmParameters;
+        private final String workingDirectory;
+
+        Request(@NotNull Module module, @NotNull String mainClass, @Nullable String vmParameters, @NotNull String workingDirectory) {
+            this.module = module;
+            this.mainClass = mainClass;
+            this.vmParameters = vmParameters;
+            this.workingDirectory = workingDirectory;
+        }
+    }
+
+    public RunConfigurationBatcher(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static RunConfigurationBatcher getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, RunConfigurationBatcher.class);
+    }
+
+    /**
+     * Queues the run configuration of a module, it is created or updated in the next pass on the UI thread.
+     */
+    public void request(@NotNull Module module, @NotNull String mainClass, @Nullable String vmParameters, @NotNull String workingDirectory) {
+        synchronized (pending) {
+            pending.put(module.getName(), new Request(module, mainClass, vmParameters, workingDirectory));
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            ApplicationManager.getApplication().invokeLater(this::flush, project.getDisposed());
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        List<Request> requests;
+        synchronized (pending) {
+            requests = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        RunManager runManager = RunManager.getInstance(project);
+        List<RunConfiguration> configurations = runManager.getConfigurationsList(ApplicationConfigurationType.getInstance());
+
+        Set<String> names = new HashSet<>();
+        for (RunConfiguration configuration : configurations) {
+            names.add(configuration.getName());
+        }
+
+        int created = 0;
+        int updated = 0;
+        for (Request request : requests) {
+            if (request.module.isDisposed()) {
+                continue;
+            }
+
+            ApplicationConfiguration configuration = find(configurations, request);
+            if (configuration == null) {
+                ConfigurationFactory factory = ApplicationConfigurationType.getInstance().getConfigurationFactories()[0];
+                String name = getUniqueName(names, request.module.getName());
+                RunnerAndConfigurationSettings settings = runManager.createRunConfiguration(name, factory);
+
+                configuration = (ApplicationConfiguration) settings.getConfiguration();
+                configuration.setModule(request.module);
+                configuration.setMainClassName(request.mainClass);
+                configuration.setVMParameters(request.vmParameters);
+                configuration.setWorkingDirectory(request.workingDirectory);
+
+                runManager.addConfiguration(settings, false);
+                names.add(name);
+                created++;
+            } else if (!Comparing.strEqual(configuration.getVMParameters(), request.vmParameters, false)
+                    || !Comparing.strEqual(configuration.getWorkingDirectory(), request.workingDirectory, false)) {
+                configuration.setVMParameters(request.vmParameters);
+                configuration.setWorkingDirectory(request.workingDirectory);
+                updated++;
+            }
+        }
+
+        logger.info("Run configurations: " + requests.size() + " requested, " + created + " created, " + updated + " updated");
+    }
+
+    @Nullable
+    private static ApplicationConfiguration find(@NotNull List<RunConfiguration> configurations, @NotNull Request request) {
+        for (RunConfiguration configuration : configurations) {
+            if (configuration instanceof ApplicationConfiguration) {
+                ApplicationConfiguration application = (ApplicationConfiguration) configuration;
+                if (request.module.getName().equals(application.getConfigurationModule().getModuleName())
+                        && request.mainClass.equals(application.getMainClassName())) {
+                    return application;
+                }
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String getUniqueName(@NotNull Set<String> names, @NotNull String name) {
+        String unique = name;
+        for (int i = 2; names.contains(unique); i++) {
+            unique = name + " (" + i + ")";
+        }
+        return unique;
+    }
+}
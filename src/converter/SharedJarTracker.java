@@ -0,0 +1,70 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which modules use which jar, a jar being identified by a key that is equal for copies of the same jar.
+ *
+ * A jar is shared once two modules use it. When a jar becomes shared, the modules already using it have to be
+ * converted again so they reference the shared library too.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class SharedJarTracker {
+    private final Map<String, Set<String>> jarsByModule = new HashMap<>();
+    private final Map<String, Set<String>> modulesByJar = new HashMap<>();
+
+    /**
+     * Records the jars of a module, replacing the ones recorded before.
+     * Returns the other modules using a jar that has just become shared.
+     */
+    @NotNull
+    public synchronized Set<String> update(@NotNull String module, @NotNull Collection<String> jarKeys) {
+        remove(module);
+
+        Set<String> affected = new HashSet<>();
+        Set<String> keys = new HashSet<>(jarKeys);
+        for (String key : keys) {
+            Set<String> modules = modulesByJar.computeIfAbsent(key, k -> new HashSet<>());
+            modules.add(module);
+            if (modules.size() == 2) {
+                for (String other : modules) {
+                    if (!other.equals(module)) {
+                        affected.add(other);
+                    }
+                }
+            }
+        }
+        jarsByModule.put(module, keys);
+
+        return affected;
+    }
+
+    public synchronized void remove(@NotNull String module) {
+        Set<String> keys = jarsByModule.remove(module);
+        if (keys == null) {
+            return;
+        }
+
+        for (String key : keys) {
+            Set<String> modules = modulesByJar.get(key);
+            if (modules != null) {
+                modules.remove(module);
+                if (modules.isEmpty()) {
+                    modulesByJar.remove(key);
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isShared(@NotNull String jarKey) {
+        Set<String> modules = modulesByJar.get(jarKey);
+        return modules != null && modules.size() > 1;
+    }
+}
@@ -0,0 +1,268 @@
+package converter;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.JavadocOrderRootType;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.roots.libraries.LibraryTable;
+import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.util.Function;
+import com.intellij.util.PathUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the jars used by several modules of a project into project libraries, when
+ * {@link ConverterSettings#shareLibraries} is set.
+ *
+ * Jars are matched by canonical path, and copies of a jar at different places by the checksum of their
+ * central directory. A jar already held by a project library is always referenced through it, whoever created it.
+ */
+public class SharedLibraryManager implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.SharedLibraryManager");
+
+    @NotNull
+    private final Project project;
+
+    private final SharedJarTracker tracker = new SharedJarTracker();
+
+    // jar key to project library name, filled from the library table on first use
+    private final Map<String, String> libraryNames = new ConcurrentHashMap<>();
+    private volatile boolean libraryNamesLoaded;
+
+    public SharedLibraryManager(@NotNull Project project) {
+        this.project = project;
+
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new ModuleListener() {
+            @Override
+            public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+                tracker.remove(module.getName());
+            }
+
+            @Override
+            public void modulesRenamed(@NotNull Project project, @NotNull List<Module> modules, @NotNull Function<Module, String> oldNameProvider) {
+                for (Module module : modules) {
+                    tracker.remove(oldNameProvider.fun(module));
+                }
+            }
+        });
+
+        getLibraryTable().addListener(new LibraryTable.Listener() {
+            @Override
+            public void afterLibraryAdded(Library newLibrary) {
+                libraryNamesLoaded = false;
+            }
+
+            @Override
+            public void afterLibraryRenamed(Library library) {
+                forgetLibraryNames();
+            }
+
+            @Override
+            public void beforeLibraryRemoved(Library library) {
+            }
+
+            @Override
+            public void afterLibraryRemoved(Library library) {
+                forgetLibraryNames();
+            }
+        }, this);
+    }
+
+    public static SharedLibraryManager getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, SharedLibraryManager.class);
+    }
+
+    /**
+     * Replaces the shared jars of the module libraries by references to project libraries, creating the missing ones.
+     * Modules that used a jar on their own until now are scheduled for conversion again.
+     */
+    @NotNull
+    public DependencySet share(@NotNull Module module, @NotNull DependencySet libraries, @NotNull Path moduleDirectory) {
+        loadLibraryNames();
+        JarIndex jarIndex = JarIndexService.getInstance().getIndex();
+        String moduleDir = FileUtil.toSystemIndependentName(moduleDirectory.toString());
+
+        List<String> keys = new ArrayList<>();
+        List<JarIndex.JarInfo> infos = new ArrayList<>();
+        for (DependencySet.Dependency dependency : libraries.getDependencies()) {
+            if (dependency.isProjectLibrary() || dependency.isModule()) {
+                keys.add(null);
+                infos.add(null);
+                continue;
+            }
+
+            JarIndex.JarInfo info = jarIndex.get(Paths.get(dependency.getPath().replace("$MODULE_DIR$", moduleDir)));
+            keys.add(getKey(info));
+            infos.add(info);
+        }
+
+        List<String> jarKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (key != null) {
+                jarKeys.add(key);
+            }
+        }
+        Set<String> affected = tracker.update(module.getName(), jarKeys);
+
+        Map<String, JarIndex.JarInfo> missing = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (key != null && !libraryNames.containsKey(key) && tracker.isShared(key)) {
+                missing.putIfAbsent(key, infos.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            createLibraries(missing);
+        }
+
+        List<DependencySet.Dependency> shared = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            DependencySet.Dependency dependency = libraries.getDependencies().get(i);
+            String name = keys.get(i) != null ? libraryNames.get(keys.get(i)) : null;
+            if (name == null) {
+                shared.add(dependency);
+            } else {
+                DependencySet.Dependency reference = new DependencySet.Dependency(
+                        DependencySet.PROJECT_LIBRARY_PREFIX + name, dependency.getScope());
+                if (!shared.contains(reference)) {
+                    shared.add(reference);
+                }
+            }
+        }
+
+        rescheduleLater(affected);
+        return new DependencySet(shared);
+    }
+
+    @Override
+    public void dispose() {
+        libraryNames.clear();
+    }
+
+    private void forgetLibraryNames() {
+        libraryNames.clear();
+        libraryNamesLoaded = false;
+    }
+
+    /**
+     * Copies of the same jar share a key, a directory or an unreadable jar is only equal to itself.
+     */
+    @NotNull
+    private static String getKey(@NotNull JarIndex.JarInfo info) {
+        if (info.getChecksum() != 0) {
+            return "crc:" + Long.toHexString(info.getChecksum()) + ":" + info.getSize();
+        }
+
+        try {
+            return "path:" + Paths.get(info.getPath()).toRealPath();
+        } catch (IOException e) {
+            return "path:" + info.getPath();
+        }
+    }
+
+    private void loadLibraryNames() {
+        if (libraryNamesLoaded) {
+            return;
+        }
+
+        JarIndex jarIndex = JarIndexService.getInstance().getIndex();
+        Map<String, String> names = new LinkedHashMap<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            for (Library library : getLibraryTable().getLibraries()) {
+                String[] urls = library.getUrls(OrderRootType.CLASSES);
+                if (library.getName() != null && urls.length == 1) {
+                    names.put(urls[0], library.getName());
+                }
+            }
+        });
+
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            String path = PathUtil.getLocalPath(VfsUtilCore.urlToPath(entry.getKey()));
+            libraryNames.putIfAbsent(getKey(jarIndex.get(Paths.get(path))), entry.getValue());
+        }
+        libraryNamesLoaded = true;
+    }
+
+    private void createLibraries(@NotNull Map<String, JarIndex.JarInfo> jars) {
+        Application application = ApplicationManager.getApplication();
+        application.invokeAndWait(() -> application.runWriteAction(() -> {
+            LibraryTable.ModifiableModel model = getLibraryTable().getModifiableModel();
+            for (Map.Entry<String, JarIndex.JarInfo> entry : jars.entrySet()) {
+                JarIndex.JarInfo info = entry.getValue();
+                if (libraryNames.containsKey(entry.getKey())) {
+                    continue;
+                }
+
+                String name = getUniqueName(model, FileUtil.getNameWithoutExtension(new File(info.getPath())));
+                Library.ModifiableModel library = model.createLibrary(name).getModifiableModel();
+                library.addRoot(VfsUtil.getUrlForLibraryRoot(new File(info.getPath())), OrderRootType.CLASSES);
+                addRoot(library, info.getSources(), OrderRootType.SOURCES);
+                addRoot(library, info.getJavadoc(), JavadocOrderRootType.getInstance());
+                library.commit();
+
+                libraryNames.put(entry.getKey(), name);
+                logger.info("Project library " + name + " created for " + info.getPath());
+            }
+            model.commit();
+        }), ModalityState.defaultModalityState());
+    }
+
+    private static void addRoot(@NotNull Library.ModifiableModel library, @Nullable String path, @NotNull OrderRootType type) {
+        if (path != null) {
+            library.addRoot(VfsUtil.getUrlForLibraryRoot(new File(path)), type);
+        }
+    }
+
+    @NotNull
+    private static String getUniqueName(@NotNull LibraryTable.ModifiableModel model, @NotNull String name) {
+        String unique = name;
+        for (int i = 2; model.getLibraryByName(unique) != null; i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    private void rescheduleLater(@NotNull Set<String> moduleNames) {
+        if (moduleNames.isEmpty()) {
+            return;
+        }
+
+        ModuleManager moduleManager = ModuleManager.getInstance(project);
+        for (String moduleName : moduleNames) {
+            Module other = moduleManager.findModuleByName(moduleName);
+            if (other != null) {
+                ConversionScheduler.getInstance(project).schedule(other, ConverterFactory.NETBEANS_TO_INTELLIJ);
+            }
+        }
+    }
+
+    @NotNull
+    private LibraryTable getLibraryTable() {
+        return LibraryTablesRegistrar.getInstance().getLibraryTable(project);
+    }
+}
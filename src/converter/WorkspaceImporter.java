@@ -0,0 +1,170 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import util.AtomicFileWriter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Finds every Netbeans project under a directory and converts each one with a {@link ConversionEngine},
+ * in parallel on a bounded fork-join pool.
+ *
+ * The projects are converted together: a reference of one project to another becomes a module dependency, and
+ * the projects are converted in the levels of their {@link ProjectReferenceGraph}, each level in parallel.
+ *
+ * Nothing is written while converting: {@link #write(List)} flushes every changed file at once,
+ * so the IDE can refresh and load all of them in a single batch.
+ *
+ * This class has no dependency on the IDE.
+ */
+public class WorkspaceImporter implements AutoCloseable {
+    private static final Set<String> SKIPPED_DIRECTORIES = new HashSet<>(Arrays.asList(
+            "nbproject", "build", "dist", "out", "node_modules", ".git", ".hg", ".svn", ".idea"));
+
+    private final ForkJoinPool pool;
+    private final ConversionEngine engine;
+
+    public WorkspaceImporter(int parallelism, @NotNull JarIndex jarIndex) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.engine = new ConversionEngine(jarIndex);
+    }
+
+    /**
+     * Returns the directories under root holding a nbproject/project.properties file, sorted by path.
+     */
+    @NotNull
+    public List<Path> scan(@NotNull Path root, @NotNull BooleanSupplier cancelled) {
+        List<Path> projects = new ArrayList<>(pool.invoke(new ScanTask(root, cancelled)));
+        Collections.sort(projects);
+        return projects;
+    }
+
+    /**
+     * Converts the projects in the given direction, see {@link ConversionEngine#convert(Path, String)}. The results
+     * come in the order of the directories.
+     */
+    @NotNull
+    public List<ConversionResult> convert(@NotNull List<Path> projectDirectories, @NotNull String type, @NotNull BooleanSupplier cancelled) {
+        try {
+            return pool.submit(() -> {
+                ProjectReferenceGraph graph = new ProjectReferenceGraph();
+                graph.updateAll(projectDirectories);
+                engine.setProjectGraph(graph);
+
+                Map<Path, ConversionResult> results = new ConcurrentHashMap<>();
+                for (List<Path> level : graph.getLevels(projectDirectories)) {
+                    level.parallelStream()
+                            .filter(directory -> !cancelled.getAsBoolean())
+                            .forEach(directory -> results.put(directory, engine.convert(directory, type)));
+                }
+
+                return projectDirectories.stream()
+                        .map(results::get)
+                        .filter(result -> result != null)
+                        .collect(Collectors.toList());
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the files that changed with {@link AtomicFileWriter}. Returns the files written.
+     */
+    @NotNull
+    public List<Path> write(@NotNull List<ConversionResult> results) {
+        List<Path> written = new ArrayList<>();
+        for (ConversionResult result : results) {
+            if (!result.isChanged() || result.error != null) {
+                continue;
+            }
+
+            // the references of project.properties resolve once private.properties is written
+            Path target = result.getPrivatePropertiesFile();
+            try {
+                if (result.privateContent != null) {
+                    Files.createDirectories(target.getParent());
+                    if (AtomicFileWriter.write(target, result.privateContent)) {
+                        written.add(target);
+                    }
+                }
+                target = result.getTargetFile();
+                if (result.content != null && AtomicFileWriter.write(target, result.content)) {
+                    written.add(target);
+                }
+            } catch (IOException e) {
+                result.error = "Unable to write " + target + ": " + e.getMessage();
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static class ScanTask extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final BooleanSupplier cancelled;
+
+        ScanTask(@NotNull Path directory, @NotNull BooleanSupplier cancelled) {
+            this.directory = directory;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> projects = new ArrayList<>();
+            if (cancelled.getAsBoolean()) {
+                return projects;
+            }
+
+            if (Files.isRegularFile(directory.resolve(NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH))) {
+                projects.add(directory);
+            }
+
+            List<ScanTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    // symbolic links are not followed, they could lead back into the tree
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)
+                            && !SKIPPED_DIRECTORIES.contains(child.getFileName().toString())) {
+                        ScanTask subtask = new ScanTask(child, cancelled);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (IOException e) {
+                // unreadable directories are not part of the workspace
+            }
+
+            for (ScanTask subtask : subtasks) {
+                projects.addAll(subtask.join());
+            }
+            return projects;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package converter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the central directory of a zip file without reading the entries themselves.
+ *
+ * Only the end of the file is memory mapped: the end of central directory record and the directory it points to.
+ * Single entries can then be read from their local header, which is how the manifest of a jar is loaded.
+ *
+ * This class has no dependency on the IDE.
+ */
+public final class ZipCentralDirectory {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * Receives each entry of the directory. The name is given as a range of the directory buffer so that
+     * callers scanning thousands of entries do not have to decode every name.
+     */
+    public interface EntryVisitor {
+        void visit(@NotNull ByteBuffer directory, int nameOffset, int nameLength, long localHeaderOffset,
+                   int method, long compressedSize, long size);
+    }
+
+    /**
+     * Receives the header of each entry of the directory, what is needed to copy the entry to another zip file
+     * without uncompressing it.
+     */
+    public interface HeaderVisitor {
+        void visit(@NotNull String name, int method, long crc, long compressedSize, long size, int dosTime, long localHeaderOffset)
+                throws IOException;
+    }
+
+    private final Path path;
+    private final ByteBuffer directory;
+    private final int entryCount;
+
+    private ZipCentralDirectory(@NotNull Path path, @NotNull ByteBuffer directory, int entryCount) {
+        this.path = path;
+        this.directory = directory;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Maps the central directory of the file, throws an IOException when it is not a valid zip file.
+     */
+    @NotNull
+    public static ZipCentralDirectory read(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < END_SIZE) {
+                throw new IOException("Not a zip file: " + path);
+            }
+
+            long tailStart = Math.max(0, fileSize - END_SIZE - MAX_COMMENT);
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, fileSize - tailStart);
+            tail.order(ByteOrder.LITTLE_ENDIAN);
+
+            int end = -1;
+            for (int i = tail.limit() - END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new IOException("No central directory in " + path);
+            }
+
+            long entryCount = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+            if ((entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL)
+                    && end >= 20 && tail.getInt(end - 20) == ZIP64_LOCATOR_SIGNATURE) {
+                long zip64End = tail.getLong(end - 20 + 8);
+                ByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, zip64End, 56).order(ByteOrder.LITTLE_ENDIAN);
+                if (record.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new IOException("Invalid zip64 end record in " + path);
+                }
+                entryCount = record.getLong(32);
+                directorySize = record.getLong(40);
+                directoryOffset = record.getLong(48);
+            }
+
+            if (directoryOffset + directorySize > fileSize || directorySize > Integer.MAX_VALUE || entryCount > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted central directory in " + path);
+            }
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+            return new ZipCentralDirectory(path, directory, (int) entryCount);
+        }
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * CRC32 of the whole central directory. It covers the name, size and CRC32 of every entry, so two copies
+     * of the same archive have the same checksum without their content being read.
+     */
+    public long getChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(directory.duplicate());
+        return crc.getValue();
+    }
+
+    public void forEachEntry(@NotNull EntryVisitor visitor) throws IOException {
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != ENTRY_SIGNATURE) {
+                throw new IOException("Corrupted central directory entry " + i + " in " + path);
+            }
+
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            visitor.visit(directory, position + 46, nameLength, localHeaderOffset, method, compressedSize, size);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    public void forEachHeader(@NotNull HeaderVisitor visitor) throws IOException {
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != ENTRY_SIGNATURE) {
+                throw new IOException("Corrupted central directory entry " + i + " in " + path);
+            }
+
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = directory.duplicate();
+            nameBuffer.position(position + 46);
+            nameBuffer.get(name);
+
+            visitor.visit(new String(name, StandardCharsets.UTF_8),
+                    directory.getShort(position + 10) & 0xFFFF,
+                    directory.getInt(position + 16) & 0xFFFFFFFFL,
+                    directory.getInt(position + 20) & 0xFFFFFFFFL,
+                    directory.getInt(position + 24) & 0xFFFFFFFFL,
+                    directory.getInt(position + 12),
+                    directory.getInt(position + 42) & 0xFFFFFFFFL);
+            position += 46 + nameLength + (directory.getShort(position + 30) & 0xFFFF) + (directory.getShort(position + 32) & 0xFFFF);
+        }
+    }
+
+    /**
+     * Returns the offset of the data of an entry, right after its local header.
+     */
+    static long getDataOffset(@NotNull FileChannel channel, long localHeaderOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, localHeaderOffset + header.position()) < 0) {
+                throw new IOException("Truncated local header");
+            }
+        }
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("Corrupted local header");
+        }
+        return localHeaderOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * Returns the uncompressed content of an entry, or null when there is no such entry.
+     */
+    @Nullable
+    public byte[] readEntry(@NotNull String name) throws IOException {
+        byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+        long[] found = null;
+
+        int position = 0;
+        for (int i = 0; i < entryCount && found == null; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != ENTRY_SIGNATURE) {
+                throw new IOException("Corrupted central directory entry " + i + " in " + path);
+            }
+
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            if (nameLength == expected.length && nameEquals(position + 46, expected)) {
+                found = new long[]{
+                        directory.getShort(position + 10) & 0xFFFF,
+                        directory.getInt(position + 20) & 0xFFFFFFFFL,
+                        directory.getInt(position + 24) & 0xFFFFFFFFL,
+                        directory.getInt(position + 42) & 0xFFFFFFFFL};
+            }
+            position += 46 + nameLength + (directory.getShort(position + 30) & 0xFFFF) + (directory.getShort(position + 32) & 0xFFFF);
+        }
+
+        if (found == null) {
+            return null;
+        }
+        return readData(found[3], (int) found[0], found[1], found[2]);
+    }
+
+    private boolean nameEquals(int offset, @NotNull byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (directory.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private byte[] readData(long localHeaderOffset, int method, long compressedSize, long size) throws IOException {
+        if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+            throw new IOException("Entry too large in " + path);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long dataOffset;
+            try {
+                dataOffset = getDataOffset(channel, localHeaderOffset);
+            } catch (IOException e) {
+                throw new IOException(e.getMessage() + " in " + path, e);
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) compressedSize);
+            while (data.hasRemaining()) {
+                if (channel.read(data, dataOffset + data.position()) < 0) {
+                    throw new IOException("Truncated entry in " + path);
+                }
+            }
+
+            if (method == STORED) {
+                return data.array();
+            }
+            if (method != DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " in " + path);
+            }
+
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data.array());
+                byte[] content = new byte[(int) size];
+                int length = 0;
+                while (length < content.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(content, length, content.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                return content;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted entry in " + path, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package listener;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFileAdapter;
+import com.intellij.openapi.vfs.VirtualFileEvent;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.util.Function;
+import converter.ConversionScheduler;
+import converter.ConverterFactory;
+import converter.NetbeansPropertyEvaluator;
+import converter.ProjectReferenceGraph;
+import converter.ProjectReferenceService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.FileWriteUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project level dispatcher for the files the plugin is watching.
+ *
+ * A single virtual file listener is registered per project. Every module keeps its <modulename>.iml,
+ * nbproject/project.properties and nbproject/project.xml paths in an index, so an event is routed by one map lookup instead of asking
+ * every module whether the file belongs to it. The listener and the index are released when the project is closed.
+ */
+public class NetbeansFileDispatcher implements Disposable {
+    private final Logger logger = Logger.getInstance("com.trangdp.NetbeansFileDispatcher");
+
+    @NotNull
+    private final Project project;
+
+    private final Map<String, Module> imlIndex = new ConcurrentHashMap<>();
+    private final Map<String, Module> propertiesIndex = new ConcurrentHashMap<>();
+
+    public NetbeansFileDispatcher(@NotNull Project project) {
+        this.project = project;
+
+        // both registrations are bound to this service, which is disposed together with the project
+        VirtualFileManager.getInstance().addVirtualFileListener(new MyVirtualFileListener(), this);
+        project.getMessageBus().connect(this).subscribe(ProjectTopics.MODULES, new MyModuleListener());
+    }
+
+    public static NetbeansFileDispatcher getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, NetbeansFileDispatcher.class);
+    }
+
+    public void register(@NotNull Module module) {
+        String imlPath = getImlPath(module);
+        if (imlPath == null) {
+            return;
+        }
+
+        unregister(module);
+        imlIndex.put(imlPath, module);
+        String moduleDir = getModuleDir(imlPath);
+        propertiesIndex.put(moduleDir + "/" + NetbeansPropertyEvaluator.PROJECT_PROPERTIES_PATH, module);
+        propertiesIndex.put(moduleDir + "/" + NetbeansPropertyEvaluator.PRIVATE_PROPERTIES_PATH, module);
+        propertiesIndex.put(moduleDir + "/" + ProjectReferenceGraph.PROJECT_XML_PATH, module);
+    }
+
+    public void unregister(@NotNull Module module) {
+        imlIndex.values().removeIf(indexed -> indexed == module);
+        propertiesIndex.values().removeIf(indexed -> indexed == module);
+    }
+
+    public boolean isRegistered(@NotNull Module module) {
+        return imlIndex.containsValue(module);
+    }
+
+    @Override
+    public void dispose() {
+        imlIndex.clear();
+        propertiesIndex.clear();
+    }
+
+    @Nullable
+    private static String getImlPath(@NotNull Module module) {
+        String moduleFilePath = module.getModuleFilePath();
+        if (moduleFilePath.isEmpty()) {
+            return null;
+        }
+
+        return FileUtil.toSystemIndependentName(moduleFilePath);
+    }
+
+    @NotNull
+    private static String getModuleDir(@NotNull String imlPath) {
+        return imlPath.substring(0, imlPath.lastIndexOf('/'));
+    }
+
+    private class MyVirtualFileListener extends VirtualFileAdapter {
+        @Override
+        public void fileCreated(@NotNull VirtualFileEvent event) {
+            String path = event.getFile().getPath();
+            Module module = imlIndex.get(path);
+            if (module == null) {
+                module = propertiesIndex.get(path);
+            }
+
+            if (module != null && !module.isDisposed()) {
+                logger.debug("Netbeans project file created: " + event.getFileName());
+                ConversionScheduler.getInstance(project).schedule(module, ConverterFactory.NETBEANS_TO_INTELLIJ);
+                ProjectReferenceService.getInstance(project).projectChanged(module);
+            }
+        }
+
+        @Override
+        public void contentsChanged(@NotNull VirtualFileEvent event) {
+            String path = event.getFile().getPath();
+
+            // the plugin's own writes are the result of a conversion, not something to convert back
+            if (FileWriteUtil.isPluginWrite(event)) {
+                return;
+            }
+
+            //monitor content change for files nbproject/project.properties, nbproject/private/private.properties and
+            //nbproject/project.xml, edited in Netbeans or updated from version control. Changes of the .iml file are
+            //picked up from the root model by ModuleLibraryTracker. The modules referencing a changed project are
+            //converted again by ProjectReferenceService
+            Module module = propertiesIndex.get(path);
+            if (module != null && !module.isDisposed()) {
+                logger.debug("Netbeans project file changed: " + path);
+                ConversionScheduler.getInstance(project).schedule(module, ConverterFactory.NETBEANS_TO_INTELLIJ);
+                ProjectReferenceService.getInstance(project).projectChanged(module);
+            }
+        }
+    }
+
+    private class MyModuleListener implements ModuleListener {
+        @Override
+        public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+            unregister(module);
+
+            logger.debug("Module " + module.getName() + " removed");
+        }
+
+        @Override
+        public void modulesRenamed(@NotNull Project project, @NotNull List<Module> modules, @NotNull Function<Module, String> oldNameProvider) {
+            for (Module module : modules) {
+                if (isRegistered(module)) {
+                    register(module);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ui;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import converter.ConversionMetrics;
+import converter.ConversionMetricsService;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+
+/**
+ * Netbeans Conversion tool window: counters, latency percentiles per phase, slowest modules and last conversions.
+ * The view refreshes itself while it is open and can be dumped to a text file.
+ */
+public class ConversionMetricsToolWindowFactory implements ToolWindowFactory {
+    private final Logger logger = Logger.getInstance("com.trangdp.ConversionMetricsToolWindowFactory");
+
+    private static final int REFRESH_MILLIS = 2000;
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        ConversionMetrics metrics = ConversionMetricsService.getInstance(project).getMetrics();
+
+        JTextArea text = new JTextArea();
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, text.getFont().getSize()));
+
+        Runnable refresh = () -> {
+            if (toolWindow.isVisible()) {
+                text.setText(metrics.report());
+                text.setCaretPosition(0);
+            }
+        };
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh.run());
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            refresh.run();
+        });
+
+        JButton dumpButton = new JButton("Dump to File...");
+        dumpButton.addActionListener(e -> dump(project, metrics));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(refreshButton);
+        buttons.add(resetButton);
+        buttons.add(dumpButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(buttons, BorderLayout.NORTH);
+        panel.add(new JBScrollPane(text), BorderLayout.CENTER);
+
+        Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+        toolWindow.getContentManager().addContent(content);
+
+        Timer timer = new Timer(REFRESH_MILLIS, e -> refresh.run());
+        timer.start();
+        Disposer.register(content, timer::stop);
+        refresh.run();
+    }
+
+    private void dump(@NotNull Project project, @NotNull ConversionMetrics metrics) {
+        VirtualFileWrapper target = FileChooserFactory.getInstance()
+                .createSaveFileDialog(new FileSaverDescriptor("Dump Conversion Metrics", "Save the conversion metrics as text", "txt"), project)
+                .save(project.getBaseDir(), "conversion-metrics.txt");
+        if (target == null) {
+            return;
+        }
+
+        try {
+            metrics.dump(target.getFile().toPath());
+        } catch (IOException e) {
+            logger.warn("Unable to dump conversion metrics", e);
+            Messages.showErrorDialog(project, e.getMessage(), "Unable to Dump Conversion Metrics");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes files outside the IDE: identical content is not written again, changed content is written to a
+ * temporary file next to the target and renamed over it, so a crash never leaves a half-written file.
+ *
+ * A symbolic link is followed, the file it points to is replaced and the link stays. The new file keeps the POSIX
+ * permissions of the one it replaces, a file written for the first time gets the default ones of the process.
+ *
+ * The counters include the writes of {@link FileWriteUtil}, which skips identical content the same way.
+ *
+ * This class has no dependency on the IDE and is thread safe.
+ */
+public class AtomicFileWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final AtomicLong writes = new AtomicLong();
+    private static final AtomicLong avoidedWrites = new AtomicLong();
+    private static final AtomicLong staleWrites = new AtomicLong();
+
+    /**
+     * What a write given the content it was computed from did, here and in {@link FileWriteUtil}.
+     */
+    public enum Outcome {
+        WRITTEN,
+        // the file already held the content
+        UP_TO_DATE,
+        // the file changed since the content was computed from it, nothing was written
+        STALE
+    }
+
+    /**
+     * Returns true when the file was written, false when it already held the content.
+     */
+    public static boolean write(@NotNull Path file, @NotNull byte[] content) throws IOException {
+        if (hasContent(file, content)) {
+            avoidedWrites.incrementAndGet();
+            return false;
+        }
+
+        Path target = Files.exists(file) ? file.toRealPath() : file.toAbsolutePath();
+        Path temp = createTemp(target);
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        writes.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * An empty file next to the target, to be renamed over it, with the POSIX permissions of the target when it
+     * exists. Unlike {@link Files#createTempFile}, which restricts the file to its owner, a new file gets the
+     * default permissions.
+     */
+    @NotNull
+    public static Path createTemp(@NotNull Path target) throws IOException {
+        Path temp;
+        while (true) {
+            temp = target.resolveSibling(target.getFileName() + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // another name
+            }
+        }
+
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+        return temp;
+    }
+
+    /**
+     * Same as {@link #write(Path, byte[])}, only when the file still holds the expected content, the one the new
+     * content was computed from. A file changed since is counted as a stale write, not as an avoided one.
+     *
+     * Writers taking the same lock around this method never overwrite each other's changes.
+     */
+    @NotNull
+    public static Outcome write(@NotNull Path file, @NotNull byte[] content, @NotNull byte[] expected) throws IOException {
+        if (hasContent(file, content)) {
+            avoidedWrites.incrementAndGet();
+            return Outcome.UP_TO_DATE;
+        }
+        if (!hasContent(file, expected)) {
+            staleWrites.incrementAndGet();
+            return Outcome.STALE;
+        }
+        return write(file, content) ? Outcome.WRITTEN : Outcome.UP_TO_DATE;
+    }
+
+    /**
+     * Compares the file with the content without reading more of it than needed, a file of another size is never read.
+     */
+    public static boolean hasContent(@NotNull Path file, @NotNull byte[] content) throws IOException {
+        try {
+            if (!Files.isRegularFile(file) || Files.size(file) != content.length) {
+                return false;
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int offset = 0;
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    if (offset + read > content.length) {
+                        return false;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] != content[offset++]) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return offset == content.length;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    public static long getWrites() {
+        return writes.get();
+    }
+
+    public static long getAvoidedWrites() {
+        return avoidedWrites.get();
+    }
+
+    /**
+     * Writes skipped because the file changed since the content was computed from it.
+     */
+    public static long getStaleWrites() {
+        return staleWrites.get();
+    }
+
+    static void countWrite(boolean written) {
+        (written ? writes : avoidedWrites).incrementAndGet();
+    }
+
+    static void countStaleWrite() {
+        staleWrites.incrementAndGet();
+    }
+}
@@ -0,0 +1,130 @@
+package util;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.AtomicFileWriter.Outcome;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the result of a conversion back to disk. Conversions are computed in background,
+ * only the write itself is run under a write action on the UI thread.
+ *
+ * Content identical to the current one is not written, so an up-to-date file causes no refresh and no module
+ * reload. A file open in an editor is written through its document, which keeps the undo history and avoids
+ * a memory/disk conflict. Outside the IDE, use {@link AtomicFileWriter}.
+ *
+ * Every write is tagged with {@link #REQUESTOR}, so the listeners can tell the plugin's own writes
+ * from edits made by the user and do not convert them back in the other direction.
+ */
+public class FileWriteUtil {
+    public static final Object REQUESTOR = new Object() {
+        @Override
+        public String toString() {
+            return "netbeans-intellij-plugin";
+        }
+    };
+
+    private static final Logger logger = Logger.getInstance("com.trangdp.FileWriteUtil");
+
+    // paths saved from their document, whose events are sent by the document manager instead of REQUESTOR
+    private static final Set<String> documentWrites = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public static boolean isPluginWrite(@NotNull VirtualFileEvent event) {
+        return event.getRequestor() == REQUESTOR || documentWrites.contains(event.getFile().getPath());
+    }
+
+    /**
+     * Returns true when the file was written, false when it already held the content.
+     */
+    public static boolean write(@NotNull VirtualFile file, @NotNull byte[] content) throws IOException {
+        return write(file, content, null) == Outcome.WRITTEN;
+    }
+
+    /**
+     * Same as {@link #write(VirtualFile, byte[])}, only when the file still holds the expected content, the one the
+     * new content was computed from. It is compared under the write action, so an edit made while the content was
+     * computed is never overwritten, the write is then stale. A stale write is logged and counted apart from the
+     * writes avoided because the file already held the content.
+     */
+    @NotNull
+    public static Outcome write(@NotNull VirtualFile file, @NotNull byte[] content, @Nullable byte[] expected) throws IOException {
+        if (hasContent(file, content)) {
+            AtomicFileWriter.countWrite(false);
+            return Outcome.UP_TO_DATE;
+        }
+
+        Ref<IOException> error = Ref.create();
+        Ref<Outcome> outcome = Ref.create(Outcome.STALE);
+        Application application = ApplicationManager.getApplication();
+
+        application.invokeAndWait(() -> application.runWriteAction(() -> {
+            try {
+                if (expected != null && !hasContent(file, expected)) {
+                    return;
+                }
+
+                FileDocumentManager documentManager = FileDocumentManager.getInstance();
+                Document document = documentManager.getCachedDocument(file);
+                if (document == null) {
+                    file.setBinaryContent(content, -1, -1, REQUESTOR);
+                } else {
+                    documentWrites.add(file.getPath());
+                    try {
+                        document.setText(StringUtil.convertLineSeparators(new String(content, file.getCharset())));
+                        documentManager.saveDocument(document);
+                    } finally {
+                        documentWrites.remove(file.getPath());
+                    }
+                }
+                outcome.set(Outcome.WRITTEN);
+            } catch (IOException e) {
+                error.set(e);
+            }
+        }), ModalityState.defaultModalityState());
+
+        if (!error.isNull()) {
+            throw error.get();
+        }
+        if (outcome.get() == Outcome.WRITTEN) {
+            AtomicFileWriter.countWrite(true);
+        } else {
+            AtomicFileWriter.countStaleWrite();
+            logger.info("Not writing " + file.getPath() + ", it changed since the conversion read it");
+        }
+        return outcome.get();
+    }
+
+    /**
+     * Compares with the document when the file is open with unsaved changes, with the file on disk otherwise.
+     */
+    private static boolean hasContent(@NotNull VirtualFile file, @NotNull byte[] content) throws IOException {
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        String text = ApplicationManager.getApplication().runReadAction((Computable<String>) () -> {
+            Document document = documentManager.getCachedDocument(file);
+            return document != null && documentManager.isDocumentUnsaved(document) ? document.getText() : null;
+        });
+
+        if (text != null) {
+            Charset charset = file.getCharset();
+            return text.equals(StringUtil.convertLineSeparators(new String(content, charset)));
+        }
+        return file.isValid() && file.getLength() == content.length && Arrays.equals(file.contentsToByteArray(), content);
+    }
+}
@@ -15,4 +15,11 @@ public class NotificationUtil {
 
         if(notification.getBalloon() != null) notification.getBalloon().hide();
     }
+
+    /**
+     * Shows a notification which stays visible, for the result of a long running operation.
+     */
+    public static void showSummary(String message) {
+        Notifications.Bus.notify(new Notification("com.trangdp.plugins.netbeans.intellij", "Netbeans To Intellij Plugin", message, NotificationType.INFORMATION));
+    }
 }